@@ -0,0 +1,162 @@
+package com.revolut.backend.benchmark;
+
+import com.codahale.metrics.MetricRegistry;
+import com.revolut.backend.db.CreateAccountCallback;
+import com.revolut.backend.db.CreateUserCallback;
+import com.revolut.backend.db.TransferCallback;
+import com.revolut.backend.db.impl.ExecutionLanes;
+import com.revolut.backend.db.impl.H2Config;
+import com.revolut.backend.db.impl.H2Database;
+import com.revolut.backend.db.impl.ThreadPerTaskExecutor;
+import com.revolut.backend.entity.Money;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link H2Database#transfer} between a few accounts, so most transfers wait for row locks, executed by
+ * a thread pool like the server lane ("pool") or by a virtual thread per call bounded by a semaphore ("virtual").
+ * "concurrency" is the pool size or the count of permits. Virtual threads need JDK 21.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+@State(Scope.Benchmark)
+public class DbExecutorBenchmark {
+
+    private static final int ACCOUNTS = 8;
+    private static final Money AMOUNT = Money.parse("0.01");
+
+    @Param({"pool", "virtual"})
+    public String executor;
+
+    @Param({"8", "64"})
+    public int concurrency;
+
+    private ExecutorService executorService;
+    private H2Database database;
+    private long userId;
+    private long firstAccountId;
+    private final AtomicLong requests = new AtomicLong();
+
+    @Setup
+    public void setUp() throws Exception {
+        executorService = executorService();
+
+        final JdbcConnectionPool pool = JdbcConnectionPool.create("jdbc:h2:mem:executors", "user", "pass");
+        pool.setMaxConnections(concurrency + 1);
+        database = new H2Database(9132, ExecutionLanes.of(executorService), pool,
+                new H2Config().tcpServer(false).sessionPoolSize(concurrency + 1), new MetricRegistry());
+        database.init();
+
+        final CompletableFuture<Long> user = new CompletableFuture<>();
+        database.createUser("benchmark", new CreateUserCallback() {
+            @Override
+            public void onSuccess(long userId) {
+                user.complete(userId);
+            }
+
+            @Override
+            public void onUnexpectedError(Exception e) {
+                user.completeExceptionally(e);
+            }
+        });
+        userId = user.get();
+
+        for (int i = 0; i < ACCOUNTS; i++) {
+            final long accountId = createAccount(Money.parse("1000000"));
+            if (i == 0) {
+                firstAccountId = accountId;
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.stop();
+        executorService.shutdown();
+    }
+
+    @Benchmark
+    public Long transfer() throws Exception {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final long srcAccountId = firstAccountId + random.nextInt(ACCOUNTS);
+        final long dstAccountId = firstAccountId + (srcAccountId - firstAccountId + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+
+        final CompletableFuture<Long> result = new CompletableFuture<>();
+        database.transfer("benchmark-" + requests.incrementAndGet(), userId, srcAccountId, dstAccountId, AMOUNT,
+                new TransferCallback() {
+                    @Override
+                    public void onSuccess(long transferId) {
+                        result.complete(transferId);
+                    }
+
+                    @Override
+                    public void onAccountNotFound(long accountId) {
+                        result.completeExceptionally(new IllegalStateException("Account not found " + accountId));
+                    }
+
+                    @Override
+                    public void onNotOwner() {
+                        result.completeExceptionally(new IllegalStateException("Not owner"));
+                    }
+
+                    @Override
+                    public void onInsufficientFunds() {
+                        result.completeExceptionally(new IllegalStateException("Insufficient funds"));
+                    }
+
+                    @Override
+                    public void onUnexpectedError(Exception e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+        return result.get();
+    }
+
+    private ExecutorService executorService() {
+        if ("virtual".equals(executor)) {
+            final ThreadFactory threadFactory = ThreadPerTaskExecutor.virtualThreadFactory("db-");
+            if (threadFactory == null) {
+                throw new IllegalStateException("Virtual threads are not supported by the runtime");
+            }
+            return new ThreadPerTaskExecutor(threadFactory, concurrency, 1024);
+        }
+
+        return new ThreadPoolExecutor(concurrency, concurrency, 5000L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1024, true), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private long createAccount(Money balance) throws Exception {
+        final CompletableFuture<Long> account = new CompletableFuture<>();
+        database.createAccount(userId, balance, new CreateAccountCallback() {
+            @Override
+            public void onSuccess(long accountId) {
+                account.complete(accountId);
+            }
+
+            @Override
+            public void onUserNotFound() {
+                account.completeExceptionally(new IllegalStateException("User not found"));
+            }
+
+            @Override
+            public void onUnexpectedError(Exception e) {
+                account.completeExceptionally(e);
+            }
+        });
+        return account.get();
+    }
+
+}
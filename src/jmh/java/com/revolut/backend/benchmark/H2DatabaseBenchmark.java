@@ -0,0 +1,191 @@
+package com.revolut.backend.benchmark;
+
+import com.codahale.metrics.MetricRegistry;
+import com.revolut.backend.db.CreateAccountCallback;
+import com.revolut.backend.db.CreateUserCallback;
+import com.revolut.backend.db.GetAccountCallback;
+import com.revolut.backend.db.TransferCallback;
+import com.revolut.backend.db.impl.H2Config;
+import com.revolut.backend.db.impl.H2Database;
+import com.revolut.backend.entity.Account;
+import com.revolut.backend.entity.Money;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link H2Database#transfer} and {@link H2Database#getAccount} under contention: all threads work with
+ * the same pair of accounts ("hot"), with accounts picked uniformly ("uniform") or transfer from uniformly picked
+ * accounts to the first one ("merchant"). The first account is optionally configured as
+ * {@link H2Config#getHotAccounts()}, so its credits don't wait for its row lock.
+ * Each operation waits for its callback, so the latency of the whole round trip through the executor is measured.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class H2DatabaseBenchmark {
+
+    private static final int ACCOUNTS = 1000;
+    private static final Money AMOUNT = Money.parse("0.01");
+    private static final long FIRST_ACCOUNT_ID = 1;
+
+    @Param({"hot", "uniform", "merchant"})
+    public String accounts;
+
+    @Param({"statements", "procedure"})
+    public String transfers;
+
+    @Param({"row-lock", "hot-account"})
+    public String firstAccount;
+
+    private ExecutorService executor;
+    private H2Database database;
+    private long userId;
+    private long firstAccountId;
+    private final AtomicLong requests = new AtomicLong();
+
+    @Setup
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(10);
+        database = new H2Database(9130, executor,
+                JdbcConnectionPool.create("jdbc:h2:mem:benchmark", "user", "pass"),
+                config(), new MetricRegistry());
+        database.init();
+
+        final CompletableFuture<Long> user = new CompletableFuture<>();
+        database.createUser("benchmark", new CreateUserCallback() {
+            @Override
+            public void onSuccess(long userId) {
+                user.complete(userId);
+            }
+
+            @Override
+            public void onUnexpectedError(Exception e) {
+                user.completeExceptionally(e);
+            }
+        });
+        userId = user.get();
+
+        for (int i = 0; i < ACCOUNTS; i++) {
+            final long accountId = createAccount(Money.parse("1000000"));
+            if (i == 0) {
+                firstAccountId = accountId;
+            }
+        }
+        if (firstAccountId != FIRST_ACCOUNT_ID) {
+            throw new IllegalStateException("First account id is " + firstAccountId);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.stop();
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public Long transfer() throws Exception {
+        final long srcAccountId = account();
+        long dstAccountId = "merchant".equals(accounts) ? firstAccountId : account();
+        if (dstAccountId == srcAccountId) {
+            dstAccountId = srcAccountId == firstAccountId ? srcAccountId + 1 : firstAccountId;
+        }
+
+        final CompletableFuture<Long> result = new CompletableFuture<>();
+        database.transfer("benchmark-" + requests.incrementAndGet(), userId, srcAccountId, dstAccountId, AMOUNT,
+                new TransferCallback() {
+                    @Override
+                    public void onSuccess(long transferId) {
+                        result.complete(transferId);
+                    }
+
+                    @Override
+                    public void onAccountNotFound(long accountId) {
+                        result.completeExceptionally(new IllegalStateException("Account not found " + accountId));
+                    }
+
+                    @Override
+                    public void onNotOwner() {
+                        result.completeExceptionally(new IllegalStateException("Not owner"));
+                    }
+
+                    @Override
+                    public void onInsufficientFunds() {
+                        result.completeExceptionally(new IllegalStateException("Insufficient funds"));
+                    }
+
+                    @Override
+                    public void onUnexpectedError(Exception e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+        return result.get();
+    }
+
+    @Benchmark
+    public Account getAccount() throws Exception {
+        final CompletableFuture<Account> result = new CompletableFuture<>();
+        database.getAccount(userId, account(), new GetAccountCallback() {
+            @Override
+            public void onSuccess(Account account) {
+                result.complete(account);
+            }
+
+            @Override
+            public void onAccountNotFound() {
+                result.completeExceptionally(new IllegalStateException("Account not found"));
+            }
+
+            @Override
+            public void onUnexpectedError(Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result.get();
+    }
+
+    private H2Config config() {
+        final H2Config config = new H2Config().transferProcedure("procedure".equals(transfers));
+        //the first account is created with the id 1 in the empty database
+        return "hot-account".equals(firstAccount) ?
+                config.hotAccounts(Collections.singletonList(FIRST_ACCOUNT_ID)) : config;
+    }
+
+    private long account() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        return firstAccountId + ("hot".equals(accounts) ? random.nextInt(2) : random.nextInt(ACCOUNTS));
+    }
+
+    private long createAccount(Money balance) throws Exception {
+        final CompletableFuture<Long> account = new CompletableFuture<>();
+        database.createAccount(userId, balance, new CreateAccountCallback() {
+            @Override
+            public void onSuccess(long accountId) {
+                account.complete(accountId);
+            }
+
+            @Override
+            public void onUserNotFound() {
+                account.completeExceptionally(new IllegalStateException("User not found"));
+            }
+
+            @Override
+            public void onUnexpectedError(Exception e) {
+                account.completeExceptionally(e);
+            }
+        });
+        return account.get();
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.revolut.backend.benchmark;
+
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.utils.Utils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Utils#parseAmount(String)} for the amount query parameter of every transfer
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseAmountBenchmark {
+
+    @Param({"100", "12.43", "0.5", "99999999.99"})
+    public String amount;
+
+    @Benchmark
+    public Money parseAmount() throws Exception {
+        return Utils.parseAmount(amount);
+    }
+
+}
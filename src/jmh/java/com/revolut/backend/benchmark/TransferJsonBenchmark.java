@@ -0,0 +1,34 @@
+package com.revolut.backend.benchmark;
+
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.entity.Transfer;
+import com.revolut.backend.handler.TransferCache;
+import io.vertx.core.buffer.Buffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Json building of the GET /transfer/:id response, done by {@link TransferCache#put(Transfer)}
+ * on each read missing the cache
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransferJsonBenchmark {
+
+    private final Transfer transfer = new Transfer(123456, "request-123456", 1549052019119L, 1, 2, 1,
+            Money.parse("55.73"), Money.parse("100"), Money.parse("44.27"), Money.ZERO, Money.parse("55.73"));
+
+    //disabled, so only serialization is measured
+    private final TransferCache transferCache = new TransferCache(0);
+
+    @Benchmark
+    public Buffer serialize() {
+        return transferCache.put(transfer);
+    }
+
+}
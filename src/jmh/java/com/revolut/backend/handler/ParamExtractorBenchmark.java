@@ -0,0 +1,141 @@
+package com.revolut.backend.handler;
+
+import com.revolut.backend.constants.HttpHeaders;
+import com.revolut.backend.constants.PathParams;
+import com.revolut.backend.constants.QueryParams;
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.utils.Utils;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.vertx.core.MultiMap;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.api.RequestParameters;
+import io.vertx.ext.web.api.validation.HTTPRequestValidationHandler;
+import io.vertx.ext.web.api.validation.ParameterType;
+import io.vertx.ext.web.api.validation.ParameterTypeValidator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parameters of PATCH /account/:accountId/transfer parsed by vertx-validation as before ("validation")
+ * and by {@link ParamExtractor} ("extractor"). Request and routing context are map backed proxies,
+ * decoded query parameters are built once per request as vertx does. Run with "-prof gc" to compare allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParamExtractorBenchmark {
+
+    private static final String QUERY = QueryParams.DST_ACC_ID + "=2&" + QueryParams.AMOUNT + "=12.43";
+
+    private final HTTPRequestValidationHandler validationHandler = HTTPRequestValidationHandler.create()
+            .addHeaderParamWithCustomTypeValidator(HttpHeaders.USER_ID,
+                    ParameterTypeValidator.createLongTypeValidator(null), true, false)
+            .addPathParamWithCustomTypeValidator(PathParams.ACCOUNT_ID,
+                    ParameterTypeValidator.createLongTypeValidator(null), false)
+            .addQueryParamWithCustomTypeValidator(QueryParams.DST_ACC_ID,
+                    ParameterTypeValidator.createLongTypeValidator(null), true, false)
+            .addQueryParam(QueryParams.AMOUNT, ParameterType.GENERIC_STRING, true);
+
+    private final Map<String, Object> data = new HashMap<>();
+    private final Request request = new Request();
+    private final RoutingContext ctx = routingContext(data, request);
+
+    @Setup(Level.Invocation)
+    public void newRequest() {
+        data.clear();
+        request.params = null;
+    }
+
+    @Benchmark
+    public void validation(Blackhole blackhole) {
+        validationHandler.handle(ctx);
+
+        final RequestParameters params = (RequestParameters) data.get("parsedParameters");
+        blackhole.consume(params.headerParameter(HttpHeaders.USER_ID).getLong());
+        blackhole.consume(params.pathParameter(PathParams.ACCOUNT_ID).getLong());
+        blackhole.consume(params.queryParameter(QueryParams.DST_ACC_ID).getLong());
+        blackhole.consume(Utils.parseAmount(params.queryParameter(QueryParams.AMOUNT).getString()));
+    }
+
+    @Benchmark
+    public void extractor(Blackhole blackhole) {
+        blackhole.consume(ParamExtractor.pathLong(ctx, PathParams.ACCOUNT_ID));
+        ParamExtractor.checkQuery(ctx, QueryParams.AMOUNT, true);
+        blackhole.consume(ParamExtractor.queryLong(ctx, QueryParams.DST_ACC_ID));
+        blackhole.consume(ParamExtractor.headerLong(ctx, HttpHeaders.USER_ID));
+        final Money amount = ParamExtractor.queryAmount(ctx, QueryParams.AMOUNT, null);
+        blackhole.consume(amount);
+    }
+
+    private static final class Request {
+
+        private final MultiMap headers = MultiMap.caseInsensitiveMultiMap().set(HttpHeaders.USER_ID, "1");
+        private MultiMap params;
+
+        MultiMap params() {
+            if (params == null) {
+                params = MultiMap.caseInsensitiveMultiMap();
+                new QueryStringDecoder(QUERY, false).parameters().forEach(params::add);
+            }
+            return params;
+        }
+    }
+
+    private static RoutingContext routingContext(Map<String, Object> data, Request request) {
+        final Map<String, String> pathParams = Collections.singletonMap(PathParams.ACCOUNT_ID, "1");
+
+        final HttpServerRequest httpRequest = (HttpServerRequest) Proxy.newProxyInstance(
+                HttpServerRequest.class.getClassLoader(), new Class<?>[]{HttpServerRequest.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "headers":
+                            return request.headers;
+                        case "getHeader":
+                            return request.headers.get((String) args[0]);
+                        case "params":
+                            return request.params();
+                        case "query":
+                            return QUERY;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        return (RoutingContext) Proxy.newProxyInstance(
+                RoutingContext.class.getClassLoader(), new Class<?>[]{RoutingContext.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "get":
+                            return data.get((String) args[0]);
+                        case "put":
+                            data.put((String) args[0], args[1]);
+                            return proxy;
+                        case "request":
+                            return httpRequest;
+                        case "pathParam":
+                            return pathParams.get((String) args[0]);
+                        case "pathParams":
+                            return pathParams;
+                        case "queryParams":
+                            return request.params();
+                        case "data":
+                            return data;
+                        case "next":
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.revolut.backend.handler;
+
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.RoutingContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HandlerBase#requestLogger} as used by handlers: a new request gets its logger created,
+ * then a message is logged with a level disabled in production (debug).
+ * Routing context is a map backed proxy, its overhead is included into the result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestLoggerBenchmark {
+
+    private final LoggingHandler handler = new LoggingHandler();
+    private final Map<String, Object> data = new HashMap<>();
+    private final RoutingContext ctx = routingContext(data);
+
+    @Benchmark
+    public void newRequest() {
+        data.clear();
+        handler.handle(ctx);
+    }
+
+    @Benchmark
+    public void sameRequest() {
+        handler.handle(ctx);
+    }
+
+    private static RoutingContext routingContext(Map<String, Object> data) {
+        final HttpServerRequest request = (HttpServerRequest) Proxy.newProxyInstance(
+                HttpServerRequest.class.getClassLoader(), new Class[]{HttpServerRequest.class},
+                (proxy, method, args) -> "getHeader".equals(method.getName()) ? "request-123456" : null);
+
+        return (RoutingContext) Proxy.newProxyInstance(
+                RoutingContext.class.getClassLoader(), new Class[]{RoutingContext.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "get":
+                            return data.get((String) args[0]);
+                        case "put":
+                            data.put((String) args[0], args[1]);
+                            return proxy;
+                        case "request":
+                            return request;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static final class LoggingHandler extends HandlerBase {
+
+        @Override
+        public void handle(RoutingContext ctx) {
+            requestLogger(ctx).debug("Transfer '{}' obtained successfully", 123456L);
+        }
+    }
+
+}
@@ -2,60 +2,86 @@ package com.revolut.backend;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.codahale.metrics.jvm.GarbageCollectorMetricSet;
 import com.codahale.metrics.jvm.JvmAttributeGaugeSet;
 import com.codahale.metrics.jvm.MemoryUsageGaugeSet;
 import com.codahale.metrics.jvm.ThreadStatesGaugeSet;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.revolut.backend.db.Database;
+import com.revolut.backend.db.impl.AdmissionControlDatabase;
+import com.revolut.backend.db.impl.CachingDatabase;
+import com.revolut.backend.db.impl.ExecutionLanes;
+import com.revolut.backend.db.impl.ExecutionLanes.Lane;
+import com.revolut.backend.db.impl.GradientLimiter;
+import com.revolut.backend.db.impl.H2Config;
 import com.revolut.backend.db.impl.H2Database;
-import com.revolut.backend.handler.*;
+import com.revolut.backend.db.impl.IdempotentDatabase;
+import com.revolut.backend.db.impl.InMemoryDatabase;
+import com.revolut.backend.db.impl.Journal;
+import com.revolut.backend.db.impl.ShardedDatabase;
+import com.revolut.backend.db.impl.ThreadPerTaskExecutor;
+import com.revolut.backend.handler.PrometheusMetricsHandler;
+import com.revolut.backend.handler.TransferCache;
 import com.revolut.backend.utils.Args;
 import com.revolut.backend.utils.Utils;
-import io.vertx.core.Handler;
+import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
-import io.vertx.core.http.HttpMethod;
-import io.vertx.core.http.HttpServer;
-import io.vertx.ext.web.Route;
-import io.vertx.ext.web.Router;
-import io.vertx.ext.web.RoutingContext;
-import io.vertx.ext.web.api.validation.ValidationHandler;
+import io.vertx.core.VertxOptions;
 import org.apache.commons.cli.*;
 import org.h2.jdbcx.JdbcConnectionPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
-import static com.revolut.backend.constants.PathParams.ACCOUNT_ID;
-import static com.revolut.backend.constants.PathParams.TRANSFER_ID;
-
 /**
  * Server provides RESTful API for money transfers between accounts.
  * Vertx is used for handling http and internal storage is backed with H2.
+ * Http is served by several {@link HttpVerticle} instances sharing the port, one per event loop.
  */
 public class BackendServer {
 
     private static final Logger logger = LoggerFactory.getLogger(BackendServer.class);
 
     private final Database database;
-    private final ThreadPoolExecutor dbExecutor;
+    private final Map<Lane, ExecutorService> dbExecutors = new EnumMap<>(Lane.class);
     private final Vertx vertx;
-    private final HttpServer httpServer;
     private final int port;
+    private final int httpInstances;
     private final MetricRegistry metricRegistry;
+    private final TransferCache transferCache;
+    private final PrometheusMetricsHandler prometheusMetrics;
 
     public BackendServer(int port) {
-        Args.isTrue(port > 0, "port must greater 0");
+        this(new ServerConfig().port(port));
+    }
+
+    public BackendServer(ServerConfig config) {
+        Objects.requireNonNull(config, "config must not be null");
         this.metricRegistry = new MetricRegistry();
-        this.dbExecutor = dbExecutorService(10, 50);
-        this.database = new H2Database(9123, dbExecutor,
-                JdbcConnectionPool.create("jdbc:h2:mem:db", "user", "pass"));
-        this.vertx = Vertx.vertx();
-        this.httpServer = vertx.createHttpServer();
-        this.port = port;
+        final boolean virtualThreads = config.isDbVirtualThreads() && virtualThreadsSupported();
+        dbExecutors.put(Lane.READ, dbExecutorService(Lane.READ, config.getDbReadThreads(), config.getDbMaxInFlight(), virtualThreads, metricRegistry));
+        dbExecutors.put(Lane.WRITE, dbExecutorService(Lane.WRITE, config.getDbWriteThreads(), config.getDbMaxInFlight(), virtualThreads, metricRegistry));
+        dbExecutors.put(Lane.ADMIN, dbExecutorService(Lane.ADMIN, config.getDbAdminThreads(), config.getDbMaxInFlight(), virtualThreads, metricRegistry));
+        final ExecutionLanes dbLanes = new ExecutionLanes(
+                dbExecutors.get(Lane.READ), dbExecutors.get(Lane.WRITE), dbExecutors.get(Lane.ADMIN));
+        this.database = decorate(database(config, dbLanes, metricRegistry), config, metricRegistry);
+        this.httpInstances = config.getHttpInstances();
+        this.vertx = Vertx.vertx(new VertxOptions().setEventLoopPoolSize(httpInstances));
+        this.port = config.getPort();
+        this.transferCache = new TransferCache(config.getTransferCacheSize());
+        this.prometheusMetrics = new PrometheusMetricsHandler(metricRegistry);
     }
 
     public BackendServer start() {
@@ -66,8 +92,10 @@ public class BackendServer {
     }
 
     public void stop() {
-        Utils.<Void>await(h -> httpServer.close(h));
+        Utils.<Void>await(h -> vertx.close(h));
+        metricRegistry.removeListener(prometheusMetrics);
         database.stop();
+        dbExecutors.values().forEach(ExecutorService::shutdown);
     }
 
     public int port() {
@@ -75,69 +103,268 @@ public class BackendServer {
     }
 
     private void initHttpServer() {
-        final Router router = Router.router(vertx);
-        initRoute(router.route(HttpMethod.POST, "/user"), new CreateUserHandler(database));
-        initRoute(router.route(HttpMethod.GET, String.format("/account/:%s", ACCOUNT_ID)), new GetAccountHandler(database));
-        initRoute(router.route(HttpMethod.POST, "/account"), new CreateAccountHandler(database));
-        initRoute(router.route(HttpMethod.GET, String.format("/transfer/:%s", TRANSFER_ID)), new GetTransferHandler(database));
-        initRoute(router.route(HttpMethod.PATCH, String.format("/account/:%s/transfer", ACCOUNT_ID)), new TransferHandler(database));
-        initRoute(router.route(HttpMethod.GET, "/metrics"), new ExposeMetricsHandler(metricRegistry));
-        initRoute(router.route(), new EndpointNotFoundHandler());
-
-        Utils.<HttpServer>await(h -> httpServer.requestHandler(router).listen(port, h));
-
-        logger.info("HTTP server is ready to accept traffic on port {}", port);
+        final DeploymentOptions options = new DeploymentOptions().setInstances(httpInstances);
+        Utils.<String>await(h -> vertx.deployVerticle(
+                () -> new HttpVerticle(database, metricRegistry, transferCache, prometheusMetrics, port), options, h));
+
+        logger.info("HTTP server is ready to accept traffic on port {} with {} event loops", port, httpInstances);
     }
 
     private void initMetrics() {
-        metricRegistry.register("db.queue.size", (Gauge<Integer>) () -> dbExecutor.getQueue().size());
+        metricRegistry.register("db.queue.size", (Gauge<Integer>) () -> dbExecutors.keySet().stream()
+                .mapToInt(lane -> (Integer) metricRegistry.getGauges().get(queueSizeMetric(lane)).getValue()).sum());
         metricRegistry.register("threads", new ThreadStatesGaugeSet());
         metricRegistry.register("memory", new MemoryUsageGaugeSet());
         metricRegistry.register("jvm", new JvmAttributeGaugeSet());
         metricRegistry.register("gc", new GarbageCollectorMetricSet());
     }
 
-    private void initRoute(Route route, Handler<RoutingContext> endpointHandler) {
-        route.handler(new MeteringHandler(metricRegistry));
-        route.handler(AccessLogHandler.INSTANCE);
+    private static Database database(ServerConfig config, ExecutionLanes dbLanes, MetricRegistry metricRegistry) {
+        logger.info("Use '{}' storage", config.getStorage());
 
-        if (endpointHandler instanceof ValidatorHolder) {
-            final ValidationHandler validator = ((ValidatorHolder) endpointHandler).getValidator();
-            if (validator != null) {
-                route.handler(validator);
-            }
+        switch (config.getStorage()) {
+            case H2:
+                //every lane thread keeps a session, plus batch writer, sync and fold threads. All of them are
+                //opened on startup unless the size is set explicitly, so a lane thread never waits for a connection
+                final H2Config h2 = config.getH2();
+                if (h2.getSessionPoolSize() == 0) {
+                    h2.sessionPoolSize(config.getDbReadThreads() + config.getDbWriteThreads() + config.getDbAdminThreads() + 3);
+                }
+                final JdbcConnectionPool pool = JdbcConnectionPool.create(h2.getJdbcUrl(), "user", "pass");
+                pool.setMaxConnections(h2.getSessionPoolSize());
+                return new H2Database(9123, dbLanes, pool, h2, metricRegistry);
+            case MEMORY:
+                return new InMemoryDatabase(dbLanes,
+                        config.getJournalDir() != null ? new Journal(Paths.get(config.getJournalDir())) : null);
+            case SHARDED:
+                return new ShardedDatabase(config.getShards(), 1024);
+            default:
+                throw new IllegalArgumentException("Unknown storage: " + config.getStorage());
         }
+    }
+
+    private static Database decorate(Database database, ServerConfig config, MetricRegistry metricRegistry) {
+        //limit of the work in flight starts from twice the database threads, never drops below the lane threads
+        //and never exceeds the lane queue
+        final int threads = config.getDbReadThreads() + config.getDbWriteThreads() + config.getDbAdminThreads();
+        final Map<Lane, GradientLimiter> limiters = new EnumMap<>(Lane.class);
+        limiters.put(Lane.READ, limiter(threads, config.getDbReadThreads(), config.getDbMaxInFlight()));
+        limiters.put(Lane.WRITE, limiter(threads, config.getDbWriteThreads(), config.getDbMaxInFlight()));
+        limiters.put(Lane.ADMIN, limiter(threads, config.getDbAdminThreads(), config.getDbMaxInFlight()));
+        database = new AdmissionControlDatabase(database, limiters, metricRegistry);
+
+        if (config.getAccountCacheSize() > 0) {
+            database = new CachingDatabase(database, config.getAccountCacheSize(), metricRegistry);
+        }
+
+        return new IdempotentDatabase(database,
+                config.getIdempotencyCacheSize(), config.getIdempotencyTtlMillis(), metricRegistry);
+    }
 
-        route.handler(endpointHandler);
-        route.failureHandler(FailureHandler.INSTANCE);
+    private static GradientLimiter limiter(int threads, int laneThreads, int maxInFlight) {
+        final int min = Math.min(laneThreads, maxInFlight);
+        return new GradientLimiter(Math.max(min, Math.min(threads * 2, maxInFlight)), min, maxInFlight);
     }
 
-    private static ThreadPoolExecutor dbExecutorService(int threads, int queueSize) {
+    /**
+     * Executor of the lane, exposes "db.[lane].queue.size" gauge and "db.[lane].queue.wait" timer.
+     * With virtual threads every call gets its own thread and "threads" bounds the concurrency
+     */
+    private static ExecutorService dbExecutorService(Lane lane, int threads, int queueSize, boolean virtualThreads,
+                                                     MetricRegistry metricRegistry) {
         Args.isTrue(threads > 0, "Threads count should be greater 0");
         Args.isTrue(queueSize > 0, "Queue size should be greater 0");
 
-        return new ThreadPoolExecutor(threads, threads,
+        final String name = lane.name().toLowerCase();
+        final Timer queueWait = metricRegistry.timer("db." + name + ".queue.wait");
+
+        if (virtualThreads) {
+            final ThreadFactory threadFactory = ThreadPerTaskExecutor.virtualThreadFactory("db-" + name + "-");
+            final ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(threadFactory, threads, queueSize) {
+
+                @Override
+                public void execute(Runnable command) {
+                    final long queuedAt = System.nanoTime();
+                    super.execute(() -> {
+                        queueWait.update(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                        command.run();
+                    });
+                }
+            };
+            metricRegistry.register(queueSizeMetric(lane), (Gauge<Integer>) executor::getQueued);
+            return executor;
+        }
+
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
                 5000L, TimeUnit.MILLISECONDS,
                 new ArrayBlockingQueue<>(queueSize, true),
-                new ThreadFactoryBuilder().setNameFormat("db-worker-%d").build(),
-                new ThreadPoolExecutor.AbortPolicy());
+                new ThreadFactoryBuilder().setNameFormat("db-" + name + "-%d").build(),
+                new ThreadPoolExecutor.AbortPolicy()) {
+
+            @Override
+            public void execute(Runnable command) {
+                final long queuedAt = System.nanoTime();
+                super.execute(() -> {
+                    queueWait.update(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                    command.run();
+                });
+            }
+        };
+        metricRegistry.register(queueSizeMetric(lane), (Gauge<Integer>) () -> executor.getQueue().size());
+        return executor;
+    }
+
+    private static String queueSizeMetric(Lane lane) {
+        return "db." + lane.name().toLowerCase() + ".queue.size";
+    }
+
+    private static boolean virtualThreadsSupported() {
+        if (ThreadPerTaskExecutor.virtualThreadFactory("db-") == null) {
+            logger.warn("Virtual threads are not supported by the runtime, database calls use thread pools");
+            return false;
+        }
+        return true;
     }
 
     public static void main(String[] args) {
         final Options options = new Options()
-                .addOption(new Option("p", "port", true, "http port"));
+                .addOption(new Option("p", "port", true, "http port"))
+                .addOption(new Option("s", "storage", true, "storage implementation: h2 (default), memory or sharded"))
+                .addOption(new Option(null, "shards", true, "shards count for the sharded storage, cores count by default"))
+                .addOption(new Option(null, "batch-size", true, "max transfers per h2 transaction, batching is off by default"))
+                .addOption(new Option(null, "batch-wait-us", true, "max time in microseconds to fill h2 transfers batch"))
+                .addOption(new Option(null, "transfer-procedure", false, "execute each h2 transfer with one stored procedure call"))
+                .addOption(new Option(null, "embedded", false, "don't start h2 tcp server, the database is reachable only in-process"))
+                .addOption(new Option(null, "data-dir", true, "directory of durable h2 files, h2 is kept in memory by default"))
+                .addOption(new Option(null, "sync", true, "durable h2 sync policy: commit (default), interval or os"))
+                .addOption(new Option(null, "sync-interval-ms", true, "period of the interval sync policy, 100 by default"))
+                .addOption(new Option(null, "hot-accounts", true, "comma separated ids of h2 accounts with striped credits"))
+                .addOption(new Option(null, "hot-fold-interval-ms", true, "period of folding hot account credits, 100 by default"))
+                .addOption(new Option(null, "journal", true, "write ahead journal directory for the memory storage"))
+                .addOption(new Option(null, "account-cache", true, "max count of cached accounts, 0 disables the cache"))
+                .addOption(new Option(null, "transfer-cache", true, "max count of cached transfers, 0 disables the cache"))
+                .addOption(new Option(null, "http-instances", true, "count of http event loops, twice the cores count by default"))
+                .addOption(new Option(null, "db-read-threads", true, "database read lane threads, 4 by default"))
+                .addOption(new Option(null, "db-write-threads", true, "database write lane threads, 8 by default"))
+                .addOption(new Option(null, "db-admin-threads", true, "database admin lane threads, 2 by default"))
+                .addOption(new Option(null, "db-max-in-flight", true, "max database requests in flight per lane, 500 by default"))
+                .addOption(new Option(null, "db-virtual-threads", false, "run each database call on a virtual thread, lane threads bound the concurrency"));
 
         try {
             final CommandLine parse = new BasicParser().parse(options, args);
             final String portString = parse.getOptionValue("p");
+            final String storageString = parse.getOptionValue("s");
+            final String shardsString = parse.getOptionValue("shards");
+            final String batchSizeString = parse.getOptionValue("batch-size");
+            final String batchWaitString = parse.getOptionValue("batch-wait-us");
+            final String dataDirString = parse.getOptionValue("data-dir");
+            final String syncString = parse.getOptionValue("sync");
+            final String syncIntervalString = parse.getOptionValue("sync-interval-ms");
+            final String hotAccountsString = parse.getOptionValue("hot-accounts");
+            final String hotFoldIntervalString = parse.getOptionValue("hot-fold-interval-ms");
+            final String journalString = parse.getOptionValue("journal");
+            final String accountCacheString = parse.getOptionValue("account-cache");
+            final String transferCacheString = parse.getOptionValue("transfer-cache");
+            final String httpInstancesString = parse.getOptionValue("http-instances");
+            final String dbReadThreadsString = parse.getOptionValue("db-read-threads");
+            final String dbWriteThreadsString = parse.getOptionValue("db-write-threads");
+            final String dbAdminThreadsString = parse.getOptionValue("db-admin-threads");
+            final String dbMaxInFlightString = parse.getOptionValue("db-max-in-flight");
 
             try {
-                final int port = portString != null ? Integer.parseInt(portString) : 8080;
+                final ServerConfig config = new ServerConfig()
+                        .port(portString != null ? Integer.parseInt(portString) : 8080);
+
+                if (storageString != null) {
+                    config.storage(ServerConfig.Storage.valueOf(storageString.toUpperCase()));
+                }
+
+                if (shardsString != null) {
+                    config.shards(Integer.parseInt(shardsString));
+                }
+
+                if (batchSizeString != null) {
+                    config.getH2().transferBatchSize(Integer.parseInt(batchSizeString));
+                }
+
+                if (parse.hasOption("transfer-procedure")) {
+                    config.getH2().transferProcedure(true);
+                }
+
+                if (parse.hasOption("embedded")) {
+                    config.getH2().tcpServer(false);
+                }
+
+                if (batchWaitString != null) {
+                    config.getH2().transferBatchWaitMicros(Long.parseLong(batchWaitString));
+                }
+
+                if (dataDirString != null) {
+                    config.getH2().dataDir(dataDirString);
+                }
+
+                if (syncString != null) {
+                    config.getH2().syncPolicy(H2Config.SyncPolicy.valueOf(syncString.toUpperCase()));
+                }
+
+                if (syncIntervalString != null) {
+                    config.getH2().syncIntervalMillis(Long.parseLong(syncIntervalString));
+                }
+
+                if (hotAccountsString != null) {
+                    final List<Long> hotAccounts = new ArrayList<>();
+                    for (String id : hotAccountsString.split(",")) {
+                        hotAccounts.add(Long.parseLong(id.trim()));
+                    }
+                    config.getH2().hotAccounts(hotAccounts);
+                }
+
+                if (hotFoldIntervalString != null) {
+                    config.getH2().hotAccountFoldIntervalMillis(Long.parseLong(hotFoldIntervalString));
+                }
+
+                if (journalString != null) {
+                    config.journalDir(journalString);
+                }
+
+                if (accountCacheString != null) {
+                    config.accountCacheSize(Long.parseLong(accountCacheString));
+                }
+
+                if (transferCacheString != null) {
+                    config.transferCacheSize(Long.parseLong(transferCacheString));
+                }
+
+                if (httpInstancesString != null) {
+                    config.httpInstances(Integer.parseInt(httpInstancesString));
+                }
+
+                if (dbReadThreadsString != null) {
+                    config.dbReadThreads(Integer.parseInt(dbReadThreadsString));
+                }
+
+                if (dbWriteThreadsString != null) {
+                    config.dbWriteThreads(Integer.parseInt(dbWriteThreadsString));
+                }
+
+                if (dbAdminThreadsString != null) {
+                    config.dbAdminThreads(Integer.parseInt(dbAdminThreadsString));
+                }
+
+                if (dbMaxInFlightString != null) {
+                    config.dbMaxInFlight(Integer.parseInt(dbMaxInFlightString));
+                }
+
+                if (parse.hasOption("db-virtual-threads")) {
+                    config.dbVirtualThreads(true);
+                }
 
-                final BackendServer server = new BackendServer(port).start();
+                final BackendServer server = new BackendServer(config).start();
                 Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "shutdown-hook"));
             } catch (NumberFormatException e) {
-                System.err.println("Invalid port value: " + portString);
+                System.err.println("Invalid number value: " + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid argument: " + e.getMessage());
             }
 
         } catch (ParseException e) {
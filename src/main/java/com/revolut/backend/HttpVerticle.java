@@ -0,0 +1,85 @@
+package com.revolut.backend;
+
+import com.codahale.metrics.MetricRegistry;
+import com.revolut.backend.db.Database;
+import com.revolut.backend.handler.*;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.ext.web.Route;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.Objects;
+
+import static com.revolut.backend.constants.PathParams.ACCOUNT_ID;
+import static com.revolut.backend.constants.PathParams.TRANSFER_ID;
+
+/**
+ * Http layer of the {@link BackendServer}. Deployed in several instances, each one gets its own event loop,
+ * router and handlers, while the listening port is shared by Vertx and connections are balanced between instances.
+ * <p>
+ * {@link Database}, {@link MetricRegistry}, {@link TransferCache} and {@link PrometheusMetricsHandler} are shared
+ * by all instances, so they must be thread safe.
+ */
+public class HttpVerticle extends AbstractVerticle {
+
+    private final Database database;
+    private final MetricRegistry metricRegistry;
+    private final TransferCache transferCache;
+    private final PrometheusMetricsHandler prometheusMetrics;
+    private final int port;
+
+    /**
+     * @param prometheusMetrics handler listening to the metricRegistry, shared to not encode metrics per instance
+     */
+    public HttpVerticle(Database database, MetricRegistry metricRegistry, TransferCache transferCache,
+                        PrometheusMetricsHandler prometheusMetrics, int port) {
+        Objects.requireNonNull(database, "database must not be null");
+        Objects.requireNonNull(metricRegistry, "metricRegistry must not be null");
+        Objects.requireNonNull(transferCache, "transferCache must not be null");
+        Objects.requireNonNull(prometheusMetrics, "prometheusMetrics must not be null");
+        this.database = database;
+        this.metricRegistry = metricRegistry;
+        this.transferCache = transferCache;
+        this.prometheusMetrics = prometheusMetrics;
+        this.port = port;
+    }
+
+    @Override
+    public void start(Future<Void> startFuture) {
+        final Router router = Router.router(vertx);
+        initRoute(router, HttpMethod.POST, "/user", new CreateUserHandler(database));
+        initRoute(router, HttpMethod.GET, String.format("/account/:%s", ACCOUNT_ID), new GetAccountHandler(database));
+        initRoute(router, HttpMethod.POST, "/account", new CreateAccountHandler(database));
+        initRoute(router, HttpMethod.GET, String.format("/transfer/:%s", TRANSFER_ID), new GetTransferHandler(database, transferCache));
+        initRoute(router, HttpMethod.PATCH, String.format("/account/:%s/transfer", ACCOUNT_ID), new TransferHandler(database, transferCache));
+        initRoute(router, HttpMethod.GET, "/metrics", new ExposeMetricsHandler(metricRegistry));
+        initRoute(router, HttpMethod.GET, "/metrics/prometheus", prometheusMetrics);
+        initRoute(router.route(), MeteringHandler.UNMATCHED, new EndpointNotFoundHandler());
+
+        vertx.createHttpServer()
+                .requestHandler(router)
+                .listen(port, result -> {
+                    if (result.succeeded()) {
+                        startFuture.complete();
+                    } else {
+                        startFuture.fail(result.cause());
+                    }
+                });
+    }
+
+    private void initRoute(Router router, HttpMethod method, String path, Handler<RoutingContext> endpointHandler) {
+        initRoute(router.route(method, path), MetricRegistry.name(path, method.toString()), endpointHandler);
+    }
+
+    private void initRoute(Route route, String routeName, Handler<RoutingContext> endpointHandler) {
+        route.handler(new MeteringHandler(metricRegistry, routeName));
+        route.handler(AccessLogHandler.INSTANCE);
+        route.handler(endpointHandler);
+        route.failureHandler(FailureHandler.INSTANCE);
+    }
+
+}
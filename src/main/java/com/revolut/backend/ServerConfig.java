@@ -0,0 +1,238 @@
+package com.revolut.backend;
+
+import com.revolut.backend.db.impl.H2Config;
+import com.revolut.backend.utils.Args;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup configuration of the {@link BackendServer}
+ */
+public class ServerConfig {
+
+    /**
+     * Available {@link com.revolut.backend.db.Database} implementations
+     */
+    public enum Storage {
+        /**
+         * {@link com.revolut.backend.db.impl.H2Database}
+         */
+        H2,
+        /**
+         * {@link com.revolut.backend.db.impl.InMemoryDatabase}
+         */
+        MEMORY,
+        /**
+         * {@link com.revolut.backend.db.impl.ShardedDatabase}
+         */
+        SHARDED
+    }
+
+    private int port = 8080;
+    private int httpInstances = 2 * Runtime.getRuntime().availableProcessors();
+    private Storage storage = Storage.H2;
+    private int dbReadThreads = 4;
+    private int dbWriteThreads = 8;
+    private int dbAdminThreads = 2;
+    private int dbMaxInFlight = 500;
+    private boolean dbVirtualThreads = false;
+    private int shards = Runtime.getRuntime().availableProcessors();
+    private H2Config h2 = new H2Config();
+    private String journalDir = null;
+    private long idempotencyCacheSize = 100_000;
+    private long idempotencyTtlMillis = TimeUnit.MINUTES.toMillis(10);
+    private long accountCacheSize = 100_000;
+    private long transferCacheSize = 100_000;
+
+    public int getPort() {
+        return port;
+    }
+
+    public ServerConfig port(int port) {
+        Args.isTrue(port > 0, "port must greater 0");
+        this.port = port;
+        return this;
+    }
+
+    public int getHttpInstances() {
+        return httpInstances;
+    }
+
+    /**
+     * @param httpInstances count of {@link HttpVerticle} instances, each one runs on its own event loop
+     */
+    public ServerConfig httpInstances(int httpInstances) {
+        Args.isTrue(httpInstances > 0, "httpInstances must greater 0");
+        this.httpInstances = httpInstances;
+        return this;
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    public ServerConfig storage(Storage storage) {
+        Objects.requireNonNull(storage, "storage must not be null");
+        this.storage = storage;
+        return this;
+    }
+
+    public int getDbReadThreads() {
+        return dbReadThreads;
+    }
+
+    /**
+     * @param dbReadThreads threads executing account and transfer reads
+     */
+    public ServerConfig dbReadThreads(int dbReadThreads) {
+        Args.isTrue(dbReadThreads > 0, "dbReadThreads must greater 0");
+        this.dbReadThreads = dbReadThreads;
+        return this;
+    }
+
+    public int getDbWriteThreads() {
+        return dbWriteThreads;
+    }
+
+    /**
+     * @param dbWriteThreads threads executing transfers
+     */
+    public ServerConfig dbWriteThreads(int dbWriteThreads) {
+        Args.isTrue(dbWriteThreads > 0, "dbWriteThreads must greater 0");
+        this.dbWriteThreads = dbWriteThreads;
+        return this;
+    }
+
+    public int getDbAdminThreads() {
+        return dbAdminThreads;
+    }
+
+    /**
+     * @param dbAdminThreads threads executing user and account creation
+     */
+    public ServerConfig dbAdminThreads(int dbAdminThreads) {
+        Args.isTrue(dbAdminThreads > 0, "dbAdminThreads must greater 0");
+        this.dbAdminThreads = dbAdminThreads;
+        return this;
+    }
+
+    public int getDbMaxInFlight() {
+        return dbMaxInFlight;
+    }
+
+    /**
+     * @param dbMaxInFlight upper bound of the adaptive limit of database requests in flight, per each lane
+     */
+    public ServerConfig dbMaxInFlight(int dbMaxInFlight) {
+        Args.isTrue(dbMaxInFlight > 0, "dbMaxInFlight must greater 0");
+        this.dbMaxInFlight = dbMaxInFlight;
+        return this;
+    }
+
+    public boolean isDbVirtualThreads() {
+        return dbVirtualThreads;
+    }
+
+    /**
+     * @param dbVirtualThreads run each database call on its own virtual thread, lane threads counts bound
+     *                         the concurrency instead of the pool sizes. Ignored if the runtime has no virtual threads
+     */
+    public ServerConfig dbVirtualThreads(boolean dbVirtualThreads) {
+        this.dbVirtualThreads = dbVirtualThreads;
+        return this;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * @param shards count of shards (threads) for the {@link Storage#SHARDED} storage
+     */
+    public ServerConfig shards(int shards) {
+        Args.isTrue(shards > 0, "shards must greater 0");
+        this.shards = shards;
+        return this;
+    }
+
+    public H2Config getH2() {
+        return h2;
+    }
+
+    /**
+     * @param h2 tuning options for the {@link Storage#H2} storage
+     */
+    public ServerConfig h2(H2Config h2) {
+        Objects.requireNonNull(h2, "h2 must not be null");
+        this.h2 = h2;
+        return this;
+    }
+
+    public String getJournalDir() {
+        return journalDir;
+    }
+
+    /**
+     * @param journalDir directory of the write ahead journal for the {@link Storage#MEMORY} storage.
+     *                   Without journal the ledger is lost on restart
+     */
+    public ServerConfig journalDir(String journalDir) {
+        Objects.requireNonNull(journalDir, "journalDir must not be null");
+        this.journalDir = journalDir;
+        return this;
+    }
+
+    public long getIdempotencyCacheSize() {
+        return idempotencyCacheSize;
+    }
+
+    /**
+     * @param idempotencyCacheSize max count of completed transfers remembered to answer retries without storage
+     */
+    public ServerConfig idempotencyCacheSize(long idempotencyCacheSize) {
+        Args.isTrue(idempotencyCacheSize > 0, "idempotencyCacheSize must greater 0");
+        this.idempotencyCacheSize = idempotencyCacheSize;
+        return this;
+    }
+
+    public long getIdempotencyTtlMillis() {
+        return idempotencyTtlMillis;
+    }
+
+    /**
+     * @param idempotencyTtlMillis time to remember completed transfer for retries
+     */
+    public ServerConfig idempotencyTtlMillis(long idempotencyTtlMillis) {
+        Args.isTrue(idempotencyTtlMillis > 0, "idempotencyTtlMillis must greater 0");
+        this.idempotencyTtlMillis = idempotencyTtlMillis;
+        return this;
+    }
+
+    public long getAccountCacheSize() {
+        return accountCacheSize;
+    }
+
+    /**
+     * @param accountCacheSize max count of accounts cached in process for reads, 0 disables the cache
+     */
+    public ServerConfig accountCacheSize(long accountCacheSize) {
+        Args.isTrue(accountCacheSize >= 0, "accountCacheSize must not be negative");
+        this.accountCacheSize = accountCacheSize;
+        return this;
+    }
+
+    public long getTransferCacheSize() {
+        return transferCacheSize;
+    }
+
+    /**
+     * @param transferCacheSize max count of serialized transfers cached for reads, 0 disables the cache
+     */
+    public ServerConfig transferCacheSize(long transferCacheSize) {
+        Args.isTrue(transferCacheSize >= 0, "transferCacheSize must not be negative");
+        this.transferCacheSize = transferCacheSize;
+        return this;
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.revolut.backend.constants;
+
+import com.revolut.backend.utils.JsonWriter;
+
+/**
+ * {@link JsonFields} encoded for {@link JsonWriter}
+ */
+public class JsonKeys {
+
+    private JsonKeys() {
+    }
+
+    public static final JsonWriter.Key ACCOUNT_ID = JsonWriter.key(JsonFields.ACCOUNT_ID);
+    public static final JsonWriter.Key BALANCE = JsonWriter.key(JsonFields.BALANCE);
+    public static final JsonWriter.Key TRANSFER_ID = JsonWriter.key(JsonFields.TRANSFER_ID);
+    public static final JsonWriter.Key SRC_ACC_ID = JsonWriter.key(JsonFields.SRC_ACC_ID);
+    public static final JsonWriter.Key DST_ACC_ID = JsonWriter.key(JsonFields.DST_ACC_ID);
+    public static final JsonWriter.Key USER_ID = JsonWriter.key(JsonFields.USER_ID);
+    public static final JsonWriter.Key TIMESTAMP = JsonWriter.key(JsonFields.TIMESTAMP);
+    public static final JsonWriter.Key AMOUNT = JsonWriter.key(JsonFields.AMOUNT);
+    public static final JsonWriter.Key SRC_ACC_BEFORE = JsonWriter.key(JsonFields.SRC_ACC_BEFORE);
+    public static final JsonWriter.Key SRC_ACC_AFTER = JsonWriter.key(JsonFields.SRC_ACC_AFTER);
+    public static final JsonWriter.Key DST_ACC_BEFORE = JsonWriter.key(JsonFields.DST_ACC_BEFORE);
+    public static final JsonWriter.Key DST_ACC_AFTER = JsonWriter.key(JsonFields.DST_ACC_AFTER);
+    public static final JsonWriter.Key ERROR = JsonWriter.key(JsonFields.ERROR);
+
+}
@@ -1,9 +1,9 @@
 package com.revolut.backend.db;
 
-import java.math.BigDecimal;
+import com.revolut.backend.entity.Money;
 
 /**
- * Callback for {@link Database#createAccount(long, BigDecimal, CreateAccountCallback)}
+ * Callback for {@link Database#createAccount(long, Money, CreateAccountCallback)}
  */
 public interface CreateAccountCallback {
 
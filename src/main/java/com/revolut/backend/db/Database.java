@@ -1,6 +1,6 @@
 package com.revolut.backend.db;
 
-import java.math.BigDecimal;
+import com.revolut.backend.entity.Money;
 
 /**
  * Essentially, database is a concurrent safe storage responsible for storing data and transfering means
@@ -27,12 +27,13 @@ public interface Database {
      * @param callback non null callback to be executed after completion
      * @throws java.util.concurrent.RejectedExecutionException whenever execution queue is full
      */
-    void createAccount(long userId, BigDecimal balance, CreateAccountCallback callback);
+    void createAccount(long userId, Money balance, CreateAccountCallback callback);
 
     /**
      * Transfer means from one existing account to another
      *
-     * @param requestId    non null request id to be logged in the transfer
+     * @param requestId    non null request id to be logged in the transfer. A transfer repeated with the same
+     *                     user id and request id is not executed again, the id of the original one is returned
      * @param userId       requester id
      * @param srcAccountId source account id, should be owned by userId
      * @param dstAccountId destination account id
@@ -40,7 +41,7 @@ public interface Database {
      * @param callback     non null callback to be executed after completion
      * @throws java.util.concurrent.RejectedExecutionException whenever execution queue is full
      */
-    void transfer(String requestId, long userId, long srcAccountId, long dstAccountId, BigDecimal amount, TransferCallback callback);
+    void transfer(String requestId, long userId, long srcAccountId, long dstAccountId, Money amount, TransferCallback callback);
 
     /**
      * Get existing account
@@ -0,0 +1,27 @@
+package com.revolut.backend.db;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Thrown by {@link Database} methods when the request is shed to keep the database latency low.
+ * Carries an estimation of the time the work in flight needs to drain.
+ */
+public class OverloadedException extends RejectedExecutionException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMillis;
+
+    public OverloadedException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return estimated time to retry after, in milliseconds
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+}
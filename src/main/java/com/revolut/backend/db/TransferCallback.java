@@ -1,9 +1,12 @@
 package com.revolut.backend.db;
 
-import java.math.BigDecimal;
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.entity.Transfer;
+
+import java.util.concurrent.RejectedExecutionException;
 
 /**
- * Callback for {@link Database#transfer(String, long, long, long, BigDecimal, TransferCallback)}}
+ * Callback for {@link Database#transfer(String, long, long, long, Money, TransferCallback)}}
  */
 public interface TransferCallback {
 
@@ -14,6 +17,15 @@ public interface TransferCallback {
      */
     void onSuccess(long transferId);
 
+    /**
+     * Will be called right before {@link #onSuccess(long)} with the just committed transfer, if the implementation
+     * has it at hand. Transfers are immutable, so it could be cached. Not called for repeated requests.
+     *
+     * @param transfer committed transfer
+     */
+    default void onCommitted(Transfer transfer) {
+    }
+
     /**
      * Will be called if one of account not found
      *
@@ -38,4 +50,15 @@ public interface TransferCallback {
      */
     void onUnexpectedError(Exception e);
 
+    /**
+     * Will be called if the transfer is rejected without being executed, so it could be retried later.
+     * Rejections are thrown by {@link Database#transfer} as a rule, this is for callers notified by another
+     * transfer, e.g. joined duplicates. Handled as {@link #onUnexpectedError(Exception)} by default.
+     *
+     * @param e never null
+     */
+    default void onRejected(RejectedExecutionException e) {
+        onUnexpectedError(e);
+    }
+
 }
@@ -0,0 +1,275 @@
+package com.revolut.backend.db.impl;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.revolut.backend.db.*;
+import com.revolut.backend.db.impl.ExecutionLanes.Lane;
+import com.revolut.backend.entity.Account;
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.entity.Transfer;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decorator limiting the database work in flight with {@link GradientLimiter} per {@link Lane}: requests over
+ * the limit of their lane are rejected with {@link OverloadedException} right away instead of waiting in the executor
+ * queue. The limit follows the latency observed from admission to callback, so it includes the queueing
+ * of the delegate. Lanes are limited independently, so slow transfers don't cut the limit of reads.
+ * <p>
+ * Exposes "db.[lane].limit" and "db.[lane].inflight" gauges, "db.[lane].rejections" meter and "db.[lane].latency"
+ * timer, e.g. "db.read.limit".
+ */
+public class AdmissionControlDatabase implements Database {
+
+    private final Database delegate;
+    private final LaneLimit[] limits = new LaneLimit[Lane.values().length];
+
+    /**
+     * Construct new instance
+     *
+     * @param delegate       actual database
+     * @param limiters       limiter of the work in flight per each lane
+     * @param metricRegistry registry for the limiter metrics
+     */
+    public AdmissionControlDatabase(Database delegate, Map<Lane, GradientLimiter> limiters, MetricRegistry metricRegistry) {
+        Objects.requireNonNull(delegate, "delegate must not be null");
+        Objects.requireNonNull(limiters, "limiters must not be null");
+        Objects.requireNonNull(metricRegistry, "metricRegistry must not be null");
+
+        this.delegate = delegate;
+        for (Lane lane : Lane.values()) {
+            final GradientLimiter limiter = limiters.get(lane);
+            Objects.requireNonNull(limiter, "limiter of the " + lane + " lane must not be null");
+            limits[lane.ordinal()] = new LaneLimit(lane, limiter, metricRegistry);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void createUser(String userName, CreateUserCallback callback) {
+        Objects.requireNonNull(callback, "callback must not be null");
+
+        final LaneLimit limit = limits[Lane.ADMIN.ordinal()];
+        final long admittedAt = limit.acquire();
+        limit.execute(() -> delegate.createUser(userName, new CreateUserCallback() {
+            @Override
+            public void onSuccess(long userId) {
+                limit.release(admittedAt);
+                callback.onSuccess(userId);
+            }
+
+            @Override
+            public void onUnexpectedError(Exception e) {
+                limit.release(admittedAt);
+                callback.onUnexpectedError(e);
+            }
+        }));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void createAccount(long userId, Money balance, CreateAccountCallback callback) {
+        Objects.requireNonNull(callback, "callback must not be null");
+
+        final LaneLimit limit = limits[Lane.ADMIN.ordinal()];
+        final long admittedAt = limit.acquire();
+        limit.execute(() -> delegate.createAccount(userId, balance, new CreateAccountCallback() {
+            @Override
+            public void onSuccess(long accountId) {
+                limit.release(admittedAt);
+                callback.onSuccess(accountId);
+            }
+
+            @Override
+            public void onUserNotFound() {
+                limit.release(admittedAt);
+                callback.onUserNotFound();
+            }
+
+            @Override
+            public void onUnexpectedError(Exception e) {
+                limit.release(admittedAt);
+                callback.onUnexpectedError(e);
+            }
+        }));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void transfer(String requestId, long userId, long srcAccountId, long dstAccountId, Money amount, TransferCallback callback) {
+        Objects.requireNonNull(callback, "callback must not be null");
+
+        final LaneLimit limit = limits[Lane.WRITE.ordinal()];
+        final long admittedAt = limit.acquire();
+        limit.execute(() -> delegate.transfer(requestId, userId, srcAccountId, dstAccountId, amount, new TransferCallback() {
+            @Override
+            public void onCommitted(Transfer transfer) {
+                callback.onCommitted(transfer);
+            }
+
+            @Override
+            public void onSuccess(long transferId) {
+                limit.release(admittedAt);
+                callback.onSuccess(transferId);
+            }
+
+            @Override
+            public void onAccountNotFound(long accountId) {
+                limit.release(admittedAt);
+                callback.onAccountNotFound(accountId);
+            }
+
+            @Override
+            public void onNotOwner() {
+                limit.release(admittedAt);
+                callback.onNotOwner();
+            }
+
+            @Override
+            public void onInsufficientFunds() {
+                limit.release(admittedAt);
+                callback.onInsufficientFunds();
+            }
+
+            @Override
+            public void onUnexpectedError(Exception e) {
+                limit.release(admittedAt);
+                callback.onUnexpectedError(e);
+            }
+        }));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getAccount(long userId, long accountId, GetAccountCallback callback) {
+        Objects.requireNonNull(callback, "callback must not be null");
+
+        final LaneLimit limit = limits[Lane.READ.ordinal()];
+        final long admittedAt = limit.acquire();
+        limit.execute(() -> delegate.getAccount(userId, accountId, new GetAccountCallback() {
+            @Override
+            public void onSuccess(Account account) {
+                limit.release(admittedAt);
+                callback.onSuccess(account);
+            }
+
+            @Override
+            public void onAccountNotFound() {
+                limit.release(admittedAt);
+                callback.onAccountNotFound();
+            }
+
+            @Override
+            public void onUnexpectedError(Exception e) {
+                limit.release(admittedAt);
+                callback.onUnexpectedError(e);
+            }
+        }));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getTransfer(long userId, long transferId, GetTransferCallback callback) {
+        Objects.requireNonNull(callback, "callback must not be null");
+
+        final LaneLimit limit = limits[Lane.READ.ordinal()];
+        final long admittedAt = limit.acquire();
+        limit.execute(() -> delegate.getTransfer(userId, transferId, new GetTransferCallback() {
+            @Override
+            public void onSuccess(Transfer transfer) {
+                limit.release(admittedAt);
+                callback.onSuccess(transfer);
+            }
+
+            @Override
+            public void onTransferNotFound() {
+                limit.release(admittedAt);
+                callback.onTransferNotFound();
+            }
+
+            @Override
+            public void onUnexpectedError(Exception e) {
+                limit.release(admittedAt);
+                callback.onUnexpectedError(e);
+            }
+        }));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init() {
+        delegate.init();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() {
+        delegate.stop();
+    }
+
+    private static final class LaneLimit {
+
+        private final GradientLimiter limiter;
+        private final Meter rejections;
+        private final Timer latency;
+
+        private LaneLimit(Lane lane, GradientLimiter limiter, MetricRegistry metricRegistry) {
+            final String prefix = "db." + lane.name().toLowerCase();
+            this.limiter = limiter;
+            this.rejections = metricRegistry.meter(prefix + ".rejections");
+            this.latency = metricRegistry.timer(prefix + ".latency");
+            metricRegistry.register(prefix + ".limit", (Gauge<Integer>) limiter::getLimit);
+            metricRegistry.register(prefix + ".inflight", (Gauge<Integer>) limiter::getInFlight);
+        }
+
+        /**
+         * @return admission time
+         * @throws OverloadedException if the limit is reached
+         */
+        private long acquire() {
+            if (!limiter.tryAcquire()) {
+                rejections.mark();
+                throw new OverloadedException("Database is overloaded, limit is " + limiter.getLimit(),
+                        Math.max(1, limiter.drainMillis()));
+            }
+            return System.nanoTime();
+        }
+
+        private void release(long admittedAt) {
+            final long rtt = System.nanoTime() - admittedAt;
+            latency.update(rtt, TimeUnit.NANOSECONDS);
+            limiter.release(rtt);
+        }
+
+        /**
+         * Call the delegate, releasing the permit if it throws (e.g. its own queue is full)
+         */
+        private void execute(Runnable call) {
+            try {
+                call.run();
+            } catch (RuntimeException e) {
+                limiter.release();
+                throw e;
+            }
+        }
+    }
+
+}
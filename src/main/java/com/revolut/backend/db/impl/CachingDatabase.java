@@ -0,0 +1,237 @@
+package com.revolut.backend.db.impl;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.revolut.backend.db.*;
+import com.revolut.backend.entity.Account;
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.entity.Transfer;
+import com.revolut.backend.utils.Args;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Decorator serving {@link #getAccount(long, long, GetAccountCallback)} from a bounded in process cache,
+ * so balance reads don't compete with transfers for the database executor. Least recently used accounts are evicted.
+ * <p>
+ * Transfers invalidate both accounts before the transfer is acknowledged, so a read never returns a balance
+ * older than the last acknowledged transfer. A load racing with a transfer could read the balance before
+ * the transfer, so loaded accounts are cached only if no transfer touched the account meanwhile: each lock stripe
+ * has a version incremented by transfers, the version is checked and the account is cached under the stripe lock.
+ * <p>
+ * Guarantee holds for transfers made through this instance only.
+ */
+public class CachingDatabase implements Database {
+
+    private static final int STRIPES = 1024;
+
+    private final Database delegate;
+    private final Cache<Long, Account> accounts;
+    private final Object[] locks = new Object[STRIPES];
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+    private final AtomicLong transfersVersion = new AtomicLong();
+    private final Meter hits;
+    private final Meter misses;
+
+    /**
+     * Construct new instance
+     *
+     * @param delegate       actual database
+     * @param maxSize        max count of cached accounts
+     * @param metricRegistry registry for the "db.account.cache.hits" and "db.account.cache.misses" meters
+     */
+    public CachingDatabase(Database delegate, long maxSize, MetricRegistry metricRegistry) {
+        Objects.requireNonNull(delegate, "delegate must not be null");
+        Args.isTrue(maxSize > 0, "maxSize must be greater zero");
+        Objects.requireNonNull(metricRegistry, "metricRegistry must not be null");
+
+        this.delegate = delegate;
+        this.accounts = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .build();
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        this.hits = metricRegistry.meter("db.account.cache.hits");
+        this.misses = metricRegistry.meter("db.account.cache.misses");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getAccount(long userId, long accountId, GetAccountCallback callback) {
+        Args.isTrue(userId > 0, "userId must be greater zero");
+        Args.isTrue(accountId > 0, "accountId must be greater zero");
+        Objects.requireNonNull(callback, "callback must not be null");
+
+        final Account cached = accounts.getIfPresent(accountId);
+        if (cached != null) {
+            hits.mark();
+            if (cached.getOwnerId() == userId) {
+                callback.onSuccess(cached);
+            } else {
+                callback.onAccountNotFound();
+            }
+            return;
+        }
+
+        misses.mark();
+        final int stripe = stripe(accountId);
+        final long version = versions.get(stripe);
+
+        delegate.getAccount(userId, accountId, new GetAccountCallback() {
+            @Override
+            public void onSuccess(Account account) {
+                synchronized (locks[stripe]) {
+                    if (versions.get(stripe) == version) {
+                        accounts.put(accountId, account);
+                    }
+                }
+                callback.onSuccess(account);
+            }
+
+            @Override
+            public void onAccountNotFound() {
+                callback.onAccountNotFound();
+            }
+
+            @Override
+            public void onUnexpectedError(Exception e) {
+                callback.onUnexpectedError(e);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void createAccount(long userId, Money balance, CreateAccountCallback callback) {
+        Objects.requireNonNull(balance, "balance must not be null");
+        Objects.requireNonNull(callback, "callback must not be null");
+
+        //new account id is unknown in advance, so any transfer meanwhile prevents caching
+        final long version = transfersVersion.get();
+
+        delegate.createAccount(userId, balance, new CreateAccountCallback() {
+            @Override
+            public void onSuccess(long accountId) {
+                synchronized (locks[stripe(accountId)]) {
+                    if (transfersVersion.get() == version) {
+                        accounts.put(accountId, new Account(accountId, userId, balance));
+                    }
+                }
+                callback.onSuccess(accountId);
+            }
+
+            @Override
+            public void onUserNotFound() {
+                callback.onUserNotFound();
+            }
+
+            @Override
+            public void onUnexpectedError(Exception e) {
+                callback.onUnexpectedError(e);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void transfer(String requestId, long userId, long srcAccountId, long dstAccountId, Money amount, TransferCallback callback) {
+        Objects.requireNonNull(callback, "callback must not be null");
+
+        delegate.transfer(requestId, userId, srcAccountId, dstAccountId, amount, new TransferCallback() {
+            @Override
+            public void onCommitted(Transfer transfer) {
+                callback.onCommitted(transfer);
+            }
+
+            @Override
+            public void onSuccess(long transferId) {
+                invalidate(srcAccountId, dstAccountId);
+                callback.onSuccess(transferId);
+            }
+
+            @Override
+            public void onAccountNotFound(long accountId) {
+                callback.onAccountNotFound(accountId);
+            }
+
+            @Override
+            public void onNotOwner() {
+                callback.onNotOwner();
+            }
+
+            @Override
+            public void onInsufficientFunds() {
+                callback.onInsufficientFunds();
+            }
+
+            @Override
+            public void onUnexpectedError(Exception e) {
+                //the transfer could be committed anyway
+                invalidate(srcAccountId, dstAccountId);
+                callback.onUnexpectedError(e);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void createUser(String userName, CreateUserCallback callback) {
+        delegate.createUser(userName, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getTransfer(long userId, long transferId, GetTransferCallback callback) {
+        delegate.getTransfer(userId, transferId, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init() {
+        delegate.init();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() {
+        delegate.stop();
+    }
+
+    private void invalidate(long srcAccountId, long dstAccountId) {
+        transfersVersion.incrementAndGet();
+        invalidate(srcAccountId);
+        invalidate(dstAccountId);
+    }
+
+    private void invalidate(long accountId) {
+        final int stripe = stripe(accountId);
+        synchronized (locks[stripe]) {
+            versions.incrementAndGet(stripe);
+            accounts.invalidate(accountId);
+        }
+    }
+
+    private static int stripe(long accountId) {
+        return (int) (accountId & (STRIPES - 1));
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.revolut.backend.db.impl;
+
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Executors of the database calls by their kind, each with its own threads and queue, so transfers waiting
+ * for row locks don't delay reads and user creation behind them.
+ */
+public class ExecutionLanes {
+
+    /**
+     * Kinds of the database calls
+     */
+    public enum Lane {
+        /**
+         * getAccount, getTransfer
+         */
+        READ,
+        /**
+         * transfer
+         */
+        WRITE,
+        /**
+         * createUser, createAccount
+         */
+        ADMIN
+    }
+
+    private final ExecutorService read;
+    private final ExecutorService write;
+    private final ExecutorService admin;
+
+    public ExecutionLanes(ExecutorService read, ExecutorService write, ExecutorService admin) {
+        Objects.requireNonNull(read, "read must not be null");
+        Objects.requireNonNull(write, "write must not be null");
+        Objects.requireNonNull(admin, "admin must not be null");
+        this.read = read;
+        this.write = write;
+        this.admin = admin;
+    }
+
+    /**
+     * @return lanes sharing the single executor
+     */
+    public static ExecutionLanes of(ExecutorService executorService) {
+        return new ExecutionLanes(executorService, executorService, executorService);
+    }
+
+    public ExecutorService get(Lane lane) {
+        Objects.requireNonNull(lane, "lane must not be null");
+        switch (lane) {
+            case READ:
+                return read;
+            case WRITE:
+                return write;
+            case ADMIN:
+                return admin;
+            default:
+                throw new IllegalArgumentException("Unknown lane: " + lane);
+        }
+    }
+
+    public ExecutorService read() {
+        return read;
+    }
+
+    public ExecutorService write() {
+        return write;
+    }
+
+    public ExecutorService admin() {
+        return admin;
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.revolut.backend.db.impl;
+
+import com.revolut.backend.utils.Args;
+
+/**
+ * Concurrency limit adjusted from the observed latency.
+ * <p>
+ * Two moving averages of the latency are kept: a short term one following the current load and a long term one
+ * approximating the latency without queueing. While they are close the limit grows by its square root, once the short
+ * term latency rises the limit is multiplied by their ratio (but at most halved per sample), so the work in flight
+ * is cut before it is dominated by waiting in queues. The limit is not grown while less than half of it is used.
+ */
+public class GradientLimiter {
+
+    private static final double SHORT_RTT_WEIGHT = 0.1;
+    private static final double LONG_RTT_WEIGHT = 0.005;
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private double limit;
+    private double shortRtt;
+    private double longRtt;
+    private int inFlight;
+
+    /**
+     * @param initialLimit limit before any latency observed
+     * @param minLimit     limit never goes lower
+     * @param maxLimit     limit never goes higher
+     */
+    public GradientLimiter(int initialLimit, int minLimit, int maxLimit) {
+        Args.isTrue(minLimit > 0, "minLimit must be greater zero");
+        Args.isTrue(maxLimit >= minLimit, "maxLimit must not be less minLimit");
+        Args.isTrue(initialLimit >= minLimit && initialLimit <= maxLimit, "initialLimit must be within min and max");
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * @return true if the work is admitted, {@link #release(long)} must be called on its completion
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Complete admitted work and adjust the limit
+     *
+     * @param rttNanos time from admission to completion
+     */
+    public synchronized void release(long rttNanos) {
+        final int used = inFlight--;
+
+        shortRtt = shortRtt == 0 ? rttNanos : shortRtt * (1 - SHORT_RTT_WEIGHT) + rttNanos * SHORT_RTT_WEIGHT;
+        longRtt = longRtt == 0 ? rttNanos : longRtt * (1 - LONG_RTT_WEIGHT) + rttNanos * LONG_RTT_WEIGHT;
+
+        //the long term average drifted up with a sustained load, let it recover faster
+        if (longRtt > shortRtt * 2) {
+            longRtt *= 0.95;
+        }
+
+        if (used < limit / 2) {
+            return;
+        }
+
+        final double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        final double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+
+    /**
+     * Complete admitted work which failed before reaching the database, the limit is not adjusted
+     */
+    public synchronized void release() {
+        inFlight--;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return estimated time for the work in flight to complete, in milliseconds
+     */
+    public synchronized long drainMillis() {
+        return (long) Math.ceil(inFlight * shortRtt / limit / 1_000_000);
+    }
+
+}
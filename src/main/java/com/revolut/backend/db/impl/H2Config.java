@@ -0,0 +1,261 @@
+package com.revolut.backend.db.impl;
+
+import com.revolut.backend.utils.Args;
+
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Tuning options of the {@link H2Database}
+ */
+public class H2Config {
+
+    /**
+     * Defines when committed changes are forced to the disk in the durable mode
+     */
+    public enum SyncPolicy {
+        /**
+         * Force the file after each commit, nothing acknowledged is lost on a crash, the slowest option
+         */
+        COMMIT,
+        /**
+         * Force the file every {@link #getSyncIntervalMillis()}, changes committed within the last interval
+         * could be lost on a crash
+         */
+        INTERVAL,
+        /**
+         * Never force explicitly, H2 writes the changes in the background and the OS decides when
+         * they reach the disk
+         */
+        OS
+    }
+
+    private boolean tcpServer = true;
+    private int sessionPoolSize = 0;
+
+    private String dataDir = null;
+    private SyncPolicy syncPolicy = SyncPolicy.COMMIT;
+    private long syncIntervalMillis = 100;
+
+    private int transferBatchSize = 0;
+    private long transferBatchWaitMicros = 200;
+    private int transferBatchQueueSize = 1024;
+
+    private int idBlockSize = 1000;
+    private boolean transferProcedure = false;
+
+    private Set<Long> hotAccounts = Collections.emptySet();
+    private int hotAccountStripes = 16;
+    private long hotAccountFoldIntervalMillis = 100;
+
+    public boolean isTcpServer() {
+        return tcpServer;
+    }
+
+    /**
+     * @param tcpServer expose the database to other processes with H2 TCP server, otherwise it is reachable
+     *                  only in-process through the data source
+     */
+    public H2Config tcpServer(boolean tcpServer) {
+        this.tcpServer = tcpServer;
+        return this;
+    }
+
+    public int getSessionPoolSize() {
+        return sessionPoolSize;
+    }
+
+    /**
+     * @param sessionPoolSize sessions opened on startup, should cover all the threads calling the database,
+     *                        so no call waits for a connection. 0 opens sessions on demand
+     */
+    public H2Config sessionPoolSize(int sessionPoolSize) {
+        Args.isTrue(sessionPoolSize >= 0, "sessionPoolSize must not be negative");
+        this.sessionPoolSize = sessionPoolSize;
+        return this;
+    }
+
+    public String getDataDir() {
+        return dataDir;
+    }
+
+    /**
+     * @param dataDir directory of the database file. If set, tables are file backed and existing data is reopened
+     *                on startup, otherwise the database lives in memory and is wiped on each start
+     */
+    public H2Config dataDir(String dataDir) {
+        Objects.requireNonNull(dataDir, "dataDir must not be null");
+        this.dataDir = dataDir;
+        return this;
+    }
+
+    public SyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    /**
+     * @param syncPolicy durability of the commits, applies only if {@link #dataDir(String)} is set
+     */
+    public H2Config syncPolicy(SyncPolicy syncPolicy) {
+        Objects.requireNonNull(syncPolicy, "syncPolicy must not be null");
+        this.syncPolicy = syncPolicy;
+        return this;
+    }
+
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    /**
+     * @param syncIntervalMillis period of the {@link SyncPolicy#INTERVAL} sync
+     */
+    public H2Config syncIntervalMillis(long syncIntervalMillis) {
+        Args.isTrue(syncIntervalMillis > 0, "syncIntervalMillis must be greater zero");
+        this.syncIntervalMillis = syncIntervalMillis;
+        return this;
+    }
+
+    /**
+     * @return jdbc url matching the data dir and the sync policy
+     */
+    public String getJdbcUrl() {
+        if (!isDurable()) {
+            return "jdbc:h2:mem:db";
+        }
+
+        //WRITE_DELAY is the max delay before committed changes are written to the file (but not forced)
+        final long writeDelay;
+        switch (syncPolicy) {
+            case COMMIT:
+                writeDelay = 0;
+                break;
+            case INTERVAL:
+                writeDelay = syncIntervalMillis;
+                break;
+            default:
+                writeDelay = 500;
+        }
+
+        return "jdbc:h2:file:" + Paths.get(dataDir, "db").toAbsolutePath() + ";MV_STORE=TRUE;WRITE_DELAY=" + writeDelay;
+    }
+
+    public int getTransferBatchSize() {
+        return transferBatchSize;
+    }
+
+    /**
+     * @param transferBatchSize max count of transfers committed in one transaction. Values 0 and 1 disable
+     *                          batching, so each transfer is executed in its own transaction on the executor
+     */
+    public H2Config transferBatchSize(int transferBatchSize) {
+        Args.isTrue(transferBatchSize >= 0, "transferBatchSize must not be negative");
+        this.transferBatchSize = transferBatchSize;
+        return this;
+    }
+
+    public long getTransferBatchWaitMicros() {
+        return transferBatchWaitMicros;
+    }
+
+    /**
+     * @param transferBatchWaitMicros max time to wait for the batch to be filled after the first transfer arrived
+     */
+    public H2Config transferBatchWaitMicros(long transferBatchWaitMicros) {
+        Args.isTrue(transferBatchWaitMicros >= 0, "transferBatchWaitMicros must not be negative");
+        this.transferBatchWaitMicros = transferBatchWaitMicros;
+        return this;
+    }
+
+    public int getTransferBatchQueueSize() {
+        return transferBatchQueueSize;
+    }
+
+    /**
+     * @param transferBatchQueueSize max count of transfers waiting for the batch writer
+     */
+    public H2Config transferBatchQueueSize(int transferBatchQueueSize) {
+        Args.isTrue(transferBatchQueueSize > 0, "transferBatchQueueSize must be greater zero");
+        this.transferBatchQueueSize = transferBatchQueueSize;
+        return this;
+    }
+
+    public int getIdBlockSize() {
+        return idBlockSize;
+    }
+
+    /**
+     * @param idBlockSize count of ids reserved from the sequence at once, not used ones are skipped on restart
+     */
+    public H2Config idBlockSize(int idBlockSize) {
+        Args.isTrue(idBlockSize > 0, "idBlockSize must be greater zero");
+        this.idBlockSize = idBlockSize;
+        return this;
+    }
+
+    public boolean isTransferProcedure() {
+        return transferProcedure;
+    }
+
+    /**
+     * @param transferProcedure execute each transfer with one call of {@link H2TransferProcedure} instead of
+     *                          a statement per step. Could not be combined with transfers batching
+     */
+    public H2Config transferProcedure(boolean transferProcedure) {
+        this.transferProcedure = transferProcedure;
+        return this;
+    }
+
+    public Set<Long> getHotAccounts() {
+        return hotAccounts;
+    }
+
+    /**
+     * @param hotAccounts ids of accounts receiving a large share of transfers. Credits to them are accumulated
+     *                    in striped sub-balances instead of locking the account row, see {@link H2Database}.
+     *                    Could not be combined with transfers batching
+     */
+    public H2Config hotAccounts(Collection<Long> hotAccounts) {
+        Objects.requireNonNull(hotAccounts, "hotAccounts must not be null");
+        this.hotAccounts = Collections.unmodifiableSet(new HashSet<>(hotAccounts));
+        return this;
+    }
+
+    public int getHotAccountStripes() {
+        return hotAccountStripes;
+    }
+
+    /**
+     * @param hotAccountStripes count of sub-balances per hot account, should be not less than the writing threads
+     */
+    public H2Config hotAccountStripes(int hotAccountStripes) {
+        Args.isTrue(hotAccountStripes > 0, "hotAccountStripes must be greater zero");
+        this.hotAccountStripes = hotAccountStripes;
+        return this;
+    }
+
+    public long getHotAccountFoldIntervalMillis() {
+        return hotAccountFoldIntervalMillis;
+    }
+
+    /**
+     * @param hotAccountFoldIntervalMillis period of folding the sub-balances back to the account balance
+     */
+    public H2Config hotAccountFoldIntervalMillis(long hotAccountFoldIntervalMillis) {
+        Args.isTrue(hotAccountFoldIntervalMillis > 0, "hotAccountFoldIntervalMillis must be greater zero");
+        this.hotAccountFoldIntervalMillis = hotAccountFoldIntervalMillis;
+        return this;
+    }
+
+    boolean isDurable() {
+        return dataDir != null;
+    }
+
+    boolean isTransferBatching() {
+        return transferBatchSize > 1;
+    }
+
+}
@@ -1,7 +1,13 @@
 package com.revolut.backend.db.impl;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.revolut.backend.db.*;
 import com.revolut.backend.entity.Account;
+import com.revolut.backend.entity.Money;
 import com.revolut.backend.entity.Transfer;
 import com.revolut.backend.utils.Args;
 import org.h2.tools.Server;
@@ -9,21 +15,61 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
-import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Database implementation based on in memory H2
+ * Database implementation based on H2. By default the database lives in memory and is wiped on each start.
+ * If {@link H2Config#getDataDir()} is set, tables are file backed, existing data is reopened on start and
+ * commits are forced to the disk according to {@link H2Config#getSyncPolicy()}.
+ * <p>
+ * Connections are taken from the data source once and kept as {@link H2Session}s with prepared statements
+ * of all queries, so an operation doesn't set the session up and parse the sql again.
+ * {@link H2Config#getSessionPoolSize()} sessions are opened on startup.
+ * <p>
+ * The database is exposed with H2 TCP server on the given port, unless {@link H2Config#isTcpServer()} is off.
+ * <p>
+ * Transfers are idempotent: a transfer repeated with the same user id and request id is not executed again,
+ * the id of the original one is returned. This is guaranteed by the unique index, so it holds across restarts
+ * of the durable database.
+ * <p>
+ * Optionally transfers could be group committed: a dedicated writer thread takes up to
+ * {@link H2Config#getTransferBatchSize()} pending transfers and applies them in one transaction,
+ * see {@link H2Config}.
+ * <p>
+ * Optionally the whole transfer is executed with one call of {@link H2TransferProcedure}, see
+ * {@link H2Config#isTransferProcedure()}.
+ * <p>
+ * Credits to {@link H2Config#getHotAccounts()} don't lock the account row: they are added to one of
+ * {@link H2Config#getHotAccountStripes()} rows of "account_credits" and folded back to the balance periodically.
+ * The balance of a hot account is the account row plus its credits, debits still lock the row and are checked
+ * against it. Balances written to the transfer are taken from the shadow balance kept in memory, which is moved
+ * atomically before the insert, so they form a gapless chain per hot account unless a transfer fails after that.
  */
 public class H2Database implements Database {
 
     private enum ErrorCode {
-        PARENT_MISSING("23506");
+        PARENT_MISSING("23506"),
+        DUPLICATE_KEY("23505");
 
         private final String sqlState;
 
@@ -36,31 +82,98 @@ public class H2Database implements Database {
         }
     }
 
+    static final String INSERT_TRANSFER =
+            "INSERT INTO transfers (id, ts, src_acc_id, dst_acc_id, amount, user_id, request_id, " +
+                    "src_acc_before, src_acc_after, dst_acc_before, dst_acc_after) " +
+                    "VALUES (?,?,?,?,?,?,?,?,?,?,?)";
+
     private static Logger logger = LoggerFactory.getLogger(H2Database.class);
 
     private final Server server;
     private final DataSource dataSource;
-    private final ExecutorService executorService;
+    private final H2SessionPool sessions;
+    private final IdAllocator userIds;
+    private final IdAllocator accountIds;
+    private final IdAllocator transferIds;
+    private final ExecutionLanes lanes;
+    private final H2Config config;
+    private final BatchWriter batchWriter;
+    private final ScheduledExecutorService syncScheduler;
+    private final Set<Long> hotAccounts;
+    private final Map<Long, AtomicLong> shadowBalances = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService foldScheduler;
+    private final Timer foldTimer;
+    private final Counter syncFailures;
+    private volatile boolean healthy = true;
 
     /**
-     * Construct new instance
+     * Construct new instance without transfers batching
      *
      * @param executorService will be used to process all blocking jdbc calls. Configure the queue properly to
      *                        avoid the application to be over overwhelmed
      * @throws RuntimeException on h2 server startup error
      */
     public H2Database(int port, ExecutorService executorService, DataSource dataSource) {
+        this(port, executorService, dataSource, new H2Config(), new MetricRegistry());
+    }
+
+    /**
+     * Construct new instance
+     *
+     * @param executorService will be used to process all blocking jdbc calls. Configure the queue properly to
+     *                        avoid the application to be over overwhelmed
+     * @param config          tuning options
+     * @param metricRegistry  registry for the database metrics
+     * @throws RuntimeException on h2 server startup error
+     */
+    public H2Database(int port, ExecutorService executorService, DataSource dataSource,
+                      H2Config config, MetricRegistry metricRegistry) {
+        this(port, ExecutionLanes.of(executorService), dataSource, config, metricRegistry);
+    }
+
+    /**
+     * Construct new instance executing reads, transfers and user/account creation in separate lanes
+     *
+     * @param lanes          will be used to process blocking jdbc calls, data source should have a connection
+     *                       per lanes thread
+     * @param config         tuning options
+     * @param metricRegistry registry for the database metrics
+     * @throws RuntimeException on h2 server startup error
+     */
+    public H2Database(int port, ExecutionLanes lanes, DataSource dataSource,
+                      H2Config config, MetricRegistry metricRegistry) {
         Objects.requireNonNull(dataSource, "dataSource must not be null");
-        Objects.requireNonNull(executorService, "executorService must not be null");
+        Objects.requireNonNull(lanes, "lanes must not be null");
+        Objects.requireNonNull(config, "config must not be null");
+        Objects.requireNonNull(metricRegistry, "metricRegistry must not be null");
         Args.isTrue(port > 0, "port must  greater 0");
+        Args.isTrue(config.getHotAccounts().isEmpty() || !config.isTransferBatching(),
+                "hot accounts could not be combined with transfers batching");
+        Args.isTrue(!config.isTransferProcedure() || !config.isTransferBatching(),
+                "transfer procedure could not be combined with transfers batching");
         try {
-            this.server = Server.createTcpServer("-tcpPort", String.valueOf(port), "-tcpAllowOthers");
+            this.server = config.isTcpServer() ?
+                    Server.createTcpServer("-tcpPort", String.valueOf(port), "-tcpAllowOthers") : null;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
 
         this.dataSource = dataSource;
-        this.executorService = executorService;
+        this.sessions = new H2SessionPool(dataSource, metricRegistry);
+        this.userIds = new IdAllocator("users", config.getIdBlockSize());
+        this.accountIds = new IdAllocator("accounts", config.getIdBlockSize());
+        this.transferIds = new IdAllocator("transfers", config.getIdBlockSize());
+        this.lanes = lanes;
+        this.config = config;
+        this.batchWriter = config.isTransferBatching() ? new BatchWriter(config, metricRegistry) : null;
+        this.syncScheduler = config.isDurable() && config.getSyncPolicy() == H2Config.SyncPolicy.INTERVAL ?
+                Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "db-sync")) : null;
+        this.hotAccounts = config.getHotAccounts();
+        this.foldScheduler = hotAccounts.isEmpty() ? null :
+                Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "db-fold"));
+        this.foldTimer = hotAccounts.isEmpty() ? null : metricRegistry.timer("db.hot.fold");
+        this.syncFailures = metricRegistry.counter("db.sync.failures");
+        metricRegistry.register("db.healthy", (Gauge<Integer>) () -> healthy ? 1 : 0);
     }
 
     /**
@@ -69,45 +182,104 @@ public class H2Database implements Database {
     @Override
     public void init() {
         try {
-            server.start();
+            final long startedAt = System.nanoTime();
+            if (server != null) {
+                server.start();
+            }
 
-            executeStatement("DROP ALL OBJECTS;");
+            //durable tables are reopened as is, in memory ones are recreated from scratch
+            final String createTable;
+            if (config.isDurable()) {
+                createTable = "CREATE TABLE IF NOT EXISTS ";
+            } else {
+                executeStatement("DROP ALL OBJECTS;");
+                createTable = "CREATE TEMP TABLE ";
+            }
 
             executeStatement("CREATE SCHEMA IF NOT EXISTS revolut;");
             executeStatement("SET SCHEMA REVOLUT;");
 
-            executeStatement("CREATE TEMP TABLE users (" +
+            executeStatement(createTable + "users (" +
                     "id IDENTITY PRIMARY KEY, " +
                     "name VARCHAR(255) NOT NULL)" +
                     ";");
 
-            executeStatement("CREATE TEMP TABLE accounts (" +
+            executeStatement(createTable + "accounts (" +
                     "id IDENTITY PRIMARY KEY, " +
                     "owner_id BIGINT NOT NULL, " +
-                    "balance DECIMAL NOT NULL, " +
+                    "balance BIGINT NOT NULL, " +
                     "FOREIGN KEY (owner_id) REFERENCES users(id)" +
                     ");");
 
-            executeStatement("CREATE TEMP TABLE transfers (" +
+            executeStatement(createTable + "transfers (" +
                     "id IDENTITY PRIMARY KEY, " +
                     "ts TIMESTAMP WITH TIME ZONE, " +
                     "src_acc_id BIGINT NOT NULL, " +
                     "dst_acc_id BIGINT NOT NULL, " +
-                    "amount DECIMAL NOT NULL, " +
+                    "amount BIGINT NOT NULL, " +
                     "user_id BIGINT NOT NULL, " +
                     "request_id VARCHAR(255) NOT NULL, " +
-                    "src_acc_before DECIMAL NOT NULL, " +
-                    "src_acc_after DECIMAL NOT NULL, " +
-                    "dst_acc_before DECIMAL NOT NULL, " +
-                    "dst_acc_after DECIMAL NOT NULL, " +
+                    "src_acc_before BIGINT NOT NULL, " +
+                    "src_acc_after BIGINT NOT NULL, " +
+                    "dst_acc_before BIGINT NOT NULL, " +
+                    "dst_acc_after BIGINT NOT NULL, " +
                     "FOREIGN KEY (src_acc_id) REFERENCES accounts(id), " +
                     "FOREIGN KEY (dst_acc_id) REFERENCES accounts(id), " +
                     "FOREIGN KEY (user_id) REFERENCES users(id)" +
                     ");");
 
+            //makes transfers idempotent per user and request id
+            executeStatement("CREATE UNIQUE INDEX IF NOT EXISTS transfers_user_request " +
+                    "ON transfers (user_id, request_id);");
+
+            //not folded credits of the hot accounts
+            executeStatement(createTable + "account_credits (" +
+                    "account_id BIGINT NOT NULL, " +
+                    "stripe INT NOT NULL, " +
+                    "amount BIGINT NOT NULL, " +
+                    "PRIMARY KEY (account_id, stripe), " +
+                    "FOREIGN KEY (account_id) REFERENCES accounts(id)" +
+                    ");");
+
+            executeStatement("CREATE ALIAS IF NOT EXISTS " + H2TransferProcedure.ALIAS +
+                    " FOR \"" + H2TransferProcedure.class.getName() + ".transfer\";");
+
+            sessions.prewarm(config.getSessionPoolSize());
+
+            //ids are allocated in blocks instead of reading back the generated ones
+            try (H2Session session = sessions.borrow()) {
+                userIds.init(session);
+                accountIds.init(session);
+                transferIds.init(session);
+            }
+
+            initHotAccounts();
+
+            final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+            if (config.isDurable()) {
+                logger.info("Database is opened from '{}' in {} ms, sync policy {}",
+                        config.getDataDir(), elapsedMillis, config.getSyncPolicy());
+            } else {
+                logger.info("In memory database is created in {} ms", elapsedMillis);
+            }
+
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+
+        if (batchWriter != null) {
+            batchWriter.start();
+        }
+
+        if (syncScheduler != null) {
+            final long interval = config.getSyncIntervalMillis();
+            syncScheduler.scheduleWithFixedDelay(this::syncQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        }
+
+        if (foldScheduler != null) {
+            final long interval = config.getHotAccountFoldIntervalMillis();
+            foldScheduler.scheduleWithFixedDelay(this::foldCredits, interval, interval, TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
@@ -115,7 +287,33 @@ public class H2Database implements Database {
      */
     @Override
     public void stop() {
-        server.stop();
+        if (batchWriter != null) {
+            batchWriter.stop();
+        }
+
+        if (syncScheduler != null) {
+            syncScheduler.shutdownNow();
+        }
+
+        if (foldScheduler != null) {
+            foldScheduler.shutdownNow();
+        }
+
+        sessions.close();
+
+        if (config.isDurable()) {
+            //flush and close the file, so the next start doesn't need recovery
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("SHUTDOWN");
+            } catch (Exception e) {
+                logger.error("Couldn't shutdown database", e);
+            }
+        }
+
+        if (server != null) {
+            server.stop();
+        }
     }
 
     /**
@@ -125,23 +323,19 @@ public class H2Database implements Database {
     public void createUser(String userName, CreateUserCallback callback) {
         Objects.requireNonNull(userName, "userName must not be null");
         Objects.requireNonNull(callback, "callback must not be null");
+        checkHealthy();
 
-        executorService.submit(() -> {
-            try (Connection connection = getConnection();
-                 final PreparedStatement ps = connection.prepareStatement("INSERT INTO users (name) VALUES (?)")) {
+        lanes.admin().submit(() -> {
+            try (H2Session session = sessions.borrow()) {
+                final long userId = userIds.next(session);
+                final PreparedStatement ps = session.prepare("INSERT INTO users (id, name) VALUES (?, ?)");
 
-                ps.setString(1, userName);
+                ps.setLong(1, userId);
+                ps.setString(2, userName);
                 ps.execute();
 
-                final Long userId = getLastId(connection);
-
-                if (userId != null) {
-                    connection.commit();
-                    callback.onSuccess(userId);
-                } else {
-                    connection.rollback();
-                    callback.onUnexpectedError(new SQLException("Couldn't obtain user id"));
-                }
+                commitAndSync(session);
+                callback.onSuccess(userId);
 
             } catch (Exception e) {
                 callback.onUnexpectedError(e);
@@ -153,18 +347,21 @@ public class H2Database implements Database {
      * {@inheritDoc}
      */
     @Override
-    public void createAccount(long userId, BigDecimal balance, CreateAccountCallback callback) {
+    public void createAccount(long userId, Money balance, CreateAccountCallback callback) {
         Args.isTrue(userId > 0, "userId must be greater zero");
         Objects.requireNonNull(balance, "balance must not be null");
         Objects.requireNonNull(callback, "callback must not be null");
+        checkHealthy();
 
-        executorService.submit(() -> {
-            try (Connection connection = getConnection();
-                 PreparedStatement ps = connection.prepareStatement(
-                         "INSERT INTO accounts (owner_id, balance) VALUES (?, ?)")) {
+        lanes.admin().submit(() -> {
+            try (H2Session session = sessions.borrow()) {
+                final long accountId = accountIds.next(session);
+                final PreparedStatement ps = session.prepare(
+                        "INSERT INTO accounts (id, owner_id, balance) VALUES (?, ?, ?)");
 
-                ps.setLong(1, userId);
-                ps.setBigDecimal(2, balance);
+                ps.setLong(1, accountId);
+                ps.setLong(2, userId);
+                ps.setLong(3, balance.getMinorUnits());
 
                 try {
                     ps.execute();
@@ -176,15 +373,15 @@ public class H2Database implements Database {
                     throw e;
                 }
 
-                final Long accountId = getLastId(connection);
-
-                if (accountId != null) {
-                    connection.commit();
-                    callback.onSuccess(accountId);
-                } else {
-                    connection.rollback();
-                    callback.onUnexpectedError(new SQLException("Couldn't obtain account id"));
+                final boolean hot = hotAccounts.contains(accountId);
+                if (hot) {
+                    insertCreditStripes(session, accountId);
                 }
+                commitAndSync(session);
+                if (hot) {
+                    shadowBalances.put(accountId, new AtomicLong(balance.getMinorUnits()));
+                }
+                callback.onSuccess(accountId);
 
             } catch (Exception e) {
                 callback.onUnexpectedError(e);
@@ -200,10 +397,13 @@ public class H2Database implements Database {
         Args.isTrue(userId > 0, "userId must be greater zero");
         Args.isTrue(accountId > 0, "accountId must be greater zero");
 
-        executorService.submit(() -> {
-            try (Connection connection = getConnection();
-                 PreparedStatement ps = connection.prepareStatement(
-                         "SELECT id, owner_id, balance FROM accounts WHERE id = ? AND owner_id = ?")) {
+        lanes.read().submit(() -> {
+            try (H2Session session = sessions.borrow()) {
+                final PreparedStatement ps = session.prepare(hotAccounts.contains(accountId) ?
+                        "SELECT a.id, a.owner_id, a.balance + " +
+                                "(SELECT COALESCE(SUM(c.amount), 0) FROM account_credits c WHERE c.account_id = a.id) " +
+                                "FROM accounts a WHERE a.id = ? AND a.owner_id = ?" :
+                        "SELECT id, owner_id, balance FROM accounts WHERE id = ? AND owner_id = ?");
                 ps.setLong(1, accountId);
                 ps.setLong(2, userId);
 
@@ -211,7 +411,7 @@ public class H2Database implements Database {
                     if (rs.next()) {
                         final long accId = rs.getLong(1);
                         final long ownerId = rs.getLong(2);
-                        final BigDecimal balance = rs.getBigDecimal(3);
+                        final Money balance = Money.ofMinorUnits(rs.getLong(3));
 
                         callback.onSuccess(new Account(accId, ownerId, balance));
                     } else {
@@ -229,47 +429,72 @@ public class H2Database implements Database {
      * {@inheritDoc}
      */
     @Override
-    public void transfer(String requestId, long userId, long srcAccountId, long dstAccountId, BigDecimal amount, TransferCallback callback) {
+    public void transfer(String requestId, long userId, long srcAccountId, long dstAccountId, Money amount, TransferCallback callback) {
         Objects.requireNonNull(requestId, "request id must not be null");
         Args.isTrue(userId > 0, "userId must be greater zero");
         Args.isTrue(srcAccountId > 0, "accountSrc must be greater zero");
         Args.isTrue(dstAccountId > 0, "accountDst must be greater zero");
         Objects.requireNonNull(amount, "amount must not be null");
-        Args.isTrue(amount.compareTo(BigDecimal.ZERO) > 0, "amount must be positive");
+        Args.isTrue(amount.isPositive(), "amount must be positive");
         Objects.requireNonNull(callback, "callback must not be null");
+        checkHealthy();
+
+        if (batchWriter != null) {
+            batchWriter.submit(new PendingTransfer(requestId, userId, srcAccountId, dstAccountId, amount, callback));
+            return;
+        }
+
+        lanes.write().submit(() -> {
+            try (H2Session session = sessions.borrow()) {
+
+                if (config.isTransferProcedure()
+                        && !hotAccounts.contains(srcAccountId) && !hotAccounts.contains(dstAccountId)) {
+                    transferByProcedure(session, requestId, userId, srcAccountId, dstAccountId, amount, callback);
+                    return;
+                }
+
+                if (hotAccounts.contains(srcAccountId) || hotAccounts.contains(dstAccountId)) {
+                    transferHot(session, requestId, userId, srcAccountId, dstAccountId, amount, callback);
+                    return;
+                }
 
-        executorService.submit(() -> {
-            try (Connection connection = getConnection()) {
+                //repeated request
+                final Long existingTransferId = findTransferId(session, userId, requestId);
+                if (existingTransferId != null) {
+                    session.rollback();
+                    callback.onSuccess(existingTransferId);
+                    return;
+                }
 
                 Account srcAccount;
                 Account dstAccount;
 
                 //lock accounts in the same order
                 if (srcAccountId > dstAccountId) {
-                    dstAccount = lockAccount(connection, dstAccountId);
-                    srcAccount = lockAccount(connection, srcAccountId);
+                    dstAccount = lockAccount(session, dstAccountId);
+                    srcAccount = lockAccount(session, srcAccountId);
                 } else {
-                    srcAccount = lockAccount(connection, srcAccountId);
-                    dstAccount = lockAccount(connection, dstAccountId);
+                    srcAccount = lockAccount(session, srcAccountId);
+                    dstAccount = lockAccount(session, dstAccountId);
                 }
 
                 //check src account exists
                 if (srcAccount == null) {
-                    connection.rollback();
+                    session.rollback();
                     callback.onAccountNotFound(srcAccountId);
                     return;
                 }
 
                 //check if user is src account owner
                 if (userId != srcAccount.getOwnerId()) {
-                    connection.rollback();
+                    session.rollback();
                     callback.onNotOwner();
                     return;
                 }
 
                 //check dst account exists
                 if (dstAccount == null) {
-                    connection.rollback();
+                    session.rollback();
                     callback.onAccountNotFound(dstAccountId);
                     return;
                 }
@@ -278,42 +503,41 @@ public class H2Database implements Database {
                 if (srcAccount.getBalance().compareTo(amount) >= 0) {
 
                     //update accounts
-                    final BigDecimal srcAccountNewBalance = srcAccount.getBalance().subtract(amount);
-                    setBalance(connection, srcAccountId, srcAccountNewBalance);
-
-                    final BigDecimal dstAccountNewBalance = dstAccount.getBalance().add(amount);
-                    setBalance(connection, dstAccountId, dstAccountNewBalance);
-
-                    //write transfer
-                    try (PreparedStatement ps = connection.prepareStatement(
-                            "INSERT INTO transfers (ts, src_acc_id, dst_acc_id, amount, user_id, request_id, " +
-                                    "src_acc_before, src_acc_after, dst_acc_before, dst_acc_after) " +
-                                    "VALUES (CURRENT_TIMESTAMP(),?,?,?,?,?,?,?,?,?)")) {
-                        ps.setLong(1, srcAccountId);
-                        ps.setLong(2, dstAccountId);
-                        ps.setBigDecimal(3, amount);
-                        ps.setLong(4, userId);
-                        ps.setString(5, requestId);
-                        ps.setBigDecimal(6, srcAccount.getBalance());
-                        ps.setBigDecimal(7, srcAccountNewBalance);
-                        ps.setBigDecimal(8, dstAccount.getBalance());
-                        ps.setBigDecimal(9, dstAccountNewBalance);
-
-                        ps.execute();
+                    final Money srcAccountNewBalance = srcAccount.getBalance().minus(amount);
+                    setBalance(session, srcAccountId, srcAccountNewBalance);
+
+                    final Money dstAccountNewBalance = dstAccount.getBalance().plus(amount);
+                    setBalance(session, dstAccountId, dstAccountNewBalance);
+
+                    //write transfer, id and timestamp are set explicitly to be known without reading them back
+                    final long transferId = transferIds.next(session);
+                    final long timestamp = System.currentTimeMillis();
+                    try {
+                        insertTransfer(session, transferId, timestamp, requestId, userId, srcAccountId, dstAccountId, amount,
+                                srcAccount.getBalance(), srcAccountNewBalance,
+                                dstAccount.getBalance(), dstAccountNewBalance);
+                    } catch (SQLException e) {
+                        //the same request is committed concurrently
+                        if (ErrorCode.DUPLICATE_KEY.is(e)) {
+                            session.rollback();
+                            final Long committedTransferId = findTransferId(session, userId, requestId);
+                            if (committedTransferId != null) {
+                                callback.onSuccess(committedTransferId);
+                                return;
+                            }
+                        }
+                        throw e;
                     }
 
-                    final Long transferId = getLastId(connection);
-
-                    if (transferId != null) {
-                        connection.commit();
-                        callback.onSuccess(transferId);
-                    } else {
-                        connection.rollback();
-                        callback.onUnexpectedError(new SQLException("Couldn't obtain transfer id"));
-                    }
+                    commitAndSync(session);
+                    callback.onCommitted(new Transfer(transferId, requestId, timestamp,
+                            srcAccountId, dstAccountId, userId, amount,
+                            srcAccount.getBalance(), srcAccountNewBalance,
+                            dstAccount.getBalance(), dstAccountNewBalance));
+                    callback.onSuccess(transferId);
 
                 } else {
-                    connection.rollback();
+                    session.rollback();
                     callback.onInsufficientFunds();
                 }
 
@@ -331,12 +555,12 @@ public class H2Database implements Database {
         Args.isTrue(transferId > 0, "transferId must be greater zero");
         Objects.requireNonNull(callback, "request id must not be null");
 
-        executorService.submit(() -> {
-            try (Connection connection = getConnection();
-                 PreparedStatement ps = connection.prepareStatement(
-                         "SELECT id,ts,src_acc_id,dst_acc_id,amount,user_id,request_id,src_acc_before," +
-                                 "src_acc_after,dst_acc_before,dst_acc_after " +
-                                 "FROM transfers WHERE id = ? AND user_id = ?")) {
+        lanes.read().submit(() -> {
+            try (H2Session session = sessions.borrow()) {
+                final PreparedStatement ps = session.prepare(
+                        "SELECT id,ts,src_acc_id,dst_acc_id,amount,user_id,request_id,src_acc_before," +
+                                "src_acc_after,dst_acc_before,dst_acc_after " +
+                                "FROM transfers WHERE id = ? AND user_id = ?");
 
                 ps.setLong(1, transferId);
                 ps.setLong(2, userId);
@@ -347,13 +571,13 @@ public class H2Database implements Database {
                         final long ts = rs.getTimestamp(2).getTime();
                         final long srcAccId = rs.getLong(3);
                         final long dstAccId = rs.getLong(4);
-                        final BigDecimal amount = rs.getBigDecimal(5);
+                        final Money amount = Money.ofMinorUnits(rs.getLong(5));
                         final long transferUserId = rs.getLong(6);
                         final String requestId = rs.getString(7);
-                        final BigDecimal srcAccBefore = rs.getBigDecimal(8);
-                        final BigDecimal srcAccAfter = rs.getBigDecimal(9);
-                        final BigDecimal dstAccBefore = rs.getBigDecimal(10);
-                        final BigDecimal dstAccAfter = rs.getBigDecimal(11);
+                        final Money srcAccBefore = Money.ofMinorUnits(rs.getLong(8));
+                        final Money srcAccAfter = Money.ofMinorUnits(rs.getLong(9));
+                        final Money dstAccBefore = Money.ofMinorUnits(rs.getLong(10));
+                        final Money dstAccAfter = Money.ofMinorUnits(rs.getLong(11));
 
                         callback.onSuccess(new Transfer(id, requestId, ts, srcAccId,
                                 dstAccId, transferUserId, amount, srcAccBefore, srcAccAfter, dstAccBefore, dstAccAfter));
@@ -368,37 +592,351 @@ public class H2Database implements Database {
         });
     }
 
-    private Account lockAccount(Connection connection, long accountId) throws SQLException {
-        logger.debug("Acquire lock for the account '{}'", accountId);
+    /**
+     * Transfer with one call of {@link H2TransferProcedure}
+     */
+    private void transferByProcedure(H2Session session, String requestId, long userId, long srcAccountId,
+                                     long dstAccountId, Money amount, TransferCallback callback) throws SQLException {
+        final long transferId = transferIds.next(session);
+        final long timestamp = System.currentTimeMillis();
+
+        final PreparedStatement ps = session.prepare(H2TransferProcedure.CALL);
+        ps.setLong(1, transferId);
+        ps.setTimestamp(2, new Timestamp(timestamp));
+        ps.setLong(3, userId);
+        ps.setString(4, requestId);
+        ps.setLong(5, srcAccountId);
+        ps.setLong(6, dstAccountId);
+        ps.setLong(7, amount.getMinorUnits());
+
+        final int status;
+        final Money srcBefore;
+        final Money dstBefore;
+        final long resultTransferId;
+        try (ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            status = rs.getInt(1);
+            srcBefore = Money.ofMinorUnits(rs.getLong(2));
+            dstBefore = Money.ofMinorUnits(rs.getLong(3));
+            resultTransferId = rs.getLong(4);
+        } catch (SQLException e) {
+            //the same request is committed concurrently
+            if (ErrorCode.DUPLICATE_KEY.is(e)) {
+                session.rollback();
+                final Long committedTransferId = findTransferId(session, userId, requestId);
+                if (committedTransferId != null) {
+                    callback.onSuccess(committedTransferId);
+                    return;
+                }
+            }
+            throw e;
+        }
+
+        if (status == H2TransferProcedure.OK) {
+            commitAndSync(session);
+            callback.onCommitted(new Transfer(transferId, requestId, timestamp,
+                    srcAccountId, dstAccountId, userId, amount,
+                    srcBefore, srcBefore.minus(amount), dstBefore, dstBefore.plus(amount)));
+            callback.onSuccess(transferId);
+            return;
+        }
+
+        session.rollback();
+        switch (status) {
+            case H2TransferProcedure.DUPLICATE:
+                callback.onSuccess(resultTransferId);
+                break;
+            case H2TransferProcedure.SRC_NOT_FOUND:
+                callback.onAccountNotFound(srcAccountId);
+                break;
+            case H2TransferProcedure.NOT_OWNER:
+                callback.onNotOwner();
+                break;
+            case H2TransferProcedure.DST_NOT_FOUND:
+                callback.onAccountNotFound(dstAccountId);
+                break;
+            case H2TransferProcedure.INSUFFICIENT_FUNDS:
+                callback.onInsufficientFunds();
+                break;
+            default:
+                callback.onUnexpectedError(new SQLException("Unknown transfer status " + status));
+        }
+    }
+
+    /**
+     * Transfer from or to a hot account. Only the source and not hot destination rows are locked,
+     * a credit to the hot destination is added to its stripe.
+     */
+    private void transferHot(H2Session session, String requestId, long userId, long srcAccountId,
+                             long dstAccountId, Money amount, TransferCallback callback) throws SQLException {
+        final boolean srcHot = hotAccounts.contains(srcAccountId);
+        final boolean dstHot = hotAccounts.contains(dstAccountId);
+
+        //lock accounts in the same order, credits to the stripes go after all locks
+        final Account srcAccount;
+        final Account dstAccount;
+        if (!dstHot && srcAccountId > dstAccountId) {
+            dstAccount = lockAccount(session, dstAccountId);
+            srcAccount = lockAccount(session, srcAccountId);
+        } else {
+            srcAccount = lockAccount(session, srcAccountId);
+            dstAccount = dstHot ? null : lockAccount(session, dstAccountId);
+        }
+
+        if (srcAccount == null) {
+            session.rollback();
+            callback.onAccountNotFound(srcAccountId);
+            return;
+        }
+
+        if (userId != srcAccount.getOwnerId()) {
+            session.rollback();
+            callback.onNotOwner();
+            return;
+        }
+
+        //hot accounts are known since creation
+        final AtomicLong dstShadow = dstHot ? shadowBalances.get(dstAccountId) : null;
+        if (dstHot ? dstShadow == null : dstAccount == null) {
+            session.rollback();
+            callback.onAccountNotFound(dstAccountId);
+            return;
+        }
+
+        //repeated request, checked holding the source row, so a repeat waiting for it sees the committed original
+        final Long existingTransferId = findTransferId(session, userId, requestId);
+        if (existingTransferId != null) {
+            session.rollback();
+            callback.onSuccess(existingTransferId);
+            return;
+        }
+
+        //debit is checked against committed credits, pending ones are never spent
+        final Money available = srcHot ?
+                srcAccount.getBalance().plus(committedCredits(session, srcAccountId)) : srcAccount.getBalance();
+        if (available.compareTo(amount) < 0) {
+            session.rollback();
+            callback.onInsufficientFunds();
+            return;
+        }
+
+        setBalance(session, srcAccountId, srcAccount.getBalance().minus(amount));
+        if (dstHot) {
+            addCredit(session, dstAccountId, amount);
+        } else {
+            setBalance(session, dstAccountId, dstAccount.getBalance().plus(amount));
+        }
 
-        try (PreparedStatement ps = connection.prepareStatement("SELECT * FROM accounts WHERE id = ? FOR UPDATE ")) {
+        final long transferId = transferIds.next(session);
+        final long timestamp = System.currentTimeMillis();
+
+        //balances of the hot accounts are taken by moving their shadows, nothing is held during the insert
+        //and the commit. A transfer failing after that gives its amount back
+        final AtomicLong srcShadow = srcHot ? shadowBalances.get(srcAccountId) : null;
+        final Money srcBefore = srcShadow != null ?
+                Money.ofMinorUnits(srcShadow.getAndAdd(-amount.getMinorUnits())) : srcAccount.getBalance();
+        final Money dstBefore = dstShadow != null ?
+                Money.ofMinorUnits(dstShadow.getAndAdd(amount.getMinorUnits())) : dstAccount.getBalance();
+        final Transfer transfer;
+        try {
+            transfer = new Transfer(transferId, requestId, timestamp, srcAccountId, dstAccountId, userId,
+                    amount, srcBefore, srcBefore.minus(amount), dstBefore, dstBefore.plus(amount));
+            insertTransfer(session, transferId, timestamp, requestId, userId, srcAccountId, dstAccountId,
+                    amount, srcBefore, transfer.getSrcAccountBalanceAfter(),
+                    dstBefore, transfer.getDstAccountBalanceAfter());
+            session.commit();
+        } catch (SQLException | RuntimeException e) {
+            if (srcShadow != null) {
+                srcShadow.addAndGet(amount.getMinorUnits());
+            }
+            if (dstShadow != null) {
+                dstShadow.addAndGet(-amount.getMinorUnits());
+            }
+
+            //the same request is committed concurrently from another source account
+            if (e instanceof SQLException && ErrorCode.DUPLICATE_KEY.is((SQLException) e)) {
+                session.rollback();
+                final Long committedTransferId = findTransferId(session, userId, requestId);
+                if (committedTransferId != null) {
+                    callback.onSuccess(committedTransferId);
+                    return;
+                }
+            }
+            throw e;
+        }
+
+        syncCommitted(session);
+        callback.onCommitted(transfer);
+        callback.onSuccess(transferId);
+    }
+
+    private void insertTransfer(H2Session session, long transferId, long timestamp, String requestId, long userId,
+                                long srcAccountId, long dstAccountId, Money amount,
+                                Money srcBefore, Money srcAfter, Money dstBefore, Money dstAfter) throws SQLException {
+        final PreparedStatement ps = session.prepare(INSERT_TRANSFER);
+        ps.setLong(1, transferId);
+        ps.setTimestamp(2, new Timestamp(timestamp));
+        ps.setLong(3, srcAccountId);
+        ps.setLong(4, dstAccountId);
+        ps.setLong(5, amount.getMinorUnits());
+        ps.setLong(6, userId);
+        ps.setString(7, requestId);
+        ps.setLong(8, srcBefore.getMinorUnits());
+        ps.setLong(9, srcAfter.getMinorUnits());
+        ps.setLong(10, dstBefore.getMinorUnits());
+        ps.setLong(11, dstAfter.getMinorUnits());
+        ps.execute();
+    }
+
+    /**
+     * Add the credit to the stripe of the current thread, so threads don't wait for each other
+     */
+    private void addCredit(H2Session session, long accountId, Money amount) throws SQLException {
+        final int stripe = (int) (Thread.currentThread().getId() % config.getHotAccountStripes());
+
+        final PreparedStatement ps = session.prepare(
+                "UPDATE account_credits SET amount = amount + ? WHERE account_id = ? AND stripe = ?");
+        ps.setLong(1, amount.getMinorUnits());
+        ps.setLong(2, accountId);
+        ps.setInt(3, stripe);
+
+        if (ps.executeUpdate() == 0) {
+            throw new SQLException("Credit stripe " + stripe + " of the account " + accountId + " is missing");
+        }
+    }
+
+    private Money committedCredits(H2Session session, long accountId) throws SQLException {
+        final PreparedStatement ps = session.prepare(
+                "SELECT COALESCE(SUM(amount), 0) FROM account_credits WHERE account_id = ?");
+        ps.setLong(1, accountId);
+
+        try (ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return Money.ofMinorUnits(rs.getLong(1));
+        }
+    }
+
+    /**
+     * Create missing stripes, existing ones keep their credits
+     */
+    private void insertCreditStripes(H2Session session, long accountId) throws SQLException {
+        final PreparedStatement ps = session.prepare(
+                "INSERT INTO account_credits (account_id, stripe, amount) SELECT ?, ?, 0 FROM DUAL " +
+                        "WHERE NOT EXISTS (SELECT 1 FROM account_credits WHERE account_id = ? AND stripe = ?)");
+        for (int stripe = 0; stripe < config.getHotAccountStripes(); stripe++) {
             ps.setLong(1, accountId);
+            ps.setInt(2, stripe);
+            ps.setLong(3, accountId);
+            ps.setInt(4, stripe);
+            ps.addBatch();
+        }
+        ps.executeBatch();
+    }
 
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    final long id = rs.getLong(1);
-                    final long ownerId = rs.getLong(2);
-                    final BigDecimal balance = rs.getBigDecimal(3);
+    /**
+     * Create stripes and shadow balances of existing hot accounts, others get them on creation
+     */
+    private void initHotAccounts() throws SQLException {
+        for (long accountId : hotAccounts) {
+            try (H2Session session = sessions.borrow()) {
+                final Account account = lockAccount(session, accountId);
+                if (account == null) {
+                    session.rollback();
+                    continue;
+                }
 
-                    return new Account(id, ownerId, balance);
-                } else {
-                    return null;
+                insertCreditStripes(session, accountId);
+                final Money balance = account.getBalance().plus(committedCredits(session, accountId));
+                commitAndSync(session);
+                shadowBalances.put(accountId, new AtomicLong(balance.getMinorUnits()));
+            }
+        }
+    }
+
+    /**
+     * Move credits of each hot account from the stripes to the account row
+     */
+    private void foldCredits() {
+        final Timer.Context time = foldTimer.time();
+        try {
+            for (long accountId : shadowBalances.keySet()) {
+                //not committed changes are rolled back on the session close
+                try (H2Session session = sessions.borrow()) {
+                    final Account account = lockAccount(session, accountId);
+
+                    long credits = 0;
+                    final PreparedStatement select = session.prepare(
+                            "SELECT amount FROM account_credits WHERE account_id = ? FOR UPDATE");
+                    select.setLong(1, accountId);
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            credits += rs.getLong(1);
+                        }
+                    }
+
+                    if (account == null || credits == 0) {
+                        continue;
+                    }
+
+                    final PreparedStatement reset = session.prepare(
+                            "UPDATE account_credits SET amount = 0 WHERE account_id = ?");
+                    reset.setLong(1, accountId);
+                    reset.execute();
+                    setBalance(session, accountId, account.getBalance().plus(Money.ofMinorUnits(credits)));
+                    commitAndSync(session);
+
+                } catch (Exception e) {
+                    logger.error("Couldn't fold credits of the account '{}'", accountId, e);
                 }
             }
+        } finally {
+            time.stop();
         }
     }
 
-    private void setBalance(Connection connection, long accountId, BigDecimal balance) throws SQLException {
-        logger.debug("Set account '{}' balance = '{}'", accountId, balance);
+    private Account lockAccount(H2Session session, long accountId) throws SQLException {
+        logger.debug("Acquire lock for the account '{}'", accountId);
 
-        try (PreparedStatement ps = connection.prepareStatement("UPDATE accounts SET balance = ? WHERE id = ?")) {
-            ps.setBigDecimal(1, balance);
-            ps.setLong(2, accountId);
+        final PreparedStatement ps = session.prepare("SELECT * FROM accounts WHERE id = ? FOR UPDATE ");
+        ps.setLong(1, accountId);
+
+        try (ResultSet rs = ps.executeQuery()) {
+            if (rs.next()) {
+                final long id = rs.getLong(1);
+                final long ownerId = rs.getLong(2);
+                final Money balance = Money.ofMinorUnits(rs.getLong(3));
+
+                return new Account(id, ownerId, balance);
+            } else {
+                return null;
+            }
+        }
+    }
 
-            ps.execute();
+    /**
+     * @return id of the transfer made by the same user with the same request id or null
+     */
+    private Long findTransferId(H2Session session, long userId, String requestId) throws SQLException {
+        final PreparedStatement ps = session.prepare(
+                "SELECT id FROM transfers WHERE user_id = ? AND request_id = ?");
+        ps.setLong(1, userId);
+        ps.setString(2, requestId);
+
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : null;
         }
     }
 
+    private void setBalance(H2Session session, long accountId, Money balance) throws SQLException {
+        logger.debug("Set account '{}' balance = '{}'", accountId, balance);
+
+        final PreparedStatement ps = session.prepare("UPDATE accounts SET balance = ? WHERE id = ?");
+        ps.setLong(1, balance.getMinorUnits());
+        ps.setLong(2, accountId);
+
+        ps.execute();
+    }
+
     private void executeStatement(String sql) throws SQLException {
         try (Connection conn = dataSource.getConnection()) {
             try {
@@ -411,30 +949,349 @@ public class H2Database implements Database {
         }
     }
 
-    private Connection getConnection() throws SQLException {
-        final Connection connection = dataSource.getConnection();
-        connection.setAutoCommit(false);
-        connection.setSchema("REVOLUT");
-        return connection;
+    /**
+     * @return false once forcing committed data to the disk failed, it could be lost on a crash
+     * since then. Exposed as "db.healthy" gauge, failures are counted by "db.sync.failures" counter
+     */
+    public boolean isHealthy() {
+        return healthy;
     }
 
     /**
-     * Since H2 does not support "RETURNING id" and "getGeneratedKeys()", there is no other way
-     * to obtain auto-generated id, but to call special function SCOPE_IDENTITY
+     * Writes are not acknowledged as durable once a sync failed, they are rejected until restart
      *
-     * @param connection
-     * @return last id if present, could be null
-     * @throws SQLException
+     * @throws RejectedExecutionException if the database is not healthy
      */
-    private static Long getLastId(Connection connection) throws SQLException {
-        try (ResultSet rs = connection.prepareStatement("CALL SCOPE_IDENTITY()").executeQuery();) {
-            if (rs.next()) {
-                return rs.getLong(1);
-            } else {
-                return null;
+    private void checkHealthy() {
+        if (!healthy) {
+            throw new RejectedExecutionException("Database couldn't sync to the disk, writes are rejected");
+        }
+    }
+
+    /**
+     * Commit the transaction and force it to the disk if {@link H2Config.SyncPolicy#COMMIT} is used
+     *
+     * @throws SQLException if commit failed
+     */
+    private void commitAndSync(H2Session session) throws SQLException {
+        session.commit();
+        syncCommitted(session);
+    }
+
+    /**
+     * Force the committed transaction to the disk if {@link H2Config.SyncPolicy#COMMIT} is used.
+     * The transaction is visible once committed, so a failed sync doesn't fail the caller, it marks the database
+     * unhealthy instead and later writes are rejected.
+     */
+    private void syncCommitted(H2Session session) {
+        if (config.isDurable() && config.getSyncPolicy() == H2Config.SyncPolicy.COMMIT) {
+            try {
+                sync(session);
+            } catch (SQLException | RuntimeException e) {
+                onSyncFailure(e);
             }
         }
     }
 
-}
+    private void sync(H2Session session) throws SQLException {
+        session.prepare("CHECKPOINT SYNC").execute();
+    }
+
+    private void syncQuietly() {
+        try (H2Session session = sessions.borrow()) {
+            sync(session);
+        } catch (Exception e) {
+            onSyncFailure(e);
+        }
+    }
+
+    private void onSyncFailure(Exception e) {
+        healthy = false;
+        syncFailures.inc();
+        logger.error("Couldn't sync database, committed data could be lost on a crash", e);
+    }
+
+    /**
+     * Transfer waiting for the batch writer
+     */
+    private static final class PendingTransfer {
+
+        private final String requestId;
+        private final long userId;
+        private final long srcAccountId;
+        private final long dstAccountId;
+        private final Money amount;
+        private final TransferCallback callback;
+
+        private Runnable outcome;
+        private long transferId;
+        private long timestamp;
+        private Money srcBalanceBefore;
+        private Money dstBalanceBefore;
+        private PendingTransfer original;
+
+        private PendingTransfer(String requestId, long userId, long srcAccountId, long dstAccountId,
+                                Money amount, TransferCallback callback) {
+            this.requestId = requestId;
+            this.userId = userId;
+            this.srcAccountId = srcAccountId;
+            this.dstAccountId = dstAccountId;
+            this.amount = amount;
+            this.callback = callback;
+        }
+
+        private Transfer toTransfer() {
+            return new Transfer(transferId, requestId, timestamp, srcAccountId, dstAccountId, userId, amount,
+                    srcBalanceBefore, srcBalanceBefore.minus(amount), dstBalanceBefore, dstBalanceBefore.plus(amount));
+        }
+    }
+
+    /**
+     * Single thread draining pending transfers and group committing them. As the writer is the only one
+     * modifying balances and inserting transfers, accounts could be locked in any order and ids allocated
+     * for one batch are sequential.
+     */
+    private final class BatchWriter implements Runnable {
+
+        private final int batchSize;
+        private final long batchWaitNanos;
+        private final BlockingQueue<PendingTransfer> queue;
+        private final Histogram batchSizeHistogram;
+        private final Thread thread;
+
+        private volatile boolean running = true;
+
+        private BatchWriter(H2Config config, MetricRegistry metricRegistry) {
+            this.batchSize = config.getTransferBatchSize();
+            this.batchWaitNanos = TimeUnit.MICROSECONDS.toNanos(config.getTransferBatchWaitMicros());
+            this.queue = new ArrayBlockingQueue<>(config.getTransferBatchQueueSize());
+            this.batchSizeHistogram = metricRegistry.histogram("db.transfer.batch.size");
+            this.thread = new Thread(this, "db-batch-writer");
+            this.thread.setDaemon(true);
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        private void stop() {
+            running = false;
+            thread.interrupt();
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * @throws RejectedExecutionException whenever the queue is full
+         */
+        private void submit(PendingTransfer transfer) {
+            if (!queue.offer(transfer)) {
+                throw new RejectedExecutionException("Transfer batch queue is full");
+            }
+        }
+
+        @Override
+        public void run() {
+            final List<PendingTransfer> batch = new ArrayList<>(batchSize);
+
+            while (running) {
+                try {
+                    final PendingTransfer first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - batch.size());
+
+                    final long deadline = System.nanoTime() + batchWaitNanos;
+                    while (batch.size() < batchSize) {
+                        final PendingTransfer next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                        queue.drainTo(batch, batchSize - batch.size());
+                    }
+
+                    batchSizeHistogram.update(batch.size());
+                    commit(batch);
+
+                } catch (InterruptedException e) {
+                    logger.debug("Batch writer interrupted");
+                } finally {
+                    batch.clear();
+                }
+            }
+
+            final List<PendingTransfer> rest = new ArrayList<>();
+            queue.drainTo(rest);
+            for (PendingTransfer transfer : rest) {
+                transfer.callback.onUnexpectedError(new RejectedExecutionException("Database is stopped"));
+            }
+        }
 
+        private void commit(List<PendingTransfer> batch) {
+            logger.debug("Commit batch of {} transfers", batch.size());
+
+            try (H2Session session = sessions.borrow()) {
+                try {
+                    final List<PendingTransfer> accepted = apply(session, batch);
+
+                    commitAndSync(session);
+
+                    for (PendingTransfer transfer : accepted) {
+                        final long id = transfer.transferId;
+                        transfer.outcome = () -> {
+                            transfer.callback.onCommitted(transfer.toTransfer());
+                            transfer.callback.onSuccess(id);
+                        };
+                    }
+
+                    //duplicates within the batch get the id of the original transfer
+                    for (PendingTransfer transfer : batch) {
+                        if (transfer.original != null) {
+                            final long id = transfer.original.transferId;
+                            transfer.outcome = () -> transfer.callback.onSuccess(id);
+                        }
+                    }
+
+                } catch (Exception e) {
+                    session.rollback();
+                    throw e;
+                }
+
+            } catch (Exception e) {
+                for (PendingTransfer transfer : batch) {
+                    transfer.outcome = () -> transfer.callback.onUnexpectedError(e);
+                }
+            }
+
+            for (PendingTransfer transfer : batch) {
+                try {
+                    transfer.outcome.run();
+                } catch (Exception e) {
+                    logger.error("Unexpected error in transfer callback: '{}'", e.getMessage());
+                    logger.debug("Stacktrace", e);
+                } finally {
+                    transfer.outcome = null;
+                }
+            }
+        }
+
+        /**
+         * Check transfers one by one against balances already modified by the batch, then write
+         * all modified balances and accepted transfers with jdbc batches
+         *
+         * @return accepted transfers in the insertion order
+         */
+        private List<PendingTransfer> apply(H2Session session, List<PendingTransfer> batch) throws SQLException {
+            final Map<Long, Account> accounts = new HashMap<>();
+            final Map<Long, Money> balances = new HashMap<>();
+            final Map<String, PendingTransfer> requests = new HashMap<>();
+            final List<PendingTransfer> accepted = new ArrayList<>(batch.size());
+
+            final long timestamp = System.currentTimeMillis();
+
+            final PreparedStatement insert = session.prepare(INSERT_TRANSFER);
+
+            for (PendingTransfer transfer : batch) {
+                final String requestKey = transfer.userId + ":" + transfer.requestId;
+                final PendingTransfer original = requests.get(requestKey);
+                if (original != null) {
+                    transfer.original = original;
+                    continue;
+                }
+
+                final Long existingTransferId = findTransferId(session, transfer.userId, transfer.requestId);
+                if (existingTransferId != null) {
+                    transfer.outcome = () -> transfer.callback.onSuccess(existingTransferId);
+                    continue;
+                }
+
+                final Account srcAccount = lockAccountOnce(session, accounts, transfer.srcAccountId);
+                final Account dstAccount = lockAccountOnce(session, accounts, transfer.dstAccountId);
+
+                if (srcAccount == null) {
+                    transfer.outcome = () -> transfer.callback.onAccountNotFound(transfer.srcAccountId);
+                    continue;
+                }
+
+                if (transfer.userId != srcAccount.getOwnerId()) {
+                    transfer.outcome = transfer.callback::onNotOwner;
+                    continue;
+                }
+
+                if (dstAccount == null) {
+                    transfer.outcome = () -> transfer.callback.onAccountNotFound(transfer.dstAccountId);
+                    continue;
+                }
+
+                final Money srcBalance = balances.getOrDefault(transfer.srcAccountId, srcAccount.getBalance());
+                if (srcBalance.compareTo(transfer.amount) < 0) {
+                    transfer.outcome = transfer.callback::onInsufficientFunds;
+                    continue;
+                }
+
+                final Money dstBalance = balances.getOrDefault(transfer.dstAccountId, dstAccount.getBalance());
+                final Money srcNewBalance = srcBalance.minus(transfer.amount);
+                final Money dstNewBalance = dstBalance.plus(transfer.amount);
+                balances.put(transfer.srcAccountId, srcNewBalance);
+                balances.put(transfer.dstAccountId, dstNewBalance);
+
+                transfer.transferId = transferIds.next(session);
+                insert.setLong(1, transfer.transferId);
+                insert.setTimestamp(2, new Timestamp(timestamp));
+                insert.setLong(3, transfer.srcAccountId);
+                insert.setLong(4, transfer.dstAccountId);
+                insert.setLong(5, transfer.amount.getMinorUnits());
+                insert.setLong(6, transfer.userId);
+                insert.setString(7, transfer.requestId);
+                insert.setLong(8, srcBalance.getMinorUnits());
+                insert.setLong(9, srcNewBalance.getMinorUnits());
+                insert.setLong(10, dstBalance.getMinorUnits());
+                insert.setLong(11, dstNewBalance.getMinorUnits());
+                insert.addBatch();
+
+                transfer.timestamp = timestamp;
+                transfer.srcBalanceBefore = srcBalance;
+                transfer.dstBalanceBefore = dstBalance;
+
+                accepted.add(transfer);
+                requests.put(requestKey, transfer);
+            }
+
+            if (accepted.isEmpty()) {
+                return accepted;
+            }
+
+            final PreparedStatement update = session.prepare(
+                    "UPDATE accounts SET balance = ? WHERE id = ?");
+            for (Map.Entry<Long, Money> balance : balances.entrySet()) {
+                update.setLong(1, balance.getValue().getMinorUnits());
+                update.setLong(2, balance.getKey());
+                update.addBatch();
+            }
+            update.executeBatch();
+
+            insert.executeBatch();
+
+            return accepted;
+        }
+
+        private Account lockAccountOnce(H2Session session, Map<Long, Account> accounts, long accountId)
+                throws SQLException {
+            if (accounts.containsKey(accountId)) {
+                return accounts.get(accountId);
+            }
+
+            final Account account = lockAccount(session, accountId);
+            accounts.put(accountId, account);
+            return account;
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.revolut.backend.db.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Pooled H2 connection of the {@link H2Database}. Auto commit and schema are set up once, statements are
+ * prepared once per query and kept open for the lifetime of the connection, so callers must not close them.
+ * <p>
+ * Used by a single thread at a time: borrowed from {@link H2SessionPool} for one operation, closing returns it
+ * to the pool rolling back anything not committed.
+ */
+final class H2Session implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(H2Session.class);
+
+    private final Connection connection;
+    private final H2SessionPool pool;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    /**
+     * @param connection closed if it couldn't be set up
+     */
+    H2Session(Connection connection, H2SessionPool pool) throws SQLException {
+        Objects.requireNonNull(connection, "connection must not be null");
+        Objects.requireNonNull(pool, "pool must not be null");
+        this.connection = connection;
+        this.pool = pool;
+
+        try {
+            connection.setAutoCommit(false);
+            connection.setSchema("REVOLUT");
+        } catch (SQLException | RuntimeException e) {
+            closeQuietly();
+            throw e;
+        }
+    }
+
+    /**
+     * @return cached statement of the query, parameters are left from the previous execution
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    void commit() throws SQLException {
+        connection.commit();
+    }
+
+    void rollback() throws SQLException {
+        connection.rollback();
+    }
+
+    /**
+     * Roll back and return to the pool, broken connection is discarded
+     */
+    @Override
+    public void close() {
+        try {
+            connection.rollback();
+            pool.release(this);
+        } catch (SQLException e) {
+            logger.warn("Discard broken connection: '{}'", e.getMessage());
+            pool.discard(this);
+        }
+    }
+
+    /**
+     * Close statements and the connection itself
+     */
+    void closeQuietly() {
+        for (PreparedStatement statement : statements.values()) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                logger.debug("Couldn't close statement", e);
+            }
+        }
+        statements.clear();
+
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.debug("Couldn't close connection", e);
+        }
+    }
+
+}
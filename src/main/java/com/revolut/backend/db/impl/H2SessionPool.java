@@ -0,0 +1,90 @@
+package com.revolut.backend.db.impl;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of {@link H2Session}. Sessions are created on demand and hold their connection until the pool is closed,
+ * so the count of sessions is bounded by the concurrency of the callers and by the data source.
+ * <p>
+ * Sessions could be opened up front with {@link #prewarm(int)}: when they cover all the callers, a borrow
+ * never waits for the data source. Time spent waiting for a new connection is exposed with "db.session.wait"
+ * timer, its count is the count of borrows missed the idle sessions.
+ */
+final class H2SessionPool {
+
+    private final DataSource dataSource;
+    private final Queue<H2Session> idle = new ConcurrentLinkedQueue<>();
+    private final Set<H2Session> sessions = ConcurrentHashMap.newKeySet();
+    private final Timer waitTimer;
+
+    H2SessionPool(DataSource dataSource, MetricRegistry metricRegistry) {
+        Objects.requireNonNull(dataSource, "dataSource must not be null");
+        Objects.requireNonNull(metricRegistry, "metricRegistry must not be null");
+        this.dataSource = dataSource;
+        this.waitTimer = metricRegistry.timer("db.session.wait");
+        metricRegistry.register("db.session.open", (Gauge<Integer>) sessions::size);
+        metricRegistry.register("db.session.idle", (Gauge<Integer>) idle::size);
+    }
+
+    /**
+     * Open sessions up to the count, so they are ready before the first call
+     */
+    void prewarm(int count) throws SQLException {
+        while (sessions.size() < count) {
+            release(open());
+        }
+    }
+
+    /**
+     * @return idle session or a new one, must be closed after use
+     */
+    H2Session borrow() throws SQLException {
+        final H2Session session = idle.poll();
+        if (session != null) {
+            return session;
+        }
+
+        final long startedAt = System.nanoTime();
+        final H2Session created = open();
+        waitTimer.update(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        return created;
+    }
+
+    void release(H2Session session) {
+        idle.offer(session);
+    }
+
+    void discard(H2Session session) {
+        sessions.remove(session);
+        session.closeQuietly();
+    }
+
+    private H2Session open() throws SQLException {
+        final H2Session session = new H2Session(dataSource.getConnection(), this);
+        sessions.add(session);
+        return session;
+    }
+
+    /**
+     * Close all sessions, should be called when no session is in use
+     */
+    void close() {
+        idle.clear();
+        for (H2Session session : sessions) {
+            session.closeQuietly();
+        }
+        sessions.clear();
+    }
+
+}
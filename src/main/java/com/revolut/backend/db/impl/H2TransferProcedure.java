@@ -0,0 +1,127 @@
+package com.revolut.backend.db.impl;
+
+import org.h2.tools.SimpleResultSet;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+/**
+ * Transfer executed inside H2 as a java stored procedure, registered by {@link H2Database} as
+ * "transfer_funds" alias: the request id check, account locks, balance check, balance updates and the transfer
+ * insert are made with one call. Nothing is committed, the caller commits or rolls back by the returned status.
+ */
+public final class H2TransferProcedure {
+
+    public static final int OK = 0;
+    public static final int DUPLICATE = 1;
+    public static final int SRC_NOT_FOUND = 2;
+    public static final int NOT_OWNER = 3;
+    public static final int DST_NOT_FOUND = 4;
+    public static final int INSUFFICIENT_FUNDS = 5;
+
+    static final String ALIAS = "transfer_funds";
+    static final String CALL = "CALL " + ALIAS + "(?, ?, ?, ?, ?, ?, ?)";
+
+    private H2TransferProcedure() {
+    }
+
+    /**
+     * @return single row of the status, balances of the source and destination accounts before the transfer
+     * and the transfer id, which is the id of the original transfer for {@link #DUPLICATE}
+     * @throws ArithmeticException if the destination balance overflows
+     */
+    public static ResultSet transfer(Connection connection, long transferId, Timestamp timestamp, long userId,
+                                     String requestId, long srcAccountId, long dstAccountId, long amount)
+            throws SQLException {
+        final SimpleResultSet result = new SimpleResultSet();
+        result.addColumn("STATUS", Types.INTEGER, 10, 0);
+        result.addColumn("SRC_BEFORE", Types.BIGINT, 19, 0);
+        result.addColumn("DST_BEFORE", Types.BIGINT, 19, 0);
+        result.addColumn("TRANSFER_ID", Types.BIGINT, 19, 0);
+
+        //h2 calls the procedure on prepare to learn the columns
+        if ("jdbc:columnlist:connection".equals(connection.getMetaData().getURL())) {
+            return result;
+        }
+
+        //repeated request
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT id FROM transfers WHERE user_id = ? AND request_id = ?")) {
+            ps.setLong(1, userId);
+            ps.setString(2, requestId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    result.addRow(DUPLICATE, 0L, 0L, rs.getLong(1));
+                    return result;
+                }
+            }
+        }
+
+        //lock accounts in the same order, row is {owner, balance} or null
+        final long[] src;
+        final long[] dst;
+        if (srcAccountId > dstAccountId) {
+            dst = lockAccount(connection, dstAccountId);
+            src = lockAccount(connection, srcAccountId);
+        } else {
+            src = lockAccount(connection, srcAccountId);
+            dst = lockAccount(connection, dstAccountId);
+        }
+
+        final int status = src == null ? SRC_NOT_FOUND :
+                src[0] != userId ? NOT_OWNER :
+                        dst == null ? DST_NOT_FOUND :
+                                src[1] < amount ? INSUFFICIENT_FUNDS : OK;
+        if (status != OK) {
+            result.addRow(status, 0L, 0L, 0L);
+            return result;
+        }
+
+        //overflow checked as Money of the statement path, the caller rolls back on the error
+        final long srcAfter = Math.subtractExact(src[1], amount);
+        final long dstAfter = Math.addExact(dst[1], amount);
+
+        try (PreparedStatement ps = connection.prepareStatement("UPDATE accounts SET balance = ? WHERE id = ?")) {
+            ps.setLong(1, srcAfter);
+            ps.setLong(2, srcAccountId);
+            ps.addBatch();
+            ps.setLong(1, dstAfter);
+            ps.setLong(2, dstAccountId);
+            ps.addBatch();
+            ps.executeBatch();
+        }
+
+        try (PreparedStatement ps = connection.prepareStatement(H2Database.INSERT_TRANSFER)) {
+            ps.setLong(1, transferId);
+            ps.setTimestamp(2, timestamp);
+            ps.setLong(3, srcAccountId);
+            ps.setLong(4, dstAccountId);
+            ps.setLong(5, amount);
+            ps.setLong(6, userId);
+            ps.setString(7, requestId);
+            ps.setLong(8, src[1]);
+            ps.setLong(9, srcAfter);
+            ps.setLong(10, dst[1]);
+            ps.setLong(11, dstAfter);
+            ps.execute();
+        }
+
+        result.addRow(OK, src[1], dst[1], transferId);
+        return result;
+    }
+
+    private static long[] lockAccount(Connection connection, long accountId) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT owner_id, balance FROM accounts WHERE id = ? FOR UPDATE")) {
+            ps.setLong(1, accountId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new long[]{rs.getLong(1), rs.getLong(2)} : null;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.revolut.backend.db.impl;
+
+import com.revolut.backend.utils.Args;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+
+/**
+ * Allocates ids of the {@link H2Database} table in blocks reserved from a sequence, so rows are inserted with
+ * known ids and the generated one doesn't have to be read back. Sequence values are never rolled back,
+ * so ids of the rolled back inserts and ids of the block left on restart are skipped.
+ */
+final class IdAllocator {
+
+    private final String table;
+    private final String sequence;
+    private final int blockSize;
+
+    private long next;
+    private long limit;
+
+    /**
+     * @param table     table the ids are allocated for, its sequence is named "[table]_id_seq"
+     * @param blockSize count of ids reserved at once
+     */
+    IdAllocator(String table, int blockSize) {
+        Objects.requireNonNull(table, "table must not be null");
+        Args.isTrue(blockSize > 0, "blockSize must be greater zero");
+        this.table = table;
+        this.sequence = table + "_id_seq";
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Create the sequence starting after the existing ids, the block size of an existing one is updated
+     */
+    void init(H2Session session) throws SQLException {
+        final long start;
+        try (ResultSet rs = session.prepare("SELECT COALESCE(MAX(id), 0) + 1 FROM " + table).executeQuery()) {
+            rs.next();
+            start = rs.getLong(1);
+        }
+
+        session.prepare("CREATE SEQUENCE IF NOT EXISTS " + sequence +
+                " START WITH " + start + " INCREMENT BY " + blockSize).execute();
+        session.prepare("ALTER SEQUENCE " + sequence + " INCREMENT BY " + blockSize).execute();
+        session.commit();
+    }
+
+    /**
+     * @param session session to reserve the next block with, its transaction is not affected
+     * @return next id
+     */
+    synchronized long next(H2Session session) throws SQLException {
+        if (next == limit) {
+            try (ResultSet rs = session.prepare("SELECT NEXT VALUE FOR " + sequence).executeQuery()) {
+                rs.next();
+                next = rs.getLong(1);
+                limit = next + blockSize;
+            }
+        }
+        return next++;
+    }
+
+}
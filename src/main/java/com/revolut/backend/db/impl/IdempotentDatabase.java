@@ -0,0 +1,245 @@
+package com.revolut.backend.db.impl;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.revolut.backend.db.*;
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.entity.Transfer;
+import com.revolut.backend.utils.Args;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Decorator making transfers idempotent: a transfer repeated with the same user id and request id is not executed
+ * again, the id of the original transfer is returned instead. Parameters of the repeated transfer are not compared.
+ * <p>
+ * Completed transfers are kept in a bounded in memory index expiring after write, so retries are answered without
+ * a database round trip. Concurrent duplicates wait for the transfer in flight and get the same outcome.
+ * Failed transfers are not remembered and could be retried, duplicates joined to a rejected transfer are rejected
+ * as well. Duplicates older than the index are caught by the unique request index of the storage, see
+ * {@link H2Database}, {@link InMemoryDatabase} and {@link ShardedDatabase}.
+ */
+public class IdempotentDatabase implements Database {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotentDatabase.class);
+
+    private final Database delegate;
+    private final Cache<RequestKey, Long> completed;
+    private final ConcurrentMap<RequestKey, InFlight> inFlight = new ConcurrentHashMap<>();
+    private final Meter duplicates;
+
+    /**
+     * Construct new instance
+     *
+     * @param delegate       actual database
+     * @param maxSize        max count of remembered transfers
+     * @param ttlMillis      time to remember the transfer
+     * @param metricRegistry registry for the "db.transfer.duplicates" meter
+     */
+    public IdempotentDatabase(Database delegate, long maxSize, long ttlMillis, MetricRegistry metricRegistry) {
+        Objects.requireNonNull(delegate, "delegate must not be null");
+        Args.isTrue(maxSize > 0, "maxSize must be greater zero");
+        Args.isTrue(ttlMillis > 0, "ttlMillis must be greater zero");
+        Objects.requireNonNull(metricRegistry, "metricRegistry must not be null");
+
+        this.delegate = delegate;
+        this.completed = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .build();
+        this.duplicates = metricRegistry.meter("db.transfer.duplicates");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void transfer(String requestId, long userId, long srcAccountId, long dstAccountId, Money amount, TransferCallback callback) {
+        Objects.requireNonNull(requestId, "request id must not be null");
+        Objects.requireNonNull(callback, "callback must not be null");
+
+        final RequestKey key = new RequestKey(userId, requestId);
+
+        while (true) {
+            final Long transferId = completed.getIfPresent(key);
+            if (transferId != null) {
+                logger.debug("Transfer '{}' is a duplicate of '{}'", requestId, transferId);
+                duplicates.mark();
+                callback.onSuccess(transferId);
+                return;
+            }
+
+            final InFlight transfer = new InFlight(key, callback);
+            final InFlight existing = inFlight.putIfAbsent(key, transfer);
+
+            if (existing == null) {
+                try {
+                    delegate.transfer(requestId, userId, srcAccountId, dstAccountId, amount, transfer);
+                } catch (RejectedExecutionException e) {
+                    //the caller is notified with the exception, joined ones could retry later as well
+                    transfer.complete(c -> c.onRejected(e), false);
+                    throw e;
+                } catch (RuntimeException e) {
+                    transfer.complete(c -> c.onUnexpectedError(e), false);
+                    throw e;
+                }
+                return;
+            }
+
+            if (existing.join(callback)) {
+                logger.debug("Transfer '{}' is in flight, wait for its outcome", requestId);
+                duplicates.mark();
+                return;
+            }
+
+            //completed meanwhile, check the index again
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void createUser(String userName, CreateUserCallback callback) {
+        delegate.createUser(userName, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void createAccount(long userId, Money balance, CreateAccountCallback callback) {
+        delegate.createAccount(userId, balance, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getAccount(long userId, long accountId, GetAccountCallback callback) {
+        delegate.getAccount(userId, accountId, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getTransfer(long userId, long transferId, GetTransferCallback callback) {
+        delegate.getTransfer(userId, transferId, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init() {
+        delegate.init();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() {
+        delegate.stop();
+    }
+
+    /**
+     * Transfer being executed by the delegate, fans its outcome out to the joined duplicates
+     */
+    private final class InFlight implements TransferCallback {
+
+        private final RequestKey key;
+        private final List<TransferCallback> callbacks = new ArrayList<>(1);
+        private boolean done;
+
+        private InFlight(RequestKey key, TransferCallback callback) {
+            this.key = key;
+            this.callbacks.add(callback);
+        }
+
+        /**
+         * @return false if the transfer is already complete
+         */
+        private synchronized boolean join(TransferCallback callback) {
+            if (done) {
+                return false;
+            }
+            callbacks.add(callback);
+            return true;
+        }
+
+        private void complete(Consumer<TransferCallback> outcome, boolean notifyFirst) {
+            final List<TransferCallback> notified;
+            synchronized (this) {
+                done = true;
+                notified = new ArrayList<>(callbacks);
+            }
+            inFlight.remove(key, this);
+
+            for (int i = notifyFirst ? 0 : 1; i < notified.size(); i++) {
+                try {
+                    outcome.accept(notified.get(i));
+                } catch (Exception e) {
+                    logger.error("Unexpected error in transfer callback: '{}'", e.getMessage());
+                    logger.debug("Stacktrace", e);
+                }
+            }
+        }
+
+        @Override
+        public void onCommitted(Transfer transfer) {
+            final List<TransferCallback> notified;
+            synchronized (this) {
+                notified = new ArrayList<>(callbacks);
+            }
+            for (TransferCallback callback : notified) {
+                callback.onCommitted(transfer);
+            }
+        }
+
+        @Override
+        public void onSuccess(long transferId) {
+            //remember before the duplicates could miss both the index and the in flight transfer
+            completed.put(key, transferId);
+            complete(c -> c.onSuccess(transferId), true);
+        }
+
+        @Override
+        public void onAccountNotFound(long accountId) {
+            complete(c -> c.onAccountNotFound(accountId), true);
+        }
+
+        @Override
+        public void onNotOwner() {
+            complete(TransferCallback::onNotOwner, true);
+        }
+
+        @Override
+        public void onInsufficientFunds() {
+            complete(TransferCallback::onInsufficientFunds, true);
+        }
+
+        @Override
+        public void onUnexpectedError(Exception e) {
+            complete(c -> c.onUnexpectedError(e), true);
+        }
+
+        @Override
+        public void onRejected(RejectedExecutionException e) {
+            complete(c -> c.onRejected(e), true);
+        }
+    }
+
+}
@@ -0,0 +1,393 @@
+package com.revolut.backend.db.impl;
+
+import com.revolut.backend.db.*;
+import com.revolut.backend.entity.Account;
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.entity.Transfer;
+import com.revolut.backend.utils.Args;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Database implementation keeping the whole ledger in memory, without jdbc. Accounts are stored in
+ * a table keyed by primitive id, transfers are serialized with striped locks, which are always acquired
+ * in the same order to avoid deadlocks.
+ * <p>
+ * Optionally all changes are written ahead to the {@link Journal}, which is replayed on {@link #init()} to
+ * rebuild the ledger after restart.
+ * <p>
+ * Transfers are idempotent: a transfer repeated with the same user id and request id is not executed again,
+ * the id of the original one is returned. Request ids are indexed together with the transfers, the index is
+ * rebuilt from the journal as well.
+ */
+public class InMemoryDatabase implements Database {
+
+    private static final int LOCK_STRIPES = 1024;
+
+    private static Logger logger = LoggerFactory.getLogger(InMemoryDatabase.class);
+
+    private final ExecutionLanes lanes;
+    private final Journal journal;
+    private final ReentrantLock[] locks;
+
+    private final LongTable<String> users = new LongTable<>();
+    private final LongTable<AccountCell> accounts = new LongTable<>();
+    private final LongTable<Transfer> transfers = new LongTable<>();
+    private final ConcurrentMap<RequestKey, Long> requests = new ConcurrentHashMap<>();
+
+    private final AtomicLong userIds = new AtomicLong();
+    private final AtomicLong accountIds = new AtomicLong();
+    private final AtomicLong transferIds = new AtomicLong();
+
+    /**
+     * Construct new instance
+     *
+     * @param executorService will be used to process all operations. Configure the queue properly to
+     *                        avoid the application to be over overwhelmed
+     */
+    public InMemoryDatabase(ExecutorService executorService) {
+        this(executorService, null);
+    }
+
+    /**
+     * Construct new instance
+     *
+     * @param executorService will be used to process all operations. Configure the queue properly to
+     *                        avoid the application to be over overwhelmed
+     * @param journal         write ahead journal, could be null to keep the ledger in memory only
+     */
+    public InMemoryDatabase(ExecutorService executorService, Journal journal) {
+        this(ExecutionLanes.of(executorService), journal);
+    }
+
+    /**
+     * Construct new instance executing reads, transfers and user/account creation in separate lanes
+     *
+     * @param lanes   will be used to process all operations
+     * @param journal write ahead journal, could be null to keep the ledger in memory only
+     */
+    public InMemoryDatabase(ExecutionLanes lanes, Journal journal) {
+        Objects.requireNonNull(lanes, "lanes must not be null");
+        this.lanes = lanes;
+        this.journal = journal;
+
+        this.locks = new ReentrantLock[LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init() {
+        if (journal != null) {
+            final long startedAt = System.nanoTime();
+            final long entries = journal.open(new Replay());
+            logger.info("Ledger is recovered from {} journal entries in {} ms", entries,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        }
+
+        logger.info("In memory database is ready, {} lock stripes", LOCK_STRIPES);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void createUser(String userName, CreateUserCallback callback) {
+        Objects.requireNonNull(userName, "userName must not be null");
+        Objects.requireNonNull(callback, "callback must not be null");
+
+        lanes.admin().submit(() -> {
+            try {
+                final long userId = userIds.incrementAndGet();
+                if (journal != null) {
+                    journal.appendUser(userId, userName);
+                }
+                users.put(userId, userName);
+                callback.onSuccess(userId);
+            } catch (Exception e) {
+                callback.onUnexpectedError(e);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void createAccount(long userId, Money balance, CreateAccountCallback callback) {
+        Args.isTrue(userId > 0, "userId must be greater zero");
+        Objects.requireNonNull(balance, "balance must not be null");
+        Objects.requireNonNull(callback, "callback must not be null");
+
+        lanes.admin().submit(() -> {
+            try {
+                if (users.get(userId) == null) {
+                    callback.onUserNotFound();
+                    return;
+                }
+
+                final long accountId = accountIds.incrementAndGet();
+                if (journal != null) {
+                    journal.appendAccount(accountId, userId, balance.getMinorUnits());
+                }
+                accounts.put(accountId, new AccountCell(userId, balance.getMinorUnits()));
+                callback.onSuccess(accountId);
+            } catch (Exception e) {
+                callback.onUnexpectedError(e);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getAccount(long userId, long accountId, GetAccountCallback callback) {
+        Args.isTrue(userId > 0, "userId must be greater zero");
+        Args.isTrue(accountId > 0, "accountId must be greater zero");
+
+        lanes.read().submit(() -> {
+            try {
+                final AccountCell cell = accounts.get(accountId);
+
+                if (cell != null && cell.ownerId == userId) {
+                    callback.onSuccess(new Account(accountId, cell.ownerId, Money.ofMinorUnits(cell.balance)));
+                } else {
+                    callback.onAccountNotFound();
+                }
+            } catch (Exception e) {
+                callback.onUnexpectedError(e);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void transfer(String requestId, long userId, long srcAccountId, long dstAccountId, Money amount, TransferCallback callback) {
+        Objects.requireNonNull(requestId, "request id must not be null");
+        Args.isTrue(userId > 0, "userId must be greater zero");
+        Args.isTrue(srcAccountId > 0, "accountSrc must be greater zero");
+        Args.isTrue(dstAccountId > 0, "accountDst must be greater zero");
+        Objects.requireNonNull(amount, "amount must not be null");
+        Args.isTrue(amount.isPositive(), "amount must be positive");
+        Objects.requireNonNull(callback, "callback must not be null");
+
+        final RequestKey key = new RequestKey(userId, requestId);
+
+        lanes.write().submit(() -> {
+            try {
+                final Long existingTransferId = requests.get(key);
+                if (existingTransferId != null) {
+                    logger.debug("Transfer '{}' is a duplicate of '{}'", requestId, existingTransferId);
+                    callback.onSuccess(existingTransferId);
+                    return;
+                }
+
+                final AccountCell srcAccount = accounts.get(srcAccountId);
+
+                //check src account exists
+                if (srcAccount == null) {
+                    callback.onAccountNotFound(srcAccountId);
+                    return;
+                }
+
+                //check if user is src account owner, owner never changes, so no lock required
+                if (userId != srcAccount.ownerId) {
+                    callback.onNotOwner();
+                    return;
+                }
+
+                final AccountCell dstAccount = accounts.get(dstAccountId);
+
+                //check dst account exists
+                if (dstAccount == null) {
+                    callback.onAccountNotFound(dstAccountId);
+                    return;
+                }
+
+                transferLocked(key, srcAccountId, srcAccount, dstAccountId, dstAccount, amount, callback).run();
+
+            } catch (Exception e) {
+                callback.onUnexpectedError(e);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getTransfer(long userId, long transferId, GetTransferCallback callback) {
+        Args.isTrue(transferId > 0, "transferId must be greater zero");
+        Objects.requireNonNull(callback, "request id must not be null");
+
+        lanes.read().submit(() -> {
+            try {
+                final Transfer transfer = transfers.get(transferId);
+
+                if (transfer != null && transfer.getUserId() == userId) {
+                    callback.onSuccess(transfer);
+                } else {
+                    callback.onTransferNotFound();
+                }
+            } catch (Exception e) {
+                callback.onUnexpectedError(e);
+            }
+        });
+    }
+
+    /**
+     * Move means between accounts holding both stripe locks. Callbacks are never called under the lock.
+     *
+     * @return outcome of the transfer to be run after the locks are released
+     */
+    private Runnable transferLocked(RequestKey key,
+                                    long srcAccountId, AccountCell srcAccount,
+                                    long dstAccountId, AccountCell dstAccount,
+                                    Money amount, TransferCallback callback) {
+        final int srcStripe = stripe(srcAccountId);
+        final int dstStripe = stripe(dstAccountId);
+
+        //lock stripes in the same order
+        final ReentrantLock first = locks[Math.min(srcStripe, dstStripe)];
+        final ReentrantLock second = locks[Math.max(srcStripe, dstStripe)];
+
+        logger.debug("Acquire locks for the accounts '{}' and '{}'", srcAccountId, dstAccountId);
+
+        first.lock();
+        try {
+            second.lock();
+            try {
+                final long srcBalanceBefore = srcAccount.balance;
+                final long minorUnits = amount.getMinorUnits();
+
+                //check if balance is sufficient
+                if (srcBalanceBefore < minorUnits) {
+                    return callback::onInsufficientFunds;
+                }
+
+                final long dstBalanceBefore = dstAccount.balance;
+                final long srcBalanceAfter = srcBalanceBefore - minorUnits;
+                final long dstBalanceAfter = Math.addExact(dstBalanceBefore, minorUnits);
+
+                //the same request could be executed concurrently on other stripes, the index decides
+                final long transferId = transferIds.incrementAndGet();
+                final Long existingTransferId = requests.putIfAbsent(key, transferId);
+                if (existingTransferId != null) {
+                    return () -> callback.onSuccess(existingTransferId);
+                }
+
+                final Transfer transfer = new Transfer(transferId, key.requestId,
+                        System.currentTimeMillis(), srcAccountId, dstAccountId, key.userId, amount,
+                        Money.ofMinorUnits(srcBalanceBefore), Money.ofMinorUnits(srcBalanceAfter),
+                        Money.ofMinorUnits(dstBalanceBefore), Money.ofMinorUnits(dstBalanceAfter));
+
+                //journal under the locks, so the order of the entries per account matches the order of changes
+                if (journal != null) {
+                    try {
+                        journal.appendTransfer(transfer);
+                    } catch (RuntimeException e) {
+                        requests.remove(key, transferId);
+                        throw e;
+                    }
+                }
+
+                srcAccount.balance = srcBalanceAfter;
+                dstAccount.balance = dstBalanceAfter;
+                transfers.put(transfer.getId(), transfer);
+
+                return () -> {
+                    callback.onCommitted(transfer);
+                    callback.onSuccess(transfer.getId());
+                };
+            } finally {
+                second.unlock();
+            }
+        } finally {
+            first.unlock();
+        }
+    }
+
+    private static void updateMax(AtomicLong counter, long value) {
+        if (counter.get() < value) {
+            counter.set(value);
+        }
+    }
+
+    private static int stripe(long accountId) {
+        return (int) (accountId & (LOCK_STRIPES - 1));
+    }
+
+    /**
+     * Mutable account state. Balance in minor units is modified only under the account stripe lock,
+     * volatile allows lock free reads.
+     */
+    private static final class AccountCell {
+
+        private final long ownerId;
+        private volatile long balance;
+
+        private AccountCell(long ownerId, long balance) {
+            this.ownerId = ownerId;
+            this.balance = balance;
+        }
+    }
+
+    /**
+     * Rebuilds the ledger from the journal entries. Runs before any operation is accepted, so no locks required.
+     */
+    private class Replay implements Journal.Listener {
+
+        @Override
+        public void onUser(long userId, String name) {
+            users.put(userId, name);
+            updateMax(userIds, userId);
+        }
+
+        @Override
+        public void onAccount(long accountId, long ownerId, long balance) {
+            accounts.put(accountId, new AccountCell(ownerId, balance));
+            updateMax(accountIds, accountId);
+        }
+
+        @Override
+        public void onTransfer(long transferId, String requestId, long timestamp,
+                               long srcAccountId, long dstAccountId, long userId, long amount,
+                               long srcBalanceBefore, long srcBalanceAfter, long dstBalanceBefore, long dstBalanceAfter) {
+            accounts.get(srcAccountId).balance = srcBalanceAfter;
+            accounts.get(dstAccountId).balance = dstBalanceAfter;
+
+            transfers.put(transferId, new Transfer(transferId, requestId, timestamp, srcAccountId, dstAccountId,
+                    userId, Money.ofMinorUnits(amount),
+                    Money.ofMinorUnits(srcBalanceBefore), Money.ofMinorUnits(srcBalanceAfter),
+                    Money.ofMinorUnits(dstBalanceBefore), Money.ofMinorUnits(dstBalanceAfter)));
+            requests.put(new RequestKey(userId, requestId), transferId);
+            updateMax(transferIds, transferId);
+        }
+    }
+
+}
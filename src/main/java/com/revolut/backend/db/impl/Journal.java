@@ -0,0 +1,457 @@
+package com.revolut.backend.db.impl;
+
+import com.revolut.backend.entity.Transfer;
+import com.revolut.backend.utils.Args;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append only write ahead journal of the ledger changes, stored in memory mapped segment files of fixed size.
+ * <p>
+ * Each entry is one or more fixed width records of 128 bytes:
+ * <pre>
+ * 0   int   crc32 of bytes 4..127
+ * 4   byte  type
+ * 5   byte  text encoding: 0 - latin1, 1 - utf16
+ * 6   short text length in chars
+ * 8   long  x 10 numeric fields of the entry
+ * 88  text  first 40 bytes of the text
+ * </pre>
+ * Text which doesn't fit the slot is continued in the following continuation records, having
+ * the whole 120 bytes after the header for the text. An entry never spans segments.
+ * <p>
+ * Records are written without allocations through a reusable direct buffer. Appended entries survive the process
+ * crash as soon as the append returns, since they are in the OS page cache. Segments are forced to the disk
+ * when filled and on close, so an OS crash loses at most the tail of the last segment.
+ * <p>
+ * Recovery stops at the first record with invalid checksum in the last segment (torn tail), the tail is zeroed
+ * and next appends continue from there. Invalid record in any other segment is considered a corruption.
+ */
+public class Journal {
+
+    /**
+     * Receives entries on replay, in the order they were appended
+     */
+    public interface Listener {
+
+        void onUser(long userId, String name);
+
+        void onAccount(long accountId, long ownerId, long balance);
+
+        void onTransfer(long transferId, String requestId, long timestamp,
+                        long srcAccountId, long dstAccountId, long userId, long amount,
+                        long srcBalanceBefore, long srcBalanceAfter, long dstBalanceBefore, long dstBalanceAfter);
+    }
+
+    static final int RECORD_SIZE = 128;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int FIELDS_OFFSET = HEADER_SIZE;
+    private static final int TEXT_OFFSET = FIELDS_OFFSET + 10 * Long.BYTES;
+    private static final int TEXT_SLOT = RECORD_SIZE - TEXT_OFFSET;
+    private static final int CONTINUATION_SLOT = RECORD_SIZE - HEADER_SIZE;
+
+    private static final byte END = 0;
+    private static final byte USER = 1;
+    private static final byte ACCOUNT = 2;
+    private static final byte TRANSFER = 3;
+    private static final byte CONTINUATION = 4;
+
+    private static final byte LATIN1 = 0;
+    private static final byte UTF16 = 1;
+
+    private static final int MAX_TEXT_LENGTH = 0xFFFF;
+    private static final int DEFAULT_SEGMENT_RECORDS = 512 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(Journal.class);
+
+    private final Path dir;
+    private final int segmentRecords;
+
+    private final ByteBuffer record = ByteBuffer.allocateDirect(RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+
+    private MappedByteBuffer segment;
+    private long segmentIndex;
+    private long replayed;
+
+    /**
+     * Construct new instance with segments of 64 Mb
+     *
+     * @param dir directory of the segment files, created if missing
+     */
+    public Journal(Path dir) {
+        this(dir, DEFAULT_SEGMENT_RECORDS);
+    }
+
+    /**
+     * Construct new instance
+     *
+     * @param dir            directory of the segment files, created if missing
+     * @param segmentRecords count of records per segment file
+     */
+    public Journal(Path dir, int segmentRecords) {
+        Objects.requireNonNull(dir, "dir must not be null");
+        Args.isTrue(segmentRecords > 1 + MAX_TEXT_LENGTH * 2 / CONTINUATION_SLOT,
+                "segmentRecords must fit the longest entry");
+        this.dir = dir;
+        this.segmentRecords = segmentRecords;
+    }
+
+    /**
+     * Replay all entries and prepare the journal for appends. Must be called once before the first append.
+     *
+     * @param listener receives the entries
+     * @return count of replayed entries
+     * @throws UncheckedIOException on io error
+     * @throws IllegalStateException if the journal is corrupted
+     */
+    public synchronized long open(Listener listener) {
+        Objects.requireNonNull(listener, "listener must not be null");
+
+        try {
+            Files.createDirectories(dir);
+
+            final List<Path> segments = segments();
+            replayed = 0;
+
+            for (int i = 0; i < segments.size(); i++) {
+                final MappedByteBuffer buffer = map(segments.get(i));
+                final boolean last = i == segments.size() - 1;
+                final int end = replay(buffer, listener, last);
+
+                if (last) {
+                    segmentIndex = segmentIndex(segments.get(i));
+                    segment = buffer;
+                    segment.position(end);
+                }
+            }
+
+            if (segment == null) {
+                segmentIndex = 0;
+                segment = map(segmentPath(segmentIndex));
+            }
+
+            logger.info("Journal '{}' is opened, {} segments, {} entries replayed",
+                    dir, Math.max(segments.size(), 1), replayed);
+            return replayed;
+
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @throws UncheckedIOException if new segment couldn't be created
+     * @throws IllegalArgumentException if name is longer than 65535 chars
+     */
+    public synchronized void appendUser(long userId, String name) {
+        begin(USER, name);
+        record.putLong(field(0), userId);
+        write(name);
+    }
+
+    /**
+     * @throws UncheckedIOException if new segment couldn't be created
+     */
+    public synchronized void appendAccount(long accountId, long ownerId, long balance) {
+        begin(ACCOUNT, null);
+        record.putLong(field(0), accountId);
+        record.putLong(field(1), ownerId);
+        record.putLong(field(2), balance);
+        write(null);
+    }
+
+    /**
+     * @throws UncheckedIOException if new segment couldn't be created
+     * @throws IllegalArgumentException if request id is longer than 65535 chars
+     */
+    public synchronized void appendTransfer(Transfer transfer) {
+        final String requestId = transfer.getRequestId();
+
+        begin(TRANSFER, requestId);
+        record.putLong(field(0), transfer.getId());
+        record.putLong(field(1), transfer.getTimestamp());
+        record.putLong(field(2), transfer.getSrcAccountId());
+        record.putLong(field(3), transfer.getDstAccountId());
+        record.putLong(field(4), transfer.getUserId());
+        record.putLong(field(5), transfer.getAmount().getMinorUnits());
+        record.putLong(field(6), transfer.getSrcAccountBalanceBefore().getMinorUnits());
+        record.putLong(field(7), transfer.getSrcAccountBalanceAfter().getMinorUnits());
+        record.putLong(field(8), transfer.getDstAccountBalanceBefore().getMinorUnits());
+        record.putLong(field(9), transfer.getDstAccountBalanceAfter().getMinorUnits());
+        write(requestId);
+    }
+
+    /**
+     * Force the current segment to the disk and release it
+     */
+    public synchronized void close() {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+    }
+
+    private void begin(byte type, String text) {
+        if (segment == null) {
+            throw new IllegalStateException("Journal is not opened");
+        }
+
+        final int length = text == null ? 0 : text.length();
+        Args.isTrue(length <= MAX_TEXT_LENGTH, "text must not be longer " + MAX_TEXT_LENGTH);
+
+        final byte encoding = isLatin1(text) ? LATIN1 : UTF16;
+        final int records = records(length * (encoding == LATIN1 ? 1 : 2));
+        if (segment.remaining() < records * RECORD_SIZE) {
+            rotate();
+        }
+
+        clearRecord();
+        record.put(4, type);
+        record.put(5, encoding);
+        record.putShort(6, (short) length);
+    }
+
+    private void write(String text) {
+        final int length = text == null ? 0 : text.length();
+        final boolean latin1 = record.get(5) == LATIN1;
+
+        int offset = TEXT_OFFSET;
+        for (int i = 0; i < length; i++) {
+            if (offset == RECORD_SIZE) {
+                flushRecord();
+                clearRecord();
+                record.put(4, CONTINUATION);
+                offset = HEADER_SIZE;
+            }
+
+            final char c = text.charAt(i);
+            if (latin1) {
+                record.put(offset++, (byte) c);
+            } else {
+                record.putChar(offset, c);
+                offset += 2;
+            }
+        }
+
+        flushRecord();
+    }
+
+    private void flushRecord() {
+        record.limit(RECORD_SIZE).position(4);
+        crc.reset();
+        crc.update(record);
+        record.putInt(0, (int) crc.getValue());
+
+        record.position(0);
+        segment.put(record);
+    }
+
+    private void clearRecord() {
+        for (int i = 0; i < RECORD_SIZE; i += Long.BYTES) {
+            record.putLong(i, 0);
+        }
+    }
+
+    private void rotate() {
+        //the rest of the segment stays zeroed, which marks its end
+        segment.force();
+        try {
+            segment = map(segmentPath(++segmentIndex));
+        } catch (IOException e) {
+            segmentIndex--;
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Replay entries of the segment
+     *
+     * @return position after the last valid entry
+     */
+    private int replay(MappedByteBuffer buffer, Listener listener, boolean last) {
+        final ByteBuffer view = buffer.duplicate();
+        final CRC32 checksum = new CRC32();
+        int position = 0;
+
+        while (position < view.capacity()) {
+            final byte type = view.get(position + 4);
+            if (type == END && isZero(view, position)) {
+                break;
+            }
+
+            final int length = Short.toUnsignedInt(view.getShort(position + 6));
+            final boolean latin1 = view.get(position + 5) == LATIN1;
+            final int records = records(length * (latin1 ? 1 : 2));
+
+            if (!isValid(view, checksum, position, records)) {
+                if (!last) {
+                    throw new IllegalStateException("Journal segment is corrupted at " + position);
+                }
+                logger.warn("Torn journal tail at position {} is discarded", position);
+                break;
+            }
+
+            final String text = length == 0 ? null : readText(view, position, length, latin1);
+            apply(view, position, type, text, listener);
+
+            position += records * RECORD_SIZE;
+            replayed++;
+        }
+
+        if (last) {
+            //pages could reach the disk out of order, so anything after the end must not be appended over
+            zeroTail(buffer, position);
+        }
+
+        return position;
+    }
+
+    private static void zeroTail(MappedByteBuffer buffer, int position) {
+        for (int i = position; i < buffer.capacity(); i += Long.BYTES) {
+            if (buffer.getLong(i) != 0) {
+                buffer.putLong(i, 0);
+            }
+        }
+    }
+
+    private boolean isValid(ByteBuffer view, CRC32 checksum, int position, int records) {
+        if (position + records * RECORD_SIZE > view.capacity()) {
+            return false;
+        }
+
+        for (int i = 0; i < records; i++) {
+            final int start = position + i * RECORD_SIZE;
+            final byte type = view.get(start + 4);
+            if (i == 0 ? type < USER || type > TRANSFER : type != CONTINUATION) {
+                return false;
+            }
+
+            view.limit(start + RECORD_SIZE).position(start + 4);
+            checksum.reset();
+            checksum.update(view);
+            view.clear();
+
+            if ((int) checksum.getValue() != view.getInt(start)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static void apply(ByteBuffer view, int position, byte type, String text, Listener listener) {
+        final int fields = position + FIELDS_OFFSET;
+
+        switch (type) {
+            case USER:
+                listener.onUser(view.getLong(fields), text);
+                break;
+            case ACCOUNT:
+                listener.onAccount(view.getLong(fields), view.getLong(fields + 8), view.getLong(fields + 16));
+                break;
+            case TRANSFER:
+                listener.onTransfer(view.getLong(fields), text, view.getLong(fields + 8),
+                        view.getLong(fields + 16), view.getLong(fields + 24), view.getLong(fields + 32),
+                        view.getLong(fields + 40), view.getLong(fields + 48), view.getLong(fields + 56),
+                        view.getLong(fields + 64), view.getLong(fields + 72));
+                break;
+            default:
+                throw new IllegalStateException("Unexpected journal record type " + type);
+        }
+    }
+
+    private static String readText(ByteBuffer view, int position, int length, boolean latin1) {
+        final StringBuilder sb = new StringBuilder(length);
+        int offset = position + TEXT_OFFSET;
+        int recordEnd = position + RECORD_SIZE;
+
+        for (int i = 0; i < length; i++) {
+            if (offset == recordEnd) {
+                offset = recordEnd + HEADER_SIZE;
+                recordEnd += RECORD_SIZE;
+            }
+
+            if (latin1) {
+                sb.append((char) (view.get(offset++) & 0xFF));
+            } else {
+                sb.append(view.getChar(offset));
+                offset += 2;
+            }
+        }
+
+        return sb.toString();
+    }
+
+    private static boolean isZero(ByteBuffer view, int position) {
+        for (int i = 0; i < RECORD_SIZE; i += Long.BYTES) {
+            if (view.getLong(position + i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLatin1(String text) {
+        if (text != null) {
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) > 0xFF) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int records(int textBytes) {
+        if (textBytes <= TEXT_SLOT) {
+            return 1;
+        }
+        return 1 + (textBytes - TEXT_SLOT + CONTINUATION_SLOT - 1) / CONTINUATION_SLOT;
+    }
+
+    private static int field(int index) {
+        return FIELDS_OFFSET + index * Long.BYTES;
+    }
+
+    private MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentRecords * RECORD_SIZE);
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().matches("journal-\\d{12}\\.log"))
+                    .sorted()
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    private Path segmentPath(long index) {
+        return dir.resolve(String.format("journal-%012d.log", index));
+    }
+
+    private static long segmentIndex(Path segment) {
+        final String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring("journal-".length(), name.length() - ".log".length()));
+    }
+
+}
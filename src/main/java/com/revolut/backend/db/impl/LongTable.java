@@ -0,0 +1,84 @@
+package com.revolut.backend.db.impl;
+
+import com.revolut.backend.utils.Args;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Concurrent table keyed by positive primitive long ids. Ids are expected to be allocated sequentially,
+ * so values are kept in fixed size chunks addressed directly by id, without boxing and hashing.
+ * Reads are lock free, growth of the chunk directory is serialized.
+ *
+ * @param <V> value type
+ */
+class LongTable<V> {
+
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private volatile AtomicReferenceArray<V>[] chunks;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    LongTable() {
+        this.chunks = new AtomicReferenceArray[1];
+        this.chunks[0] = new AtomicReferenceArray<>(CHUNK_SIZE);
+    }
+
+    /**
+     * @param id positive id
+     * @return value or null if absent
+     */
+    V get(long id) {
+        if (id <= 0) {
+            return null;
+        }
+
+        final long chunkIndex = id >>> CHUNK_BITS;
+        final AtomicReferenceArray<V>[] current = chunks;
+        if (chunkIndex >= current.length) {
+            return null;
+        }
+
+        final AtomicReferenceArray<V> chunk = current[(int) chunkIndex];
+        return chunk == null ? null : chunk.get((int) (id & CHUNK_MASK));
+    }
+
+    /**
+     * @param id    positive id
+     * @param value non null value
+     */
+    void put(long id, V value) {
+        Args.isTrue(id > 0, "id must be greater zero");
+        chunk(id).set((int) (id & CHUNK_MASK), value);
+    }
+
+    private AtomicReferenceArray<V> chunk(long id) {
+        final long chunkIndex = id >>> CHUNK_BITS;
+        Args.isTrue(chunkIndex < Integer.MAX_VALUE, "id is too large");
+
+        final AtomicReferenceArray<V>[] current = chunks;
+        if (chunkIndex < current.length && current[(int) chunkIndex] != null) {
+            return current[(int) chunkIndex];
+        }
+
+        return grow((int) chunkIndex);
+    }
+
+    private synchronized AtomicReferenceArray<V> grow(int chunkIndex) {
+        final AtomicReferenceArray<V>[] current = chunks;
+        if (chunkIndex < current.length && current[chunkIndex] != null) {
+            return current[chunkIndex];
+        }
+
+        //copy on write, so readers always observe fully initialized directory
+        final AtomicReferenceArray<V>[] grown = Arrays.copyOf(current,
+                chunkIndex < current.length ? current.length : Math.max(chunkIndex + 1, current.length * 2));
+        grown[chunkIndex] = new AtomicReferenceArray<>(CHUNK_SIZE);
+
+        chunks = grown;
+        return grown[chunkIndex];
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.revolut.backend.db.impl;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unbounded lock free multi-producer single-consumer queue (intrusive linked list, D. Vyukov's algorithm).
+ * Any thread may {@link #offer(Object)}, only one thread may {@link #poll()}.
+ *
+ * @param <T> element type
+ */
+class MpscQueue<T> {
+
+    private final AtomicReference<Node<T>> tail;
+    private Node<T> head;
+
+    MpscQueue() {
+        final Node<T> stub = new Node<>(null);
+        this.head = stub;
+        this.tail = new AtomicReference<>(stub);
+    }
+
+    /**
+     * Could be called by any thread
+     *
+     * @param value non null value
+     */
+    void offer(T value) {
+        Objects.requireNonNull(value, "value must not be null");
+        final Node<T> node = new Node<>(value);
+        final Node<T> prev = tail.getAndSet(node);
+        prev.next = node;
+    }
+
+    /**
+     * Should be called by the consumer thread only
+     *
+     * @return next value or null if queue is empty (or producer is in the middle of offer)
+     */
+    T poll() {
+        final Node<T> next = head.next;
+        if (next == null) {
+            return null;
+        }
+
+        final T value = next.value;
+        next.value = null;
+        head = next;
+        return value;
+    }
+
+    /**
+     * Should be called by the consumer thread only
+     *
+     * @return true if there are no published elements
+     */
+    boolean isEmpty() {
+        return head.next == null;
+    }
+
+    private static final class Node<T> {
+
+        private T value;
+        private volatile Node<T> next;
+
+        private Node(T value) {
+            this.value = value;
+        }
+    }
+
+}
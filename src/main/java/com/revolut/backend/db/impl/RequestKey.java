@@ -0,0 +1,32 @@
+package com.revolut.backend.db.impl;
+
+/**
+ * Key of the transfer idempotency: request id is unique per user
+ */
+final class RequestKey {
+
+    final long userId;
+    final String requestId;
+
+    RequestKey(long userId, String requestId) {
+        this.userId = userId;
+        this.requestId = requestId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RequestKey)) {
+            return false;
+        }
+        final RequestKey other = (RequestKey) o;
+        return userId == other.userId && requestId.equals(other.requestId);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(userId) + requestId.hashCode();
+    }
+}
@@ -0,0 +1,535 @@
+package com.revolut.backend.db.impl;
+
+import com.revolut.backend.db.*;
+import com.revolut.backend.entity.Account;
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.entity.Transfer;
+import com.revolut.backend.utils.Args;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * In memory database where accounts are partitioned by id into shards. Each shard is owned by exactly
+ * one thread, which applies all mutations of its accounts one by one, so no locks are taken at all.
+ * Requests are delivered to shards through lock free queues.
+ * <p>
+ * Transfer between accounts of different shards is executed in two phases: the source shard checks
+ * the request and reserves the amount (debits the source account), then the destination shard
+ * either credits the destination account and completes the transfer or, if the account does not exist,
+ * asks the source shard to release the reservation. As a result, in that particular case insufficient
+ * funds take precedence over unknown destination account.
+ * <p>
+ * Transfers are idempotent: a transfer repeated with the same user id and request id is not executed again,
+ * the id of the original one is returned. Request ids are indexed when the transfer is credited, a repeated
+ * request reaching that point concurrently releases its reservation.
+ * <p>
+ * Once stopped, new requests are rejected and the pending ones are completed with
+ * {@link TransferCallback#onRejected} if not started yet or with {@code onUnexpectedError} otherwise.
+ */
+public class ShardedDatabase implements Database {
+
+    private static Logger logger = LoggerFactory.getLogger(ShardedDatabase.class);
+
+    private final Shard[] shards;
+
+    private final LongTable<String> users = new LongTable<>();
+    private final LongTable<Transfer> transfers = new LongTable<>();
+    private final ConcurrentMap<RequestKey, Long> requests = new ConcurrentHashMap<>();
+
+    private final AtomicLong userIds = new AtomicLong();
+    private final AtomicLong accountIds = new AtomicLong();
+    private final AtomicLong transferIds = new AtomicLong();
+
+    /**
+     * Construct new instance with shards count equal to available processors
+     *
+     * @param queueSize max count of pending requests per shard
+     */
+    public ShardedDatabase(int queueSize) {
+        this(Runtime.getRuntime().availableProcessors(), queueSize);
+    }
+
+    /**
+     * Construct new instance
+     *
+     * @param shardsCount count of shards (and threads)
+     * @param queueSize   max count of pending requests per shard
+     */
+    public ShardedDatabase(int shardsCount, int queueSize) {
+        Args.isTrue(shardsCount > 0, "shardsCount must be greater zero");
+        Args.isTrue(queueSize > 0, "queueSize must be greater zero");
+
+        this.shards = new Shard[shardsCount];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(i, queueSize);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init() {
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+        logger.info("Sharded database is ready, {} shards", shards.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() {
+        for (Shard shard : shards) {
+            shard.stop();
+        }
+
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        for (Shard shard : shards) {
+            shard.drain();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void createUser(String userName, CreateUserCallback callback) {
+        Objects.requireNonNull(userName, "userName must not be null");
+        Objects.requireNonNull(callback, "callback must not be null");
+
+        final long userId = userIds.incrementAndGet();
+
+        shard(userId).submit(() -> {
+            try {
+                users.put(userId, userName);
+                callback.onSuccess(userId);
+            } catch (Exception e) {
+                callback.onUnexpectedError(e);
+            }
+        }, callback::onUnexpectedError);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void createAccount(long userId, Money balance, CreateAccountCallback callback) {
+        Args.isTrue(userId > 0, "userId must be greater zero");
+        Objects.requireNonNull(balance, "balance must not be null");
+        Objects.requireNonNull(callback, "callback must not be null");
+
+        final long accountId = accountIds.incrementAndGet();
+        final Shard shard = shard(accountId);
+
+        shard.submit(() -> {
+            try {
+                if (users.get(userId) == null) {
+                    callback.onUserNotFound();
+                    return;
+                }
+
+                shard.put(accountId, new ShardAccount(userId, balance.getMinorUnits()));
+                callback.onSuccess(accountId);
+            } catch (Exception e) {
+                callback.onUnexpectedError(e);
+            }
+        }, callback::onUnexpectedError);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getAccount(long userId, long accountId, GetAccountCallback callback) {
+        Args.isTrue(userId > 0, "userId must be greater zero");
+        Args.isTrue(accountId > 0, "accountId must be greater zero");
+
+        final Shard shard = shard(accountId);
+
+        shard.submit(() -> {
+            try {
+                final ShardAccount account = shard.get(accountId);
+
+                if (account != null && account.ownerId == userId) {
+                    callback.onSuccess(new Account(accountId, account.ownerId, Money.ofMinorUnits(account.balance)));
+                } else {
+                    callback.onAccountNotFound();
+                }
+            } catch (Exception e) {
+                callback.onUnexpectedError(e);
+            }
+        }, callback::onUnexpectedError);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void transfer(String requestId, long userId, long srcAccountId, long dstAccountId, Money amount, TransferCallback callback) {
+        Objects.requireNonNull(requestId, "request id must not be null");
+        Args.isTrue(userId > 0, "userId must be greater zero");
+        Args.isTrue(srcAccountId > 0, "accountSrc must be greater zero");
+        Args.isTrue(dstAccountId > 0, "accountDst must be greater zero");
+        Objects.requireNonNull(amount, "amount must not be null");
+        Args.isTrue(amount.isPositive(), "amount must be positive");
+        Objects.requireNonNull(callback, "callback must not be null");
+
+        final Shard srcShard = shard(srcAccountId);
+        final Shard dstShard = shard(dstAccountId);
+        final long minorUnits = amount.getMinorUnits();
+        final RequestKey key = new RequestKey(userId, requestId);
+
+        srcShard.submit(() -> {
+            try {
+                final Long existingTransferId = requests.get(key);
+                if (existingTransferId != null) {
+                    logger.debug("Transfer '{}' is a duplicate of '{}'", requestId, existingTransferId);
+                    callback.onSuccess(existingTransferId);
+                    return;
+                }
+
+                final ShardAccount srcAccount = srcShard.get(srcAccountId);
+
+                //check src account exists
+                if (srcAccount == null) {
+                    callback.onAccountNotFound(srcAccountId);
+                    return;
+                }
+
+                //check if user is src account owner
+                if (userId != srcAccount.ownerId) {
+                    callback.onNotOwner();
+                    return;
+                }
+
+                //within one shard the whole transfer is applied at once
+                if (srcShard == dstShard) {
+                    final ShardAccount dstAccount = srcShard.get(dstAccountId);
+
+                    if (dstAccount == null) {
+                        callback.onAccountNotFound(dstAccountId);
+                        return;
+                    }
+
+                    if (srcAccount.balance < minorUnits) {
+                        callback.onInsufficientFunds();
+                        return;
+                    }
+
+                    final long srcBalanceBefore = srcAccount.balance;
+                    final long dstBalanceAfter = Math.addExact(dstAccount.balance, minorUnits);
+                    srcAccount.balance = srcBalanceBefore - minorUnits;
+
+                    final Transfer transfer = credit(key, srcAccountId, dstAccountId, dstAccount, amount,
+                            srcBalanceBefore, srcAccount.balance, dstBalanceAfter);
+                    if (transfer == null) {
+                        srcAccount.balance = srcBalanceBefore;
+                        callback.onSuccess(requests.get(key));
+                        return;
+                    }
+                    callback.onCommitted(transfer);
+                    callback.onSuccess(transfer.getId());
+                    return;
+                }
+
+                //phase 1: reserve amount on the source shard
+                if (srcAccount.balance < minorUnits) {
+                    callback.onInsufficientFunds();
+                    return;
+                }
+
+                final long srcBalanceBefore = srcAccount.balance;
+                final long srcBalanceAfter = srcBalanceBefore - minorUnits;
+                srcAccount.balance = srcBalanceAfter;
+
+                //phase 2: credit or release on the destination shard
+                dstShard.forward(() -> {
+                    final ShardAccount dstAccount = dstShard.get(dstAccountId);
+
+                    final long dstBalanceAfter;
+                    try {
+                        dstBalanceAfter = dstAccount == null ? 0 : Math.addExact(dstAccount.balance, minorUnits);
+                    } catch (ArithmeticException e) {
+                        release(srcShard, srcAccount, minorUnits, callback, () -> callback.onUnexpectedError(e));
+                        return;
+                    }
+
+                    if (dstAccount == null) {
+                        release(srcShard, srcAccount, minorUnits, callback, () -> callback.onAccountNotFound(dstAccountId));
+                        return;
+                    }
+
+                    try {
+                        final Transfer transfer = credit(key, srcAccountId, dstAccountId, dstAccount,
+                                amount, srcBalanceBefore, srcBalanceAfter, dstBalanceAfter);
+                        if (transfer == null) {
+                            final long existing = requests.get(key);
+                            release(srcShard, srcAccount, minorUnits, callback, () -> callback.onSuccess(existing));
+                            return;
+                        }
+                        callback.onCommitted(transfer);
+                        callback.onSuccess(transfer.getId());
+                    } catch (Exception e) {
+                        callback.onUnexpectedError(e);
+                    }
+                }, callback::onUnexpectedError);
+
+            } catch (Exception e) {
+                callback.onUnexpectedError(e);
+            }
+        }, callback::onRejected);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getTransfer(long userId, long transferId, GetTransferCallback callback) {
+        Args.isTrue(transferId > 0, "transferId must be greater zero");
+        Objects.requireNonNull(callback, "request id must not be null");
+
+        shard(transferId).submit(() -> {
+            try {
+                final Transfer transfer = transfers.get(transferId);
+
+                if (transfer != null && transfer.getUserId() == userId) {
+                    callback.onSuccess(transfer);
+                } else {
+                    callback.onTransferNotFound();
+                }
+            } catch (Exception e) {
+                callback.onUnexpectedError(e);
+            }
+        }, callback::onUnexpectedError);
+    }
+
+    /**
+     * Should be called by the destination account shard thread
+     *
+     * @return stored transfer or null if the request is indexed already by a concurrent transfer,
+     * the destination account is not changed then
+     */
+    private Transfer credit(RequestKey key, long srcAccountId, long dstAccountId, ShardAccount dstAccount,
+                            Money amount, long srcBalanceBefore, long srcBalanceAfter, long dstBalanceAfter) {
+        final long transferId = transferIds.incrementAndGet();
+        if (requests.putIfAbsent(key, transferId) != null) {
+            return null;
+        }
+
+        final long dstBalanceBefore = dstAccount.balance;
+        dstAccount.balance = dstBalanceAfter;
+
+        final Transfer transfer = new Transfer(transferId, key.requestId, System.currentTimeMillis(),
+                srcAccountId, dstAccountId, key.userId, amount,
+                Money.ofMinorUnits(srcBalanceBefore), Money.ofMinorUnits(srcBalanceAfter),
+                Money.ofMinorUnits(dstBalanceBefore), Money.ofMinorUnits(dstBalanceAfter));
+        transfers.put(transfer.getId(), transfer);
+
+        return transfer;
+    }
+
+    /**
+     * Return reserved amount to the source account on its shard and then notify the requester
+     */
+    private static void release(Shard srcShard, ShardAccount srcAccount, long minorUnits,
+                                TransferCallback callback, Runnable notification) {
+        srcShard.forward(() -> {
+            srcAccount.balance += minorUnits;
+            notification.run();
+        }, callback::onUnexpectedError);
+    }
+
+    private Shard shard(long id) {
+        return shards[(int) (id % shards.length)];
+    }
+
+    /**
+     * Account state, accessed by the owning shard thread only. Balance is kept in minor units
+     */
+    private static final class ShardAccount {
+
+        private final long ownerId;
+        private long balance;
+
+        private ShardAccount(long ownerId, long balance) {
+            this.ownerId = ownerId;
+            this.balance = balance;
+        }
+    }
+
+    /**
+     * Queued request of a shard with the way to complete it if it is dropped on stop
+     */
+    private static final class Task {
+
+        private final Runnable action;
+        private final Consumer<RejectedExecutionException> onDropped;
+
+        private Task(Runnable action, Consumer<RejectedExecutionException> onDropped) {
+            this.action = action;
+            this.onDropped = onDropped;
+        }
+    }
+
+    /**
+     * Single threaded event loop owning a subset of accounts
+     */
+    private final class Shard implements Runnable {
+
+        /**
+         * Added to the pending count on stop, so any later request sees a negative count
+         */
+        private static final int STOPPED = Integer.MIN_VALUE / 2;
+
+        private final MpscQueue<Task> queue = new MpscQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final int queueSize;
+        private final Thread thread;
+
+        private ShardAccount[] accounts = new ShardAccount[1024];
+
+        private volatile boolean parked;
+        private volatile boolean running = true;
+
+        private Shard(int index, int queueSize) {
+            this.queueSize = queueSize;
+            this.thread = new Thread(this, "db-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * Enqueue external request
+         *
+         * @param onDropped called if the shard is stopped before the request is executed
+         * @throws RejectedExecutionException whenever shard queue is full or the shard is stopped
+         */
+        private void submit(Runnable action, Consumer<RejectedExecutionException> onDropped) {
+            final int count = pending.incrementAndGet();
+            if (count < 0 || count > queueSize) {
+                pending.decrementAndGet();
+                throw new RejectedExecutionException(count < 0 ? "Database is stopped" : "Shard queue is full");
+            }
+            enqueue(new Task(action, onDropped));
+        }
+
+        /**
+         * Enqueue message of a transfer already in progress. Never rejected unless the shard is stopped,
+         * otherwise reserved amount is lost
+         *
+         * @param onDropped called if the shard is stopped before the message is executed, right away if it is
+         *                  stopped already
+         */
+        private void forward(Runnable action, Consumer<RejectedExecutionException> onDropped) {
+            if (pending.incrementAndGet() < 0) {
+                pending.decrementAndGet();
+                onDropped.accept(new RejectedExecutionException("Database is stopped"));
+                return;
+            }
+            enqueue(new Task(action, onDropped));
+        }
+
+        private void enqueue(Task task) {
+            queue.offer(task);
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        /**
+         * Reject new requests and let the thread exit after the current one
+         */
+        private void stop() {
+            if (running) {
+                running = false;
+                pending.addAndGet(STOPPED);
+                LockSupport.unpark(thread);
+            }
+        }
+
+        /**
+         * Complete requests left in the queue, should be called once the thread exited. Waits for the requests
+         * being enqueued concurrently, they are counted before the shard is stopped
+         */
+        private void drain() {
+            if (thread.isAlive()) {
+                logger.warn("Shard '{}' is still busy, {} pending requests are left", thread.getName(),
+                        pending.get() - STOPPED);
+                return;
+            }
+
+            while (pending.get() != STOPPED) {
+                final Task task = queue.poll();
+                if (task == null) {
+                    Thread.yield();
+                    continue;
+                }
+
+                pending.decrementAndGet();
+                try {
+                    task.onDropped.accept(new RejectedExecutionException("Database is stopped"));
+                } catch (Exception e) {
+                    logger.error("Unexpected error in shard '{}' : '{}'", thread.getName(), e.getMessage());
+                    logger.debug("Stacktrace", e);
+                }
+            }
+        }
+
+        private ShardAccount get(long accountId) {
+            final long index = accountId / shards.length;
+            return index < accounts.length ? accounts[(int) index] : null;
+        }
+
+        private void put(long accountId, ShardAccount account) {
+            final int index = (int) (accountId / shards.length);
+            if (index >= accounts.length) {
+                accounts = Arrays.copyOf(accounts, Math.max(index + 1, accounts.length * 2));
+            }
+            accounts[index] = account;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                final Task task = queue.poll();
+
+                if (task == null) {
+                    parked = true;
+                    if (queue.isEmpty() && running) {
+                        LockSupport.park(this);
+                    }
+                    parked = false;
+                    continue;
+                }
+
+                pending.decrementAndGet();
+                try {
+                    task.action.run();
+                } catch (Exception e) {
+                    logger.error("Unexpected error in shard '{}' : '{}'", thread.getName(), e.getMessage());
+                    logger.debug("Stacktrace", e);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+package com.revolut.backend.db.impl;
+
+import com.revolut.backend.utils.Args;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor starting a thread per task, concurrency is bounded by a semaphore instead of the pool size.
+ * Tasks over the concurrency wait for a permit in their own parked thread, at most "maxQueued" of them,
+ * further tasks are rejected with {@link RejectedExecutionException}.
+ * <p>
+ * Intended for virtual threads, see {@link #virtualThreadFactory(String)}: a task blocked on a row lock holds
+ * only a cheap parked thread. {@link #shutdownNow()} interrupts waiting tasks, they are skipped and not returned.
+ */
+public class ThreadPerTaskExecutor extends AbstractExecutorService {
+
+    private final ThreadFactory threadFactory;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+    private final int maxPending;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private volatile boolean shutdown;
+    private volatile boolean stopped;
+
+    /**
+     * @param maxConcurrency max count of tasks executed at once
+     * @param maxQueued      max count of tasks waiting for execution
+     */
+    public ThreadPerTaskExecutor(ThreadFactory threadFactory, int maxConcurrency, int maxQueued) {
+        Objects.requireNonNull(threadFactory, "threadFactory must not be null");
+        Args.isTrue(maxConcurrency > 0, "maxConcurrency must be greater zero");
+        Args.isTrue(maxQueued >= 0, "maxQueued must not be negative");
+        this.threadFactory = threadFactory;
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.maxConcurrency = maxConcurrency;
+        this.maxPending = maxConcurrency + maxQueued;
+    }
+
+    /**
+     * @param prefix name prefix of the threads, followed by a counter
+     * @return factory of virtual threads or null, if the runtime doesn't support them (before JDK 21)
+     */
+    public static ThreadFactory virtualThreadFactory(String prefix) {
+        Objects.requireNonNull(prefix, "prefix must not be null");
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Method name = builderClass.getMethod("name", String.class, long.class);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(name.invoke(builder, prefix, 0L));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return count of tasks waiting for a permit
+     */
+    public int getQueued() {
+        return Math.max(0, pending.get() - maxConcurrency);
+    }
+
+    /**
+     * @throws RejectedExecutionException if there are "maxQueued" tasks waiting already or executor is shut down
+     */
+    @Override
+    public void execute(Runnable command) {
+        Objects.requireNonNull(command, "command must not be null");
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            throw new RejectedExecutionException("Too many tasks waiting: " + (maxPending - maxConcurrency));
+        }
+
+        final Thread thread = threadFactory.newThread(() -> {
+            try {
+                run(command);
+            } finally {
+                pending.decrementAndGet();
+                threads.remove(Thread.currentThread());
+                if (shutdown) {
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                }
+            }
+        });
+        threads.add(thread);
+        thread.start();
+    }
+
+    private void run(Runnable command) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            //shut down while waiting
+            return;
+        }
+
+        try {
+            //permit could be handed over before the interrupt reaches the waiting thread
+            if (!stopped) {
+                command.run();
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        stopped = true;
+        threads.forEach(Thread::interrupt);
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && threads.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isTerminated()) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+}
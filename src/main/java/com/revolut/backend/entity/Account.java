@@ -2,16 +2,15 @@ package com.revolut.backend.entity;
 
 import com.revolut.backend.utils.Args;
 
-import java.math.BigDecimal;
 import java.util.Objects;
 
 public class Account {
 
     private final long id;
     private final long ownerId;
-    private final BigDecimal balance;
+    private final Money balance;
 
-    public Account(long id, long ownerId, BigDecimal balance) {
+    public Account(long id, long ownerId, Money balance) {
         Args.isTrue(id > 0, "id must be greater zero");
         Args.isTrue(ownerId > 0, "id must be greater zero");
         Objects.requireNonNull(balance, "Balance must not be null");
@@ -28,7 +27,7 @@ public class Account {
         return ownerId;
     }
 
-    public BigDecimal getBalance() {
+    public Money getBalance() {
         return balance;
     }
 }
@@ -0,0 +1,208 @@
+package com.revolut.backend.entity;
+
+/**
+ * Amount of money as a count of minor units (cents) with a fixed scale of {@value #SCALE} decimal places.
+ * All accounts share one implicit currency, so the scale is the same for all amounts.
+ * <p>
+ * Arithmetic is overflow checked and throws {@link ArithmeticException} instead of silently wrapping.
+ */
+public final class Money implements Comparable<Money> {
+
+    /**
+     * Count of decimal places
+     */
+    public static final int SCALE = 2;
+
+    public static final Money ZERO = new Money(0);
+
+    private static final long MINOR_UNITS_IN_MAJOR = 100;
+
+    private final long minorUnits;
+
+    private Money(long minorUnits) {
+        this.minorUnits = minorUnits;
+    }
+
+    /**
+     * @param minorUnits count of minor units, e.g. 1050 for 10.50
+     * @return money instance
+     */
+    public static Money ofMinorUnits(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    /**
+     * Parse plain decimal representation like "10", "-3.5" or "0.07"
+     *
+     * @param value decimal string
+     * @return money instance
+     * @throws NumberFormatException if value is not a valid amount
+     */
+    public static Money parse(CharSequence value) {
+        return ofMinorUnits(parseMinorUnits(value));
+    }
+
+    /**
+     * Allocation free parser of plain decimal representation. Fraction digits beyond {@value #SCALE} are accepted
+     * only if they are zeros, since amount must not be rounded silently.
+     *
+     * @param value decimal string
+     * @return count of minor units
+     * @throws NumberFormatException if value is not a valid amount or does not fit long
+     */
+    public static long parseMinorUnits(CharSequence value) {
+        if (value == null) {
+            throw new NumberFormatException("null");
+        }
+
+        return parseMinorUnits(value, 0, value.length());
+    }
+
+    /**
+     * Same as {@link #parseMinorUnits(CharSequence)} for a part of the sequence, e.g. a value inside a query string
+     *
+     * @param value sequence containing decimal string
+     * @param start index of the first character, inclusive
+     * @param end   index of the last character, exclusive
+     * @return count of minor units
+     * @throws NumberFormatException if value is not a valid amount or does not fit long
+     */
+    public static long parseMinorUnits(CharSequence value, int start, int end) {
+        if (value == null) {
+            throw new NumberFormatException("null");
+        }
+        if (start < 0 || start > end || end > value.length()) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + value.length());
+        }
+
+        int i = start;
+        boolean negative = false;
+
+        if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+            negative = value.charAt(i) == '-';
+            i++;
+        }
+
+        long major = 0;
+        int integerDigits = 0;
+        for (; i < end && value.charAt(i) != '.'; i++) {
+            major = multiplyAdd(major, 10, digit(value, i));
+            integerDigits++;
+        }
+
+        long minor = 0;
+        int fractionDigits = 0;
+        if (i < end) {
+            //skip the dot
+            i++;
+            for (; i < end; i++) {
+                final int digit = digit(value, i);
+                if (fractionDigits < SCALE) {
+                    minor = minor * 10 + digit;
+                } else if (digit != 0) {
+                    throw new NumberFormatException("Too many decimal places");
+                }
+                fractionDigits++;
+            }
+        }
+
+        if (integerDigits == 0 && fractionDigits == 0) {
+            throw new NumberFormatException("Missing digits");
+        }
+
+        for (int scale = Math.min(fractionDigits, SCALE); scale < SCALE; scale++) {
+            minor *= 10;
+        }
+
+        final long minorUnits = multiplyAdd(major, MINOR_UNITS_IN_MAJOR, minor);
+        return negative ? -minorUnits : minorUnits;
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    /**
+     * @throws ArithmeticException on overflow
+     */
+    public Money plus(Money other) {
+        return ofMinorUnits(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    /**
+     * @throws ArithmeticException on overflow
+     */
+    public Money minus(Money other) {
+        return ofMinorUnits(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public boolean isPositive() {
+        return minorUnits > 0;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof Money && minorUnits == ((Money) o).minorUnits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits);
+    }
+
+    /**
+     * @return plain decimal representation without trailing fraction zeros, e.g. "10", "10.5", "-0.07"
+     */
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder(24)).toString();
+    }
+
+    /**
+     * Append the same representation as {@link #toString()} without intermediate strings
+     *
+     * @param sb target
+     * @return target
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        if (minorUnits < 0) {
+            sb.append('-');
+        }
+
+        //divide before taking absolute value, so Long.MIN_VALUE is handled as well
+        final long major = Math.abs(minorUnits / MINOR_UNITS_IN_MAJOR);
+        final int minor = (int) Math.abs(minorUnits % MINOR_UNITS_IN_MAJOR);
+
+        sb.append(major);
+        if (minor != 0) {
+            sb.append('.').append((char) ('0' + minor / 10));
+            if (minor % 10 != 0) {
+                sb.append((char) ('0' + minor % 10));
+            }
+        }
+
+        return sb;
+    }
+
+    private static int digit(CharSequence value, int index) {
+        final char c = value.charAt(index);
+        if (c < '0' || c > '9') {
+            throw new NumberFormatException("Unexpected character '" + c + "'");
+        }
+        return c - '0';
+    }
+
+    private static long multiplyAdd(long value, long multiplier, long addend) {
+        try {
+            return Math.addExact(Math.multiplyExact(value, multiplier), addend);
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Value is too large");
+        }
+    }
+
+}
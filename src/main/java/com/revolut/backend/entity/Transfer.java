@@ -2,7 +2,6 @@ package com.revolut.backend.entity;
 
 import com.revolut.backend.utils.Args;
 
-import java.math.BigDecimal;
 import java.util.Objects;
 
 public class Transfer {
@@ -13,11 +12,11 @@ public class Transfer {
     private final long srcAccountId;
     private final long dstAccountId;
     private final long userId;
-    private final BigDecimal amount;
-    private final BigDecimal srcAccountBalanceBefore;
-    private final BigDecimal srcAccountBalanceAfter;
-    private final BigDecimal dstAccountBalanceBefore;
-    private final BigDecimal dstAccountBalanceAfter;
+    private final Money amount;
+    private final Money srcAccountBalanceBefore;
+    private final Money srcAccountBalanceAfter;
+    private final Money dstAccountBalanceBefore;
+    private final Money dstAccountBalanceAfter;
 
     public Transfer(long id,
                     String requestId,
@@ -25,11 +24,11 @@ public class Transfer {
                     long srcAccountId,
                     long dstAccountId,
                     long userId,
-                    BigDecimal amount,
-                    BigDecimal srcAccountBalanceBefore,
-                    BigDecimal srcAccountBalanceAfter,
-                    BigDecimal dstAccountBalanceBefore,
-                    BigDecimal dstAccountBalanceAfter) {
+                    Money amount,
+                    Money srcAccountBalanceBefore,
+                    Money srcAccountBalanceAfter,
+                    Money dstAccountBalanceBefore,
+                    Money dstAccountBalanceAfter) {
         Args.isTrue(id > 0, "id must be greater zero");
         Objects.requireNonNull(requestId, "requestId must not be null");
         Args.isTrue(timestamp > 0, "timestamp must be greater zero");
@@ -79,23 +78,23 @@ public class Transfer {
         return userId;
     }
 
-    public BigDecimal getAmount() {
+    public Money getAmount() {
         return amount;
     }
 
-    public BigDecimal getSrcAccountBalanceBefore() {
+    public Money getSrcAccountBalanceBefore() {
         return srcAccountBalanceBefore;
     }
 
-    public BigDecimal getSrcAccountBalanceAfter() {
+    public Money getSrcAccountBalanceAfter() {
         return srcAccountBalanceAfter;
     }
 
-    public BigDecimal getDstAccountBalanceBefore() {
+    public Money getDstAccountBalanceBefore() {
         return dstAccountBalanceBefore;
     }
 
-    public BigDecimal getDstAccountBalanceAfter() {
+    public Money getDstAccountBalanceAfter() {
         return dstAccountBalanceAfter;
     }
 }
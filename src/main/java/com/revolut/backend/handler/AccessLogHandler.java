@@ -1,21 +1,44 @@
 package com.revolut.backend.handler;
 
+import io.vertx.core.http.HttpServerRequest;
 import io.vertx.ext.web.RoutingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.util.concurrent.TimeUnit;
 
 /**
- * Simply logs request uri and response status
+ * Logs a single line per request to "access" logger when the response is sent:
+ * method, path, status, response body bytes and duration in microseconds, requestId is put to the MDC
  */
 public class AccessLogHandler extends HandlerBase {
 
     public static AccessLogHandler INSTANCE = new AccessLogHandler();
 
+    private static final Logger accessLogger = LoggerFactory.getLogger("access");
+
     private AccessLogHandler() {
     }
 
     @Override
     public void handle(RoutingContext ctx) {
-        requestLogger(ctx).info("Request received: '{}'", ctx.request().uri());
-        ctx.addBodyEndHandler(v -> requestLogger(ctx).info("Response code: '{}'", ctx.response().getStatusCode()));
+        if (accessLogger.isInfoEnabled()) {
+            final long startedAt = System.nanoTime();
+            ctx.addBodyEndHandler(v -> log(ctx, startedAt));
+        }
         ctx.next();
     }
+
+    private void log(RoutingContext ctx, long startedAt) {
+        final HttpServerRequest request = ctx.request();
+        MDC.put(REQUEST_ID, requestId(ctx));
+        try {
+            accessLogger.info("method={} path={} status={} bytes={} us={}",
+                    request.method(), request.path(), ctx.response().getStatusCode(),
+                    ctx.response().bytesWritten(), TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startedAt));
+        } finally {
+            MDC.remove(REQUEST_ID);
+        }
+    }
 }
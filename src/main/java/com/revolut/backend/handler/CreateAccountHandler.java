@@ -1,23 +1,15 @@
 package com.revolut.backend.handler;
 
 import com.revolut.backend.constants.HttpHeaders;
-import com.revolut.backend.constants.JsonFields;
+import com.revolut.backend.constants.JsonKeys;
 import com.revolut.backend.constants.QueryParams;
 import com.revolut.backend.db.CreateAccountCallback;
 import com.revolut.backend.db.Database;
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.utils.JsonWriter;
 import com.revolut.backend.utils.Reply;
-import com.revolut.backend.utils.Utils;
-import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
-import io.vertx.ext.web.api.RequestParameter;
-import io.vertx.ext.web.api.RequestParameters;
-import io.vertx.ext.web.api.validation.HTTPRequestValidationHandler;
-import io.vertx.ext.web.api.validation.ParameterType;
-import io.vertx.ext.web.api.validation.ParameterTypeValidator;
-import io.vertx.ext.web.api.validation.ValidationHandler;
 
-import java.math.BigDecimal;
-import java.util.Collections;
 import java.util.Objects;
 import java.util.concurrent.RejectedExecutionException;
 
@@ -25,7 +17,7 @@ import java.util.concurrent.RejectedExecutionException;
  * Creates account for the user. Initial balance could be optionally specified
  * with {@link com.revolut.backend.constants.QueryParams#BALANCE} query parameter
  */
-public class CreateAccountHandler extends HandlerBase implements ValidatorHolder {
+public class CreateAccountHandler extends HandlerBase {
 
     private final Database database;
 
@@ -34,29 +26,21 @@ public class CreateAccountHandler extends HandlerBase implements ValidatorHolder
         this.database = database;
     }
 
-    @Override
-    public ValidationHandler getValidator() {
-        return HTTPRequestValidationHandler.create()
-                .addQueryParam(QueryParams.BALANCE, ParameterType.GENERIC_STRING, false)
-                .addHeaderParamWithCustomTypeValidator(HttpHeaders.USER_ID,
-                        ParameterTypeValidator.createLongTypeValidator(null), true, false);
-    }
-
     @Override
     public void handle(RoutingContext ctx) {
-        final RequestParameters requestParams = requestParameters(ctx);
-        final Long userId = requestParams.headerParameter(HttpHeaders.USER_ID).getLong();
-        final RequestParameter balance = requestParams.queryParameter(QueryParams.BALANCE);
-        final BigDecimal balanceDecimal = balance == null ? BigDecimal.ZERO : Utils.parseDecimal(balance.getString());
+        //repeated balance was reported before the user id
+        ParamExtractor.checkQuery(ctx, QueryParams.BALANCE, false);
+        final long userId = ParamExtractor.headerLong(ctx, HttpHeaders.USER_ID);
+        final Money balanceAmount = ParamExtractor.queryAmount(ctx, QueryParams.BALANCE, Money.ZERO);
 
-        requestLogger(ctx).info("Create account for the user '{}'", userId);
+        requestLogger(ctx).debug("Create account for the user '{}'", userId);
 
         try {
-            database.createAccount(userId, balanceDecimal, new CreateAccountCallback() {
+            database.createAccount(userId, balanceAmount, new CreateAccountCallback() {
                 @Override
                 public void onSuccess(long accountId) {
-                    requestLogger(ctx).info("Account '{}' successfully created for the user '{}'", accountId, userId);
-                    Reply.json(ctx, new JsonObject(Collections.singletonMap(JsonFields.ACCOUNT_ID, accountId)));
+                    requestLogger(ctx).debug("Account '{}' successfully created for the user '{}'", accountId, userId);
+                    Reply.json(ctx, JsonWriter.object().field(JsonKeys.ACCOUNT_ID, accountId).end());
                 }
 
                 @Override
@@ -74,7 +58,7 @@ public class CreateAccountHandler extends HandlerBase implements ValidatorHolder
                 }
             });
         } catch (RejectedExecutionException e) {
-            Reply.tryLater(ctx);
+            Reply.tryLater(ctx, e);
         }
 
     }
@@ -1,24 +1,20 @@
 package com.revolut.backend.handler;
 
-import com.revolut.backend.constants.JsonFields;
+import com.revolut.backend.constants.JsonKeys;
 import com.revolut.backend.constants.QueryParams;
 import com.revolut.backend.db.CreateUserCallback;
 import com.revolut.backend.db.Database;
+import com.revolut.backend.utils.JsonWriter;
 import com.revolut.backend.utils.Reply;
-import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
-import io.vertx.ext.web.api.validation.HTTPRequestValidationHandler;
-import io.vertx.ext.web.api.validation.ParameterType;
-import io.vertx.ext.web.api.validation.ValidationHandler;
 
-import java.util.Collections;
 import java.util.Objects;
 import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Creates user with name specified with {@link com.revolut.backend.constants.QueryParams#USER_NAME} query parameter
  */
-public class CreateUserHandler extends HandlerBase implements ValidatorHolder {
+public class CreateUserHandler extends HandlerBase {
 
     private final Database database;
 
@@ -27,24 +23,18 @@ public class CreateUserHandler extends HandlerBase implements ValidatorHolder {
         this.database = database;
     }
 
-    @Override
-    public ValidationHandler getValidator() {
-        return HTTPRequestValidationHandler.create()
-                .addQueryParam(QueryParams.USER_NAME, ParameterType.GENERIC_STRING, true);
-    }
-
     @Override
     public void handle(RoutingContext ctx) {
-        final String userName = requestParameters(ctx).queryParameter(QueryParams.USER_NAME).getString();
+        final String userName = ParamExtractor.queryString(ctx, QueryParams.USER_NAME);
 
-        requestLogger(ctx).info("Create user {}", userName);
+        requestLogger(ctx).debug("Create user {}", userName);
 
         try {
             database.createUser(userName, new CreateUserCallback() {
                 @Override
                 public void onSuccess(long userId) {
-                    requestLogger(ctx).info("User '{}' created successfully with id '{}'", userName, userId);
-                    Reply.json(ctx, new JsonObject(Collections.singletonMap(JsonFields.USER_ID, userId)));
+                    requestLogger(ctx).debug("User '{}' created successfully with id '{}'", userName, userId);
+                    Reply.json(ctx, JsonWriter.object().field(JsonKeys.USER_ID, userId).end());
                 }
 
                 @Override
@@ -57,7 +47,7 @@ public class CreateUserHandler extends HandlerBase implements ValidatorHolder {
                 }
             });
         } catch (RejectedExecutionException e) {
-            Reply.tryLater(ctx);
+            Reply.tryLater(ctx, e);
         }
     }
 }
@@ -1,18 +1,14 @@
 package com.revolut.backend.handler;
 
 import com.revolut.backend.constants.HttpHeaders;
-import com.revolut.backend.constants.JsonFields;
+import com.revolut.backend.constants.JsonKeys;
 import com.revolut.backend.constants.PathParams;
 import com.revolut.backend.db.Database;
 import com.revolut.backend.db.GetAccountCallback;
 import com.revolut.backend.entity.Account;
+import com.revolut.backend.utils.JsonWriter;
 import com.revolut.backend.utils.Reply;
-import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
-import io.vertx.ext.web.api.RequestParameters;
-import io.vertx.ext.web.api.validation.HTTPRequestValidationHandler;
-import io.vertx.ext.web.api.validation.ParameterTypeValidator;
-import io.vertx.ext.web.api.validation.ValidationHandler;
 
 import java.util.concurrent.RejectedExecutionException;
 
@@ -20,7 +16,7 @@ import java.util.concurrent.RejectedExecutionException;
  * Get user account by id specified with {@value PathParams#ACCOUNT_ID}.
  * User id should be specified with {@value HttpHeaders#USER_ID} and should be the account owner.
  */
-public class GetAccountHandler extends HandlerBase implements ValidatorHolder {
+public class GetAccountHandler extends HandlerBase {
 
     private final Database database;
 
@@ -28,34 +24,23 @@ public class GetAccountHandler extends HandlerBase implements ValidatorHolder {
         this.database = database;
     }
 
-    @Override
-    public ValidationHandler getValidator() {
-        return HTTPRequestValidationHandler.create()
-                .addHeaderParamWithCustomTypeValidator(HttpHeaders.USER_ID,
-                        ParameterTypeValidator.createLongTypeValidator(null), true, false)
-                .addPathParamWithCustomTypeValidator(PathParams.ACCOUNT_ID,
-                        ParameterTypeValidator.createLongTypeValidator(null), false);
-    }
-
     @Override
     public void handle(RoutingContext ctx) {
-        final RequestParameters requestParams = requestParameters(ctx);
-        final Long userId = requestParams.headerParameter(HttpHeaders.USER_ID).getLong();
-        final Long accountId = requestParams.pathParameter(PathParams.ACCOUNT_ID).getLong();
+        final long accountId = ParamExtractor.pathLong(ctx, PathParams.ACCOUNT_ID);
+        final long userId = ParamExtractor.headerLong(ctx, HttpHeaders.USER_ID);
 
-        requestLogger(ctx).info("Get user '{}' account with id '{}'", userId, accountId);
+        requestLogger(ctx).debug("Get user '{}' account with id '{}'", userId, accountId);
 
         try {
             database.getAccount(userId, accountId, new GetAccountCallback() {
                 @Override
                 public void onSuccess(Account account) {
-                    requestLogger(ctx).info("Account '{}' obtained successfully", accountId);
-
-                    final JsonObject json = new JsonObject();
-                    json.put(JsonFields.ACCOUNT_ID, account.getId());
-                    json.put(JsonFields.BALANCE, account.getBalance().toString());
+                    requestLogger(ctx).debug("Account '{}' obtained successfully", accountId);
 
-                    Reply.json(ctx, json);
+                    Reply.json(ctx, JsonWriter.object()
+                            .field(JsonKeys.ACCOUNT_ID, account.getId())
+                            .field(JsonKeys.BALANCE, account.getBalance())
+                            .end());
                 }
 
                 @Override
@@ -73,7 +58,7 @@ public class GetAccountHandler extends HandlerBase implements ValidatorHolder {
                 }
             });
         } catch (RejectedExecutionException e) {
-            Reply.tryLater(ctx);
+            Reply.tryLater(ctx, e);
         }
     }
 }
@@ -3,73 +3,43 @@ package com.revolut.backend.handler;
 import com.revolut.backend.constants.HttpHeaders;
 import io.vertx.core.Handler;
 import io.vertx.ext.web.RoutingContext;
-import io.vertx.ext.web.api.RequestParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 
 import java.util.UUID;
 
 /**
- * Some base functionality for handlers - requestId, request specific logger, access to parsed parameters
+ * Some base functionality for handlers - requestId, request specific logger. Parameters are parsed
+ * with {@link ParamExtractor}
  */
 public abstract class HandlerBase implements Handler<RoutingContext> {
 
-    private static String REQUEST_ID = "requestId";
-    private static String PARSED_PARAMS = "parsedParameters";
+    /**
+     * Key of the request id in the routing context and in the logging MDC
+     */
+    public static final String REQUEST_ID = "requestId";
     private static String REQUEST_LOGGER = "requestLogger";
 
-    private Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final String requestLoggerKey = logger.getName() + REQUEST_LOGGER;
 
     /**
-     * Get or create request specific logger responsible to print requestId in each logged message
+     * Get or create request specific logger, which puts requestId to the MDC of each logged message.
+     * Nothing is done for a disabled level, so arguments should be cheap to pass
      *
      * @param ctx routing context
      * @return request specific logger
      */
     protected RequestLogger requestLogger(RoutingContext ctx) {
-        final String requestLoggerKey = requestLoggerKey(logger);
-
         RequestLogger requestLogger = ctx.get(requestLoggerKey);
         if (requestLogger == null) {
-            final String requestId = requestId(ctx);
-
-            ctx.put(requestLoggerKey, requestLogger = new RequestLogger() {
-                @Override
-                public void debug(String msg, Object... args) {
-                    logger.debug(msgWithRequestId(requestId, msg), args);
-                }
-
-                @Override
-                public void info(String msg, Object... args) {
-                    logger.info(msgWithRequestId(requestId, msg), args);
-                }
-
-                @Override
-                public void warn(String msg, Object... args) {
-                    logger.warn(msgWithRequestId(requestId, msg), args);
-                }
-
-                @Override
-                public void error(String msg, Object... args) {
-                    logger.error(msgWithRequestId(requestId, msg), args);
-                }
-            });
+            ctx.put(requestLoggerKey, requestLogger = new RequestLogger(logger, requestId(ctx)));
         }
 
         return requestLogger;
     }
 
-    /**
-     * Get params parsed by vertx-validation. To get any {@link io.vertx.ext.web.api.validation.ValidationHandler}
-     * should be registered before this handler
-     *
-     * @param ctx routing context
-     * @return parsed params
-     */
-    protected RequestParameters requestParameters(RoutingContext ctx) {
-        return ctx.get(PARSED_PARAMS);
-    }
-
     /**
      * Request id is intended to simplify logging (happening on different threads) and troubleshooting.
      * Obtained from the {@value HttpHeaders#REQUEST_ID} header or generated as UUID.
@@ -87,27 +57,64 @@ public abstract class HandlerBase implements Handler<RoutingContext> {
         return requestId;
     }
 
-    private String requestLoggerKey(Logger logger) {
-        return logger.getName() + REQUEST_LOGGER;
-    }
-
     private String getOrCreateRequestId(RoutingContext ctx) {
         final String requestId = ctx.request().getHeader(HttpHeaders.REQUEST_ID);
         return requestId == null ? UUID.randomUUID().toString() : requestId;
     }
 
-    private static String msgWithRequestId(String requestId, String msg) {
-        return "[R:" + requestId + "] " + msg;
-    }
+    static final class RequestLogger {
 
-    interface RequestLogger {
-        void debug(String msg, Object... args);
+        private final Logger logger;
+        private final String requestId;
 
-        void info(String msg, Object... args);
+        private RequestLogger(Logger logger, String requestId) {
+            this.logger = logger;
+            this.requestId = requestId;
+        }
 
-        void warn(String msg, Object... args);
+        void debug(String msg, Object... args) {
+            if (logger.isDebugEnabled()) {
+                MDC.put(REQUEST_ID, requestId);
+                try {
+                    logger.debug(msg, args);
+                } finally {
+                    MDC.remove(REQUEST_ID);
+                }
+            }
+        }
 
-        void error(String msg, Object... args);
+        void info(String msg, Object... args) {
+            if (logger.isInfoEnabled()) {
+                MDC.put(REQUEST_ID, requestId);
+                try {
+                    logger.info(msg, args);
+                } finally {
+                    MDC.remove(REQUEST_ID);
+                }
+            }
+        }
+
+        void warn(String msg, Object... args) {
+            if (logger.isWarnEnabled()) {
+                MDC.put(REQUEST_ID, requestId);
+                try {
+                    logger.warn(msg, args);
+                } finally {
+                    MDC.remove(REQUEST_ID);
+                }
+            }
+        }
+
+        void error(String msg, Object... args) {
+            if (logger.isErrorEnabled()) {
+                MDC.put(REQUEST_ID, requestId);
+                try {
+                    logger.error(msg, args);
+                } finally {
+                    MDC.remove(REQUEST_ID);
+                }
+            }
+        }
     }
 
 }
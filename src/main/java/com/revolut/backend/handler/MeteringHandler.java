@@ -2,34 +2,45 @@ package com.revolut.backend.handler;
 
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
-import io.vertx.core.http.HttpServerRequest;
+import com.revolut.backend.utils.HdrReservoir;
+import io.vertx.core.Handler;
 import io.vertx.ext.web.RoutingContext;
 
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Writes http metrics to the {@link MetricRegistry}
+ * Writes http metrics to the {@link MetricRegistry}. Timers are named by the route template and the status class,
+ * e.g. "http./account/:accountId/transfer.PATCH.2xx", and registered up front, so the count of timers doesn't
+ * depend on the requested paths. Requests not matching any endpoint are counted under {@link #UNMATCHED} route.
  */
-public class MeteringHandler extends HandlerBase {
+public class MeteringHandler implements Handler<RoutingContext> {
 
-    private final MetricRegistry metricRegistry;
+    public static final String UNMATCHED = "unmatched";
 
-    public MeteringHandler(MetricRegistry metricRegistry) {
-        this.metricRegistry = metricRegistry;
+    private final Timer[] timers = new Timer[6];
+
+    /**
+     * @param route name of the route, e.g. template path and method
+     */
+    public MeteringHandler(MetricRegistry metricRegistry, String route) {
+        Objects.requireNonNull(metricRegistry, "metricRegistry must not be null");
+        Objects.requireNonNull(route, "route must not be null");
+        for (int statusClass = 1; statusClass < timers.length; statusClass++) {
+            timers[statusClass] = metricRegistry.timer(MetricRegistry.name("http", route, statusClass + "xx"),
+                    () -> new Timer(new HdrReservoir()));
+        }
     }
 
     @Override
     public void handle(RoutingContext ctx) {
-        final Timer timer = metricRegistry.timer(routeTimerName(ctx.request()));
-        final Timer.Context timerContext = timer.time();
+        final long startedAt = System.nanoTime();
         ctx.addBodyEndHandler(v -> {
-            final long nanos = timerContext.stop();
-            requestLogger(ctx).info("Request processed in {} ms", TimeUnit.NANOSECONDS.toMillis(nanos));
+            final int statusClass = ctx.response().getStatusCode() / 100;
+            timers[statusClass > 0 && statusClass < timers.length ? statusClass : 5]
+                    .update(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
         });
         ctx.next();
     }
 
-    private String routeTimerName(HttpServerRequest request) {
-        return MetricRegistry.name("http", request.path(), request.method().toString());
-    }
 }
@@ -0,0 +1,245 @@
+package com.revolut.backend.handler;
+
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.utils.Utils;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.api.validation.ParameterLocation;
+import io.vertx.ext.web.api.validation.ValidationException;
+
+import java.util.List;
+
+/**
+ * Extraction of request parameters straight into primitives, replacing vertx-validation for the api routes.
+ * Failures are thrown as {@link ValidationException} with the same messages vertx-validation produced,
+ * so {@link FailureHandler} replies with the same 400 bodies. To keep the first reported error the same,
+ * handlers extract path parameters first, then query and header ones.
+ * <p>
+ * Query values are parsed in place from the raw query string. Queries which need decoding (percent encoding,
+ * '+', ';' or '#') are decoded by vertx as before.
+ */
+public final class ParamExtractor {
+
+    private static final int MISSING = -1;
+    private static final int DUPLICATE = -2;
+    private static final int DECODE = -3;
+
+    private ParamExtractor() {
+    }
+
+    /**
+     * @return path parameter parsed as long
+     * @throws ValidationException if it is missing or not a number
+     */
+    public static long pathLong(RoutingContext ctx, String name) {
+        final String value = ctx.pathParam(name);
+        if (value == null) {
+            throw notFound(name, ParameterLocation.PATH);
+        }
+        return parseLong(value);
+    }
+
+    /**
+     * @return single header parsed as long
+     * @throws ValidationException if it is missing, repeated or not a number
+     */
+    public static long headerLong(RoutingContext ctx, String name) {
+        return parseLong(single(ctx.request().headers().getAll(name), name, ParameterLocation.HEADER));
+    }
+
+    /**
+     * Check the query parameter without parsing it
+     *
+     * @param required whether the parameter must be present
+     * @throws ValidationException if it is repeated or missing and required
+     */
+    public static void checkQuery(RoutingContext ctx, String name, boolean required) {
+        final String query = ctx.request().query();
+        final int start = valueStart(query, name);
+        if (start == DECODE) {
+            final List<String> values = ctx.request().params().getAll(name);
+            if (required || !values.isEmpty()) {
+                single(values, name, ParameterLocation.QUERY);
+            }
+        } else if (required || start != MISSING) {
+            checkFound(start, name);
+        }
+    }
+
+    /**
+     * @return single query parameter parsed as long
+     * @throws ValidationException if it is missing, repeated or not a number
+     */
+    public static long queryLong(RoutingContext ctx, String name) {
+        final String query = ctx.request().query();
+        final int start = valueStart(query, name);
+        if (start == DECODE) {
+            return parseLong(decodedQuery(ctx, name));
+        }
+
+        checkFound(start, name);
+        return parseLong(query, start, valueEnd(query, start));
+    }
+
+    /**
+     * @return single query parameter, empty if it has no value
+     * @throws ValidationException if it is missing or repeated
+     */
+    public static String queryString(RoutingContext ctx, String name) {
+        final String query = ctx.request().query();
+        final int start = valueStart(query, name);
+        if (start == DECODE) {
+            return decodedQuery(ctx, name);
+        }
+
+        checkFound(start, name);
+        return query.substring(start, valueEnd(query, start));
+    }
+
+    /**
+     * @param defaultValue returned if the parameter is missing, null if it is required
+     * @return single query parameter parsed as money
+     * @throws ValidationException if it is missing and required, repeated or not a valid amount
+     */
+    public static Money queryAmount(RoutingContext ctx, String name, Money defaultValue) {
+        final String query = ctx.request().query();
+        final int start = valueStart(query, name);
+        if (start == DECODE) {
+            final List<String> values = ctx.request().params().getAll(name);
+            return values.isEmpty() && defaultValue != null ?
+                    defaultValue : Utils.parseAmount(single(values, name, ParameterLocation.QUERY));
+        }
+
+        if (start == MISSING && defaultValue != null) {
+            return defaultValue;
+        }
+        checkFound(start, name);
+        return Utils.parseAmount(query, start, valueEnd(query, start));
+    }
+
+    /**
+     * Find the value of the parameter in the raw query. Names are compared ignoring case as vertx does.
+     *
+     * @return index of the value start, {@link #MISSING}, {@link #DUPLICATE} or {@link #DECODE}
+     */
+    private static int valueStart(String query, String name) {
+        if (query == null) {
+            return MISSING;
+        }
+
+        int found = MISSING;
+        int segmentStart = 0;
+        int nameEnd = -1;
+        final int length = query.length();
+        for (int i = 0; i <= length; i++) {
+            final char c = i < length ? query.charAt(i) : '&';
+            switch (c) {
+                case '%':
+                case '+':
+                case ';':
+                case '#':
+                    return DECODE;
+                case '=':
+                    if (i == segmentStart) {
+                        //netty takes the value as a name in this case
+                        return DECODE;
+                    }
+                    if (nameEnd < 0) {
+                        nameEnd = i;
+                    }
+                    break;
+                case '&':
+                    final int end = nameEnd < 0 ? i : nameEnd;
+                    if (end - segmentStart == name.length() && query.regionMatches(true, segmentStart, name, 0, name.length())) {
+                        found = found == MISSING ? Math.min(end + 1, i) : DUPLICATE;
+                    }
+                    segmentStart = i + 1;
+                    nameEnd = -1;
+                    break;
+                default:
+            }
+        }
+        return found;
+    }
+
+    private static int valueEnd(String query, int start) {
+        final int end = query.indexOf('&', start);
+        return end < 0 ? query.length() : end;
+    }
+
+    private static void checkFound(int start, String name) {
+        if (start == MISSING) {
+            throw notFound(name, ParameterLocation.QUERY);
+        }
+        if (start == DUPLICATE) {
+            throw unexpectedArray();
+        }
+    }
+
+    private static String decodedQuery(RoutingContext ctx, String name) {
+        return single(ctx.request().params().getAll(name), name, ParameterLocation.QUERY);
+    }
+
+    private static String single(List<String> values, String name, ParameterLocation location) {
+        if (values.isEmpty()) {
+            throw notFound(name, location);
+        }
+        if (values.size() > 1) {
+            throw unexpectedArray();
+        }
+        return values.get(0);
+    }
+
+    /**
+     * Same as {@link Long#parseLong(String)} for a part of the ascii query
+     */
+    private static long parseLong(String value, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+            negative = value.charAt(i) == '-';
+            i++;
+        }
+        if (i == end) {
+            throw notNumber();
+        }
+
+        final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        final long multiplyLimit = limit / 10;
+        long result = 0;
+        for (; i < end; i++) {
+            final int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < multiplyLimit) {
+                throw notNumber();
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw notNumber();
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw notNumber();
+        }
+    }
+
+    private static ValidationException notFound(String name, ParameterLocation location) {
+        return ValidationException.ValidationExceptionFactory.generateNotFoundValidationException(name, location);
+    }
+
+    private static ValidationException unexpectedArray() {
+        //vertx-validation reports repeated parameters without the name
+        return ValidationException.ValidationExceptionFactory.generateUnexpectedArrayValidationException(null, null);
+    }
+
+    private static ValidationException notNumber() {
+        return ValidationException.ValidationExceptionFactory
+                .generateNotMatchValidationException("Value is not a valid number");
+    }
+
+}
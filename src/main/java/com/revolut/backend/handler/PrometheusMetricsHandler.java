@@ -0,0 +1,357 @@
+package com.revolut.backend.handler;
+
+import com.codahale.metrics.*;
+import com.revolut.backend.utils.Reply;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.web.RoutingContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expose metrics in Prometheus text format. Names, labels and sample prefixes are encoded to bytes once when a metric
+ * is registered, a scrape only writes the values into a buffer reused by the thread. Http timers named by
+ * {@link MeteringHandler} become "http_request_duration_seconds" summary with route, method and status labels,
+ * other names have the characters not allowed by Prometheus replaced with '_'.
+ * <p>
+ * Timers and histograms are exposed as summaries, meters as counters, gauges with non numeric values are skipped.
+ * Fractions are written with 9 digits at most. Thread safe, one instance listening to the registry is expected
+ * to be shared by all event loops.
+ */
+public class PrometheusMetricsHandler implements Handler<RoutingContext>, MetricRegistryListener {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String HTTP_FAMILY = "http_request_duration_seconds";
+    private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final int FRACTION_DIGITS = 9;
+    private static final double FRACTION_SCALE = 1e9;
+    private static final byte[] NAN = ascii("NaN");
+    private static final byte[] POSITIVE_INFINITY = ascii("+Inf");
+    private static final byte[] NEGATIVE_INFINITY = ascii("-Inf");
+
+    //sorted by family, so samples of one family follow its type line
+    private final Map<String, Encoded> metrics = new ConcurrentSkipListMap<>();
+    //the response gets a copy, the writer could still hold the sent buffer when the next scrape comes
+    private final ThreadLocal<ByteBuf> buffers = ThreadLocal.withInitial(() -> Unpooled.buffer(4096));
+
+    public PrometheusMetricsHandler(MetricRegistry metricRegistry) {
+        Objects.requireNonNull(metricRegistry, "metricRegistry must not be null");
+        metricRegistry.addListener(this);
+    }
+
+    @Override
+    public void handle(RoutingContext ctx) {
+        Reply.text(ctx, CONTENT_TYPE, scrape());
+    }
+
+    /**
+     * @return all metrics in the text exposition format
+     */
+    public Buffer scrape() {
+        final ByteBuf buffer = buffers.get().clear();
+
+        String family = null;
+        for (Encoded encoded : metrics.values()) {
+            if (!encoded.family.equals(family)) {
+                family = encoded.family;
+                buffer.writeBytes(encoded.typeLine);
+            }
+            encoded.append(buffer);
+        }
+
+        return Buffer.buffer(Unpooled.copiedBuffer(buffer));
+    }
+
+    @Override
+    public void onGaugeAdded(String name, Gauge<?> gauge) {
+        add(name, new Encoded(family(name), labels(name), "gauge") {
+            @Override
+            void append(ByteBuf out) {
+                final Object value = gauge.getValue();
+                if (value instanceof Integer || value instanceof Long) {
+                    sample(out, ((Number) value).longValue());
+                } else if (value instanceof Number) {
+                    sample(out, ((Number) value).doubleValue());
+                } else if (value instanceof Boolean) {
+                    sample(out, (Boolean) value ? 1 : 0);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onCounterAdded(String name, Counter counter) {
+        //dropwizard counters could be decremented
+        add(name, new Encoded(family(name), labels(name), "gauge") {
+            @Override
+            void append(ByteBuf out) {
+                sample(out, counter.getCount());
+            }
+        });
+    }
+
+    @Override
+    public void onMeterAdded(String name, Meter meter) {
+        add(name, new Encoded(family(name) + "_total", labels(name), "counter") {
+            @Override
+            void append(ByteBuf out) {
+                sample(out, meter.getCount());
+            }
+        });
+    }
+
+    @Override
+    public void onHistogramAdded(String name, Histogram histogram) {
+        add(name, new Summary(family(name), labels(name), 1) {
+            @Override
+            Snapshot snapshot() {
+                return histogram.getSnapshot();
+            }
+
+            @Override
+            long count() {
+                return histogram.getCount();
+            }
+        });
+    }
+
+    @Override
+    public void onTimerAdded(String name, Timer timer) {
+        add(name, new Summary(family(name), labels(name), NANOS_PER_SECOND) {
+            @Override
+            Snapshot snapshot() {
+                return timer.getSnapshot();
+            }
+
+            @Override
+            long count() {
+                return timer.getCount();
+            }
+        });
+    }
+
+    @Override
+    public void onGaugeRemoved(String name) {
+        remove(name);
+    }
+
+    @Override
+    public void onCounterRemoved(String name) {
+        remove(name);
+    }
+
+    @Override
+    public void onHistogramRemoved(String name) {
+        remove(name);
+    }
+
+    @Override
+    public void onMeterRemoved(String name) {
+        remove(name);
+    }
+
+    @Override
+    public void onTimerRemoved(String name) {
+        remove(name);
+    }
+
+    private void add(String name, Encoded encoded) {
+        metrics.put(encoded.family + ' ' + name, encoded);
+    }
+
+    private void remove(String name) {
+        metrics.keySet().removeIf(key -> key.endsWith(' ' + name));
+    }
+
+    private static boolean isHttp(String name) {
+        return name.startsWith("http.");
+    }
+
+    private static String family(String name) {
+        return isHttp(name) ? HTTP_FAMILY : sanitize(name);
+    }
+
+    /**
+     * @return labels of "http.[route].[method].[status class]" or "http.[route].[status class]" names, empty otherwise
+     */
+    private static String labels(String name) {
+        if (!isHttp(name)) {
+            return "";
+        }
+
+        final int statusAt = name.lastIndexOf('.');
+        final String status = name.substring(statusAt + 1);
+        String route = name.substring("http.".length(), statusAt);
+        String method = "";
+        final int methodAt = route.lastIndexOf('.');
+        if (methodAt >= 0) {
+            method = route.substring(methodAt + 1);
+            route = route.substring(0, methodAt);
+        }
+        return "route=\"" + escape(route) + "\",method=\"" + escape(method) + "\",status=\"" + escape(status) + "\"";
+    }
+
+    private static String sanitize(String name) {
+        final StringBuilder sanitized = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            final boolean allowed = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_' || c == ':' ||
+                    c >= '0' && c <= '9' && i > 0;
+            sanitized.append(allowed ? c : '_');
+        }
+        return sanitized.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void writeLong(ByteBuf out, long value) {
+        if (value == Long.MIN_VALUE) {
+            out.writeCharSequence(String.valueOf(value), StandardCharsets.US_ASCII);
+            return;
+        }
+        if (value < 0) {
+            out.writeByte('-');
+            value = -value;
+        }
+        writeDigits(out, value, 1);
+    }
+
+    private static void writeDouble(ByteBuf out, double value) {
+        if (Double.isNaN(value)) {
+            out.writeBytes(NAN);
+        } else if (Double.isInfinite(value)) {
+            out.writeBytes(value > 0 ? POSITIVE_INFINITY : NEGATIVE_INFINITY);
+        } else if (value == Math.rint(value) && Math.abs(value) < Long.MAX_VALUE) {
+            writeLong(out, (long) value);
+        } else if (Math.abs(value) >= Long.MAX_VALUE / FRACTION_SCALE) {
+            out.writeCharSequence(Double.toString(value), StandardCharsets.US_ASCII);
+        } else {
+            if (value < 0) {
+                out.writeByte('-');
+            }
+            final long scaled = Math.round(Math.abs(value) * FRACTION_SCALE);
+            writeDigits(out, scaled / (long) FRACTION_SCALE, 1);
+
+            long fraction = scaled % (long) FRACTION_SCALE;
+            if (fraction != 0) {
+                int digits = FRACTION_DIGITS;
+                while (fraction % 10 == 0) {
+                    fraction /= 10;
+                    digits--;
+                }
+                out.writeByte('.');
+                writeDigits(out, fraction, digits);
+            }
+        }
+    }
+
+    /**
+     * Write not negative value padded with leading zeros to the min count of digits
+     */
+    private static void writeDigits(ByteBuf out, long value, int minDigits) {
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+
+        out.ensureWritable(digits);
+        final int start = out.writerIndex();
+        for (int i = start + digits - 1; i >= start; i--) {
+            out.setByte(i, (int) ('0' + value % 10));
+            value /= 10;
+        }
+        out.writerIndex(start + digits);
+    }
+
+    /**
+     * Metric with the sample prefixes encoded up front
+     */
+    private abstract static class Encoded {
+
+        final String family;
+        final byte[] typeLine;
+        private final byte[] prefix;
+
+        Encoded(String family, String labels, String type) {
+            this.family = family;
+            this.typeLine = utf8("# TYPE " + family + ' ' + type + '\n');
+            this.prefix = utf8(labels.isEmpty() ? family + ' ' : family + '{' + labels + "} ");
+        }
+
+        abstract void append(ByteBuf out);
+
+        void sample(ByteBuf out, double value) {
+            out.writeBytes(prefix);
+            writeDouble(out, value);
+            out.writeByte('\n');
+        }
+
+        void sample(ByteBuf out, long value) {
+            out.writeBytes(prefix);
+            writeLong(out, value);
+            out.writeByte('\n');
+        }
+    }
+
+    private abstract static class Summary extends Encoded {
+
+        private final double scale;
+        private final byte[][] quantilePrefixes = new byte[QUANTILES.length][];
+        private final byte[] countPrefix;
+        private final byte[] sumPrefix;
+
+        Summary(String family, String labels, double scale) {
+            super(family, labels, "summary");
+            this.scale = scale;
+            final String separator = labels.isEmpty() ? "" : ",";
+            for (int i = 0; i < QUANTILES.length; i++) {
+                quantilePrefixes[i] = utf8(family + '{' + labels + separator + "quantile=\"" + QUANTILES[i] + "\"} ");
+            }
+            final String suffix = labels.isEmpty() ? " " : '{' + labels + "} ";
+            this.countPrefix = utf8(family + "_count" + suffix);
+            this.sumPrefix = utf8(family + "_sum" + suffix);
+        }
+
+        abstract Snapshot snapshot();
+
+        abstract long count();
+
+        @Override
+        void append(ByteBuf out) {
+            final Snapshot snapshot = snapshot();
+            final long count = count();
+            for (int i = 0; i < QUANTILES.length; i++) {
+                out.writeBytes(quantilePrefixes[i]);
+                writeDouble(out, snapshot.getValue(QUANTILES[i]) / scale);
+                out.writeByte('\n');
+            }
+            out.writeBytes(countPrefix);
+            writeLong(out, count);
+            out.writeByte('\n');
+            //dropwizard doesn't keep the sum, it is estimated with the mean of the snapshot
+            out.writeBytes(sumPrefix);
+            writeDouble(out, snapshot.getMean() * count / scale);
+            out.writeByte('\n');
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.revolut.backend.handler;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.revolut.backend.constants.JsonKeys;
+import com.revolut.backend.entity.Transfer;
+import com.revolut.backend.utils.Args;
+import com.revolut.backend.utils.JsonWriter;
+import io.vertx.core.buffer.Buffer;
+
+import java.util.Objects;
+
+/**
+ * Bounded cache of transfers serialized to json. Transfers never change after commit, so recently created
+ * and recently read ones could be answered without database and json encoding. Least recently used are evicted.
+ */
+public class TransferCache {
+
+    //fits typical transfers, so the buffer isn't grown
+    private static final int JSON_CAPACITY = 320;
+
+    private final Cache<Long, CachedTransfer> transfers;
+
+    /**
+     * @param maxSize max count of cached transfers, 0 disables caching
+     */
+    public TransferCache(long maxSize) {
+        Args.isTrue(maxSize >= 0, "maxSize must not be negative");
+        this.transfers = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    /**
+     * Serialize and cache the transfer
+     *
+     * @param transfer committed transfer
+     * @return serialized transfer
+     */
+    public Buffer put(Transfer transfer) {
+        Objects.requireNonNull(transfer, "transfer must not be null");
+
+        final Buffer json = toJson(transfer);
+        transfers.put(transfer.getId(), new CachedTransfer(transfer.getUserId(), json));
+        return json;
+    }
+
+    /**
+     * @param userId     requester id, should be the transfer owner
+     * @param transferId transfer id
+     * @return serialized transfer or null if it isn't cached or belongs to another user
+     */
+    public Buffer get(long userId, long transferId) {
+        final CachedTransfer cached = transfers.getIfPresent(transferId);
+        return cached != null && cached.userId == userId ? cached.json : null;
+    }
+
+    private static Buffer toJson(Transfer transfer) {
+        return JsonWriter.object(JSON_CAPACITY)
+                .field(JsonKeys.TRANSFER_ID, transfer.getId())
+                .field(JsonKeys.SRC_ACC_ID, transfer.getSrcAccountId())
+                .field(JsonKeys.DST_ACC_ID, transfer.getDstAccountId())
+                .field(JsonKeys.USER_ID, transfer.getUserId())
+                .field(JsonKeys.TIMESTAMP, transfer.getTimestamp())
+                .field(JsonKeys.AMOUNT, transfer.getAmount())
+                .field(JsonKeys.SRC_ACC_BEFORE, transfer.getSrcAccountBalanceBefore())
+                .field(JsonKeys.SRC_ACC_AFTER, transfer.getSrcAccountBalanceAfter())
+                .field(JsonKeys.DST_ACC_BEFORE, transfer.getDstAccountBalanceBefore())
+                .field(JsonKeys.DST_ACC_AFTER, transfer.getDstAccountBalanceAfter())
+                .end();
+    }
+
+    private static final class CachedTransfer {
+
+        private final long userId;
+        private final Buffer json;
+
+        private CachedTransfer(long userId, Buffer json) {
+            this.userId = userId;
+            this.json = json;
+        }
+    }
+
+}
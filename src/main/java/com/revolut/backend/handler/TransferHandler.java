@@ -2,22 +2,17 @@ package com.revolut.backend.handler;
 
 import com.revolut.backend.constants.HttpHeaders;
 import com.revolut.backend.constants.JsonFields;
+import com.revolut.backend.constants.JsonKeys;
 import com.revolut.backend.constants.PathParams;
 import com.revolut.backend.constants.QueryParams;
 import com.revolut.backend.db.Database;
 import com.revolut.backend.db.TransferCallback;
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.entity.Transfer;
+import com.revolut.backend.utils.JsonWriter;
 import com.revolut.backend.utils.Reply;
-import com.revolut.backend.utils.Utils;
-import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
-import io.vertx.ext.web.api.RequestParameters;
-import io.vertx.ext.web.api.validation.HTTPRequestValidationHandler;
-import io.vertx.ext.web.api.validation.ParameterType;
-import io.vertx.ext.web.api.validation.ParameterTypeValidator;
-import io.vertx.ext.web.api.validation.ValidationHandler;
-
-import java.math.BigDecimal;
-import java.util.Collections;
+
 import java.util.Objects;
 import java.util.concurrent.RejectedExecutionException;
 
@@ -27,64 +22,64 @@ import java.util.concurrent.RejectedExecutionException;
  * with {@value QueryParams#BALANCE} query parameter. Requester id should be specified with {@value HttpHeaders#USER_ID}.
  * User have to be source account owner. {@value JsonFields#TRANSFER_ID} field will be returned in the response json.
  */
-public class TransferHandler extends HandlerBase implements ValidatorHolder {
-
-    private static final String TRANSFER_ID_FIELD = "transferId";
+public class TransferHandler extends HandlerBase {
 
     private final Database database;
+    private final TransferCache transferCache;
 
     public TransferHandler(Database database) {
-        Objects.requireNonNull(database, "Database must not be null");
-        this.database = database;
+        this(database, new TransferCache(0));
     }
 
-    @Override
-    public ValidationHandler getValidator() {
-        return HTTPRequestValidationHandler.create()
-                .addHeaderParamWithCustomTypeValidator(HttpHeaders.USER_ID,
-                        ParameterTypeValidator.createLongTypeValidator(null), true, false)
-                .addPathParamWithCustomTypeValidator(PathParams.ACCOUNT_ID,
-                        ParameterTypeValidator.createLongTypeValidator(null), false)
-                .addQueryParamWithCustomTypeValidator(QueryParams.DST_ACC_ID,
-                        ParameterTypeValidator.createLongTypeValidator(null), true, false)
-                .addQueryParam(QueryParams.AMOUNT, ParameterType.GENERIC_STRING, true);
+    /**
+     * @param transferCache created transfers are put there to be read without database
+     */
+    public TransferHandler(Database database, TransferCache transferCache) {
+        Objects.requireNonNull(database, "Database must not be null");
+        Objects.requireNonNull(transferCache, "transferCache must not be null");
+        this.database = database;
+        this.transferCache = transferCache;
     }
 
     @Override
     public void handle(RoutingContext ctx) {
-        final RequestParameters requestParams = requestParameters(ctx);
-
-        final Long userId = requestParams.headerParameter(HttpHeaders.USER_ID).getLong();
-        final Long srcAccountId = requestParams.pathParameter(PathParams.ACCOUNT_ID).getLong();
-        final Long dstAccountId = requestParams.queryParameter(QueryParams.DST_ACC_ID).getLong();
-        final String amount = requestParams.queryParameter(QueryParams.AMOUNT).getString();
-        final BigDecimal amountDecimal = Utils.parseDecimal(amount);
+        final long srcAccountId = ParamExtractor.pathLong(ctx, PathParams.ACCOUNT_ID);
+        //amount presence was validated before the destination
+        ParamExtractor.checkQuery(ctx, QueryParams.AMOUNT, true);
+        final long dstAccountId = ParamExtractor.queryLong(ctx, QueryParams.DST_ACC_ID);
+        final long userId = ParamExtractor.headerLong(ctx, HttpHeaders.USER_ID);
+        final Money amountMoney = ParamExtractor.queryAmount(ctx, QueryParams.AMOUNT, null);
         final String requestId = requestId(ctx);
 
-        if (srcAccountId.equals(dstAccountId)) {
+        if (srcAccountId == dstAccountId) {
             Reply.badRequest(ctx, "Source and destination accounts should be different");
             return;
         }
 
-        if (!(amountDecimal.compareTo(BigDecimal.ZERO) > 0)) {
+        if (!amountMoney.isPositive()) {
             Reply.badRequest(ctx, "Amount should be greater zero");
             return;
         }
 
-        requestLogger(ctx).info("Transfer '{}' from account '{}' to account '{}' by the user '{}' request",
-                amountDecimal, srcAccountId, dstAccountId, userId);
+        requestLogger(ctx).debug("Transfer '{}' from account '{}' to account '{}' by the user '{}' request",
+                amountMoney, srcAccountId, dstAccountId, userId);
 
         try {
-            database.transfer(requestId, userId, srcAccountId, dstAccountId, amountDecimal, new TransferCallback() {
+            database.transfer(requestId, userId, srcAccountId, dstAccountId, amountMoney, new TransferCallback() {
+                @Override
+                public void onCommitted(Transfer transfer) {
+                    transferCache.put(transfer);
+                }
+
                 @Override
                 public void onSuccess(long transferId) {
-                    requestLogger(ctx).info("Transfer '{}' complete successfully", transferId);
-                    Reply.json(ctx, new JsonObject(Collections.singletonMap(TRANSFER_ID_FIELD, transferId)));
+                    requestLogger(ctx).debug("Transfer '{}' complete successfully", transferId);
+                    Reply.json(ctx, JsonWriter.object().field(JsonKeys.TRANSFER_ID, transferId).end());
                 }
 
                 @Override
                 public void onAccountNotFound(long accountId) {
-                    requestLogger(ctx).info("Account '{}' not found", accountId);
+                    requestLogger(ctx).debug("Account '{}' not found", accountId);
                     Reply.resourceNotFound(ctx, "account", String.valueOf(accountId));
                 }
 
@@ -98,7 +93,7 @@ public class TransferHandler extends HandlerBase implements ValidatorHolder {
 
                 @Override
                 public void onInsufficientFunds() {
-                    requestLogger(ctx).info("There is not enough funds for the transfer");
+                    requestLogger(ctx).debug("There is not enough funds for the transfer");
                     Reply.insufficientFunds(ctx);
                 }
 
@@ -108,9 +103,14 @@ public class TransferHandler extends HandlerBase implements ValidatorHolder {
                     requestLogger(ctx).debug("Stacktrace", e);
                     Reply.unexpectedError(ctx, e);
                 }
+
+                @Override
+                public void onRejected(RejectedExecutionException e) {
+                    Reply.tryLater(ctx, e);
+                }
             });
         } catch (RejectedExecutionException e) {
-            Reply.tryLater(ctx);
+            Reply.tryLater(ctx, e);
         }
 
     }
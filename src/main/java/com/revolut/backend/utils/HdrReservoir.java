@@ -0,0 +1,171 @@
+package com.revolut.backend.utils;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.HdrHistogram.Recorder;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reservoir backed by HdrHistogram {@link Recorder}: values are recorded without locks into fixed size buckets
+ * with 2 significant digits, so memory doesn't depend on the count of values. Snapshots cover a sliding window,
+ * the last minute by default, kept as 6 slices: recorded values are moved to the slice of the time
+ * they are collected by {@link #getSnapshot()} or {@link #size()}. Values above an hour in nanoseconds are recorded
+ * as an hour.
+ */
+public class HdrReservoir implements Reservoir {
+
+    private static final long HIGHEST_VALUE = TimeUnit.HOURS.toNanos(1);
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final int SLICES = 6;
+    //the sample size of the default dropwizard reservoir
+    private static final int MAX_VALUES = 1028;
+
+    private final Recorder recorder = new Recorder(HIGHEST_VALUE, SIGNIFICANT_DIGITS);
+    private final Histogram[] slices = new Histogram[SLICES];
+    private final long sliceNanos;
+    private final Clock clock;
+    private Histogram interval;
+    private long currentSlice;
+
+    public HdrReservoir() {
+        this(1, TimeUnit.MINUTES, Clock.defaultClock());
+    }
+
+    /**
+     * @param window time covered by snapshots
+     * @param clock  source of ticks in nanoseconds
+     */
+    public HdrReservoir(long window, TimeUnit unit, Clock clock) {
+        Args.isTrue(window > 0, "window must be greater zero");
+        Objects.requireNonNull(unit, "unit must not be null");
+        Objects.requireNonNull(clock, "clock must not be null");
+
+        this.sliceNanos = Math.max(1, unit.toNanos(window) / SLICES);
+        this.clock = clock;
+        for (int i = 0; i < SLICES; i++) {
+            slices[i] = new Histogram(SIGNIFICANT_DIGITS);
+        }
+        this.currentSlice = Math.floorDiv(clock.getTick(), sliceNanos);
+    }
+
+    /**
+     * @return count of values in the window
+     */
+    @Override
+    public synchronized int size() {
+        collect();
+        long count = 0;
+        for (Histogram slice : slices) {
+            count += slice.getTotalCount();
+        }
+        return (int) Math.min(Integer.MAX_VALUE, count);
+    }
+
+    @Override
+    public void update(long value) {
+        recorder.recordValue(Math.max(0, Math.min(value, HIGHEST_VALUE)));
+    }
+
+    @Override
+    public synchronized Snapshot getSnapshot() {
+        collect();
+        final Histogram window = new Histogram(SIGNIFICANT_DIGITS);
+        for (Histogram slice : slices) {
+            window.add(slice);
+        }
+        return new HdrSnapshot(window);
+    }
+
+    /**
+     * Clear slices which left the window and move values recorded since the last call to the current one
+     */
+    private void collect() {
+        final long slice = Math.floorDiv(clock.getTick(), sliceNanos);
+        for (long next = Math.max(currentSlice + 1, slice - SLICES + 1); next <= slice; next++) {
+            slices[(int) Math.floorMod(next, SLICES)].reset();
+        }
+        currentSlice = Math.max(currentSlice, slice);
+
+        interval = recorder.getIntervalHistogram(interval);
+        slices[(int) Math.floorMod(currentSlice, SLICES)].add(interval);
+    }
+
+    private static final class HdrSnapshot extends Snapshot {
+
+        private final Histogram histogram;
+
+        private HdrSnapshot(Histogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public double getValue(double quantile) {
+            return histogram.getValueAtPercentile(quantile * 100);
+        }
+
+        /**
+         * @return highest equivalent values of the buckets at evenly spaced ranks, 1028 at most,
+         * so each one stands for the same count of recorded values
+         */
+        @Override
+        public long[] getValues() {
+            final long total = histogram.getTotalCount();
+            final long[] values = new long[(int) Math.min(total, MAX_VALUES)];
+            long seen = 0;
+            int i = 0;
+            for (HistogramIterationValue value : histogram.recordedValues()) {
+                seen += value.getCountAtValueIteratedTo();
+                final long highest = histogram.highestEquivalentValue(value.getValueIteratedTo());
+                //rank of the i-th value is (i + 1) * total / values.length
+                while (i < values.length && (i + 1) * total <= seen * values.length) {
+                    values[i++] = highest;
+                }
+            }
+            return values;
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(Integer.MAX_VALUE, histogram.getTotalCount());
+        }
+
+        @Override
+        public long getMax() {
+            return histogram.getTotalCount() == 0 ? 0 : histogram.getMaxValue();
+        }
+
+        @Override
+        public double getMean() {
+            return histogram.getTotalCount() == 0 ? 0 : histogram.getMean();
+        }
+
+        @Override
+        public long getMin() {
+            return histogram.getTotalCount() == 0 ? 0 : histogram.getMinValue();
+        }
+
+        @Override
+        public double getStdDev() {
+            return histogram.getTotalCount() == 0 ? 0 : histogram.getStdDeviation();
+        }
+
+        @Override
+        public void dump(OutputStream output) {
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+                for (long value : getValues()) {
+                    out.println(value);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+package com.revolut.backend.utils;
+
+import com.revolut.backend.entity.Money;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Writer of flat json objects straight into a response {@link Buffer}, without intermediate maps and strings.
+ * Field names are encoded once as {@link Key}s. Money is written as a string in {@link Money#toString()} format,
+ * non ascii characters of strings are written as unicode escapes.
+ * <pre>
+ * Buffer json = JsonWriter.object().field(ACCOUNT_ID, 1).field(BALANCE, balance).end();
+ * </pre>
+ */
+public final class JsonWriter {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Field name encoded with quotes and colon
+     */
+    public static final class Key {
+
+        private final byte[] bytes;
+
+        private Key(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private final ByteBuf buf;
+    private boolean empty = true;
+
+    private JsonWriter(int capacity) {
+        this.buf = Unpooled.buffer(capacity);
+        this.buf.writeByte('{');
+    }
+
+    /**
+     * @param name field name, must not need escaping
+     */
+    public static Key key(String name) {
+        Objects.requireNonNull(name, "name must not be null");
+        return new Key(('"' + name + "\":").getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static JsonWriter object() {
+        return new JsonWriter(64);
+    }
+
+    /**
+     * @param capacity expected size in bytes, the buffer grows if it is exceeded
+     */
+    public static JsonWriter object(int capacity) {
+        Args.isTrue(capacity > 0, "capacity must be greater zero");
+        return new JsonWriter(capacity);
+    }
+
+    public JsonWriter field(Key key, long value) {
+        writeKey(key);
+        writeLong(value);
+        return this;
+    }
+
+    public JsonWriter field(Key key, Money value) {
+        Objects.requireNonNull(value, "value must not be null");
+        writeKey(key);
+        buf.writeByte('"');
+        writeMoney(value.getMinorUnits());
+        buf.writeByte('"');
+        return this;
+    }
+
+    public JsonWriter field(Key key, String value) {
+        Objects.requireNonNull(value, "value must not be null");
+        writeKey(key);
+        writeString(value);
+        return this;
+    }
+
+    /**
+     * Close the object
+     *
+     * @return written json
+     */
+    public Buffer end() {
+        buf.writeByte('}');
+        return Buffer.buffer(buf);
+    }
+
+    private void writeKey(Key key) {
+        Objects.requireNonNull(key, "key must not be null");
+        if (!empty) {
+            buf.writeByte(',');
+        }
+        empty = false;
+        buf.writeBytes(key.bytes);
+    }
+
+    private void writeMoney(long minorUnits) {
+        //same as Money.appendTo, divide before taking absolute value so Long.MIN_VALUE is handled as well
+        if (minorUnits < 0) {
+            buf.writeByte('-');
+        }
+        writeDigits(Math.abs(minorUnits / 100));
+        final int minor = (int) Math.abs(minorUnits % 100);
+        if (minor != 0) {
+            buf.writeByte('.');
+            buf.writeByte('0' + minor / 10);
+            if (minor % 10 != 0) {
+                buf.writeByte('0' + minor % 10);
+            }
+        }
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            buf.writeCharSequence(String.valueOf(value), StandardCharsets.US_ASCII);
+            return;
+        }
+        if (value < 0) {
+            buf.writeByte('-');
+            value = -value;
+        }
+        writeDigits(value);
+    }
+
+    private void writeDigits(long value) {
+        int digits = 1;
+        while (digits < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[digits]) {
+            digits++;
+        }
+
+        buf.ensureWritable(digits);
+        final int start = buf.writerIndex();
+        for (int i = start + digits - 1; i >= start; i--) {
+            buf.setByte(i, (int) ('0' + value % 10));
+            value /= 10;
+        }
+        buf.writerIndex(start + digits);
+    }
+
+    private void writeString(String value) {
+        buf.writeByte('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buf.writeByte('\\');
+                buf.writeByte(c);
+            } else if (c >= 0x20 && c < 0x7f) {
+                buf.writeByte(c);
+            } else {
+                buf.writeByte('\\');
+                buf.writeByte('u');
+                buf.writeByte(HEX[c >> 12 & 0xf]);
+                buf.writeByte(HEX[c >> 8 & 0xf]);
+                buf.writeByte(HEX[c >> 4 & 0xf]);
+                buf.writeByte(HEX[c & 0xf]);
+            }
+        }
+        buf.writeByte('"');
+    }
+
+}
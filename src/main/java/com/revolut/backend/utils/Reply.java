@@ -1,13 +1,17 @@
 package com.revolut.backend.utils;
 
-import com.revolut.backend.constants.JsonFields;
+import com.revolut.backend.constants.JsonKeys;
+import com.revolut.backend.db.OverloadedException;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
 
 import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class Reply {
 
@@ -40,30 +44,59 @@ public class Reply {
         json(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR, errorJson(String.valueOf(e)));
     }
 
-    public static void tryLater(RoutingContext ctx) {
+    /**
+     * Reply that the request is rejected because of the load. Retry-After is taken from
+     * {@link OverloadedException#getRetryAfterMillis()} rounded up to seconds, 30 seconds for other rejections
+     */
+    public static void tryLater(RoutingContext ctx, RejectedExecutionException e) {
         Objects.requireNonNull(ctx, "ctx must not be null");
-        ctx.response().setStatusCode(HttpResponseStatus.TOO_MANY_REQUESTS.code());
-        ctx.response().headers().set(HttpHeaderNames.RETRY_AFTER, "30");
+        Objects.requireNonNull(e, "e must not be null");
+
+        final long retryAfterSeconds = e instanceof OverloadedException ?
+                Math.max(1, TimeUnit.MILLISECONDS.toSeconds(((OverloadedException) e).getRetryAfterMillis() + 999)) : 30;
+
+        ctx.response().headers().set(HttpHeaderNames.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        json(ctx, HttpResponseStatus.TOO_MANY_REQUESTS, errorJson("Too many requests"));
     }
 
     public static void json(RoutingContext ctx, JsonObject json) {
+        Objects.requireNonNull(json, "json must not be null");
+        json(ctx, json.toBuffer());
+    }
+
+    /**
+     * Reply with already serialized json
+     */
+    public static void json(RoutingContext ctx, Buffer json) {
         json(ctx, HttpResponseStatus.OK, json);
     }
 
-    private static void json(RoutingContext ctx, HttpResponseStatus code, JsonObject json) {
+    /**
+     * Reply with already encoded body of the content type
+     */
+    public static void text(RoutingContext ctx, String contentType, Buffer body) {
+        Objects.requireNonNull(ctx, "ctx must not be null");
+        Objects.requireNonNull(contentType, "contentType must not be null");
+        Objects.requireNonNull(body, "body must not be null");
+
+        ctx.response().setStatusCode(HttpResponseStatus.OK.code());
+        ctx.response().headers().set(HttpHeaderNames.CONTENT_TYPE, contentType);
+        ctx.response().end(body);
+    }
+
+    private static void json(RoutingContext ctx, HttpResponseStatus code, Buffer json) {
         Objects.requireNonNull(ctx, "ctx must not be null");
         Objects.requireNonNull(code, "code must not be null");
         Objects.requireNonNull(json, "json must not be null");
 
         ctx.response().setStatusCode(code.code());
         ctx.response().headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
-        ctx.response().end(String.valueOf(json));
+        ctx.response().end(json);
     }
 
-    private static JsonObject errorJson(String msg) {
+    private static Buffer errorJson(String msg) {
         Objects.requireNonNull(msg, "msg must not be null");
-        return new JsonObject().put(JsonFields.ERROR, msg);
+        return JsonWriter.object(msg.length() + 16).field(JsonKeys.ERROR, msg).end();
     }
 
-
 }
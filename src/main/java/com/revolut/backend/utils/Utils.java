@@ -1,27 +1,39 @@
 package com.revolut.backend.utils;
 
+import com.revolut.backend.entity.Money;
 import io.vertx.ext.web.api.validation.ValidationException;
 
-import java.math.BigDecimal;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 
 public class Utils {
 
     /**
-     * Vetx api validation does not support BigDecimal type validation out of the box and there is no method
+     * Vetx api validation does not support decimal type validation out of the box and there is no method
      * to obtain raw value from the {@link io.vertx.ext.web.api.RequestParameter}
      *
      * @param amountString amount as a string
      * @return parsed amount, never null
-     * @throws ValidationException is amountString not a valid representation of a {@code BigDecimal}
+     * @throws ValidationException is amountString not a valid representation of {@link Money}
      */
-    public static BigDecimal parseDecimal(String amountString) throws ValidationException {
+    public static Money parseAmount(String amountString) throws ValidationException {
         try {
-            return new BigDecimal(amountString);
+            return Money.parse(amountString);
         } catch (NumberFormatException e) {
-            throw ValidationException.ValidationExceptionFactory
-                    .generateNotMatchValidationException("Value is not a valid amount");
+            throw invalidAmount();
+        }
+    }
+
+    /**
+     * Same as {@link #parseAmount(String)} for a part of the sequence, e.g. a value inside a query string
+     *
+     * @throws ValidationException is the part not a valid representation of {@link Money}
+     */
+    public static Money parseAmount(CharSequence value, int start, int end) throws ValidationException {
+        try {
+            return Money.ofMinorUnits(Money.parseMinorUnits(value, start, end));
+        } catch (NumberFormatException e) {
+            throw invalidAmount();
         }
     }
 
@@ -35,4 +47,9 @@ public class Utils {
         }
     }
 
+    private static ValidationException invalidAmount() {
+        return ValidationException.ValidationExceptionFactory
+                .generateNotMatchValidationException("Value is not a valid amount");
+    }
+
 }
@@ -29,7 +29,12 @@ public abstract class AbstractBackendServerTest {
 
     @BeforeClass
     public static void setUp() {
-        server = new BackendServer(9999);
+        //storage could be switched with -Dbackend.storage=memory to run the same tests against another implementation
+        final String storage = System.getProperty("backend.storage", ServerConfig.Storage.H2.name());
+
+        server = new BackendServer(new ServerConfig()
+                .port(9999)
+                .storage(ServerConfig.Storage.valueOf(storage.toUpperCase())));
         server.start();
 
         webClient = WebClient.create(Vertx.vertx());
@@ -53,7 +58,19 @@ public abstract class AbstractBackendServerTest {
         }
     }
 
+    protected HttpResponse<Buffer> sendSync(HttpMethod method, String path, Long userId, String requestId) {
+        try {
+            return sendAsync(method, path, userId, requestId).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     protected CompletableFuture<HttpResponse<Buffer>> sendAsync(HttpMethod method, String path, Long userId) {
+        return sendAsync(method, path, userId, null);
+    }
+
+    protected CompletableFuture<HttpResponse<Buffer>> sendAsync(HttpMethod method, String path, Long userId, String requestId) {
         final CompletableFuture<HttpResponse<Buffer>> f = new CompletableFuture<>();
 
         final HttpRequest<Buffer> request = webClient.request(method, server.port(), "127.0.0.1", path);
@@ -62,6 +79,10 @@ public abstract class AbstractBackendServerTest {
             request.putHeader("UserId", userId.toString());
         }
 
+        if (requestId != null) {
+            request.putHeader("RequestId", requestId);
+        }
+
         logger.info("Send request:\n" +
                 "\tmethod = '{}',\n" +
                 "\tpath = '{}',\n" +
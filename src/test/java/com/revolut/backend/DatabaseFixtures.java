@@ -0,0 +1,50 @@
+package com.revolut.backend;
+
+import com.revolut.backend.db.CreateAccountCallback;
+import com.revolut.backend.db.CreateUserCallback;
+import com.revolut.backend.db.Database;
+import com.revolut.backend.db.GetAccountCallback;
+import com.revolut.backend.entity.Account;
+import com.revolut.backend.entity.Money;
+import org.mockito.ArgumentCaptor;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Blocking helpers to set up and check {@link Database} implementations, fail if the call doesn't succeed in time
+ */
+public final class DatabaseFixtures {
+
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    private DatabaseFixtures() {
+    }
+
+    public static long createUser(Database database) {
+        final CreateUserCallback callback = mock(CreateUserCallback.class);
+        database.createUser("Mike", callback);
+
+        final ArgumentCaptor<Long> userId = ArgumentCaptor.forClass(Long.class);
+        verify(callback, timeout(TIMEOUT_MILLIS).times(1)).onSuccess(userId.capture());
+        return userId.getValue();
+    }
+
+    public static long createAccount(Database database, long userId, Money balance) {
+        final CreateAccountCallback callback = mock(CreateAccountCallback.class);
+        database.createAccount(userId, balance, callback);
+
+        final ArgumentCaptor<Long> accountId = ArgumentCaptor.forClass(Long.class);
+        verify(callback, timeout(TIMEOUT_MILLIS).times(1)).onSuccess(accountId.capture());
+        return accountId.getValue();
+    }
+
+    public static Money getBalance(Database database, long userId, long accountId) {
+        final GetAccountCallback callback = mock(GetAccountCallback.class);
+        database.getAccount(userId, accountId, callback);
+
+        final ArgumentCaptor<Account> account = ArgumentCaptor.forClass(Account.class);
+        verify(callback, timeout(TIMEOUT_MILLIS).times(1)).onSuccess(account.capture());
+        return account.getValue().getBalance();
+    }
+
+}
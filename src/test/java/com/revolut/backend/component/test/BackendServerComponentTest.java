@@ -8,8 +8,10 @@ import io.vertx.ext.web.client.HttpResponse;
 import org.junit.Test;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class BackendServerComponentTest extends AbstractBackendServerTest {
@@ -255,6 +257,88 @@ public class BackendServerComponentTest extends AbstractBackendServerTest {
         assertEquals(400, transferResponse.statusCode());
     }
 
+    @Test
+    public void transfer_tooManyDecimalPlaces_returns400() {
+        final String query = transferQuery(1, 2, "0.001");
+
+        final HttpResponse<Buffer> transferResponse = sendSync(HttpMethod.PATCH, query, 1L);
+        assertEquals(400, transferResponse.statusCode());
+    }
+
+    @Test
+    public void invalidParameters_return400WithValidationMessages() {
+        assertError("Error during validation of request. Parameter \"userName\" inside query not found",
+                sendSync(HttpMethod.POST, "/user"));
+        assertError("Error during validation of request. Parameter \"UserId\" inside header not found",
+                sendSync(HttpMethod.GET, "/account/1"));
+        assertError("Value is not a valid number", sendSync(HttpMethod.GET, "/transfer/abc", 1L));
+        assertError("Value is not a valid amount", sendSync(HttpMethod.POST, "/account?balance=1.001", 1L));
+        assertError("Parameter null not expected as an array",
+                sendSync(HttpMethod.POST, "/account?balance=1&balance=2"));
+        assertError("Error during validation of request. Parameter \"amount\" inside query not found",
+                sendSync(HttpMethod.PATCH, "/account/1/transfer?dstAccountId=abc", 1L));
+        assertError("Value is not a valid number",
+                sendSync(HttpMethod.PATCH, "/account/1/transfer?dstAccountId=%2B1.5&amount=1", 1L));
+        assertError("Error during validation of request. Parameter \"dstAccountId\" inside query not found",
+                sendSync(HttpMethod.PATCH, "/account/1/transfer?amount=1"));
+        assertError("Value is not a valid number",
+                sendSync(HttpMethod.PATCH, "/account/1/transfer?amount=1&dstAccountId", 1L));
+    }
+
+    private static void assertError(String expected, HttpResponse<Buffer> response) {
+        assertEquals(400, response.statusCode());
+        assertEquals(expected, response.bodyAsJsonObject().getString("error"));
+    }
+
+    @Test
+    public void transfer_repeatedRequestId_executedOnce() {
+        final long userId = createUser("Mike");
+        final long srcAccount = createAccount(userId, BigDecimal.valueOf(10));
+        final long dstAccount = createAccount(userId);
+
+        final String query = transferQuery(srcAccount, dstAccount, "3");
+        final HttpResponse<Buffer> first = sendSync(HttpMethod.PATCH, query, userId, "retried-request");
+        final HttpResponse<Buffer> retry = sendSync(HttpMethod.PATCH, query, userId, "retried-request");
+
+        assertEquals(200, first.statusCode());
+        assertEquals(200, retry.statusCode());
+        assertEquals(first.bodyAsJsonObject().getLong("transferId"), retry.bodyAsJsonObject().getLong("transferId"));
+        assertEquals(BigDecimal.valueOf(7), getAccountBalance(userId, srcAccount));
+        assertEquals(BigDecimal.valueOf(3), getAccountBalance(userId, dstAccount));
+    }
+
+    @Test
+    public void getTransfer_repeated_sameJson() {
+        final long userId = createUser("Mike");
+        final long srcAccount = createAccount(userId, BigDecimal.valueOf(10));
+        final long dstAccount = createAccount(userId);
+
+        final HttpResponse<Buffer> transferResponse = sendSync(HttpMethod.PATCH, transferQuery(srcAccount, dstAccount, "3"), userId);
+        final Long transferId = transferResponse.bodyAsJsonObject().getLong("transferId");
+
+        final HttpResponse<Buffer> first = sendSync(HttpMethod.GET, "/transfer/" + transferId, userId);
+        final HttpResponse<Buffer> second = sendSync(HttpMethod.GET, "/transfer/" + transferId, userId);
+
+        assertEquals(200, first.statusCode());
+        assertEquals(200, second.statusCode());
+        assertEquals(first.bodyAsJsonObject(), second.bodyAsJsonObject());
+        assertEquals(transferId, second.bodyAsJsonObject().getLong("transferId"));
+    }
+
+    @Test
+    public void getTransfer_notOwner_returns404() {
+        final long userId = createUser("Mike");
+        final long otherUserId = createUser("John");
+        final long srcAccount = createAccount(userId, BigDecimal.valueOf(10));
+        final long dstAccount = createAccount(userId);
+
+        final HttpResponse<Buffer> transferResponse = sendSync(HttpMethod.PATCH, transferQuery(srcAccount, dstAccount, "3"), userId);
+        final Long transferId = transferResponse.bodyAsJsonObject().getLong("transferId");
+
+        final HttpResponse<Buffer> response = sendSync(HttpMethod.GET, "/transfer/" + transferId, otherUserId);
+        assertEquals(404, response.statusCode());
+    }
+
     @Test
     public void getMetrics_return200() {
         final HttpResponse<Buffer> response = sendSync(HttpMethod.GET, "/metrics");
@@ -264,6 +348,20 @@ public class BackendServerComponentTest extends AbstractBackendServerTest {
         assertTrue(json.containsKey("db.queue.size"));
     }
 
+    @Test
+    public void getPrometheusMetrics_return200() {
+        createUser("Mike");
+
+        final HttpResponse<Buffer> response = sendSync(HttpMethod.GET, "/metrics/prometheus");
+        assertEquals(200, response.statusCode());
+        assertTrue(response.getHeader("Content-Type").startsWith("text/plain; version=0.0.4"));
+
+        final String metrics = response.bodyAsString();
+        assertTrue(metrics.contains("# TYPE db_queue_size gauge\ndb_queue_size "));
+        assertTrue(metrics.contains("# TYPE http_request_duration_seconds summary\n"));
+        assertTrue(metrics.contains("http_request_duration_seconds{route=\"/user\",method=\"POST\",status=\"2xx\",quantile=\"0.99\"} "));
+    }
+
     @Test
     public void getUnknownAccount_return404() {
         final long userId = createUser("Mike");
@@ -278,4 +376,19 @@ public class BackendServerComponentTest extends AbstractBackendServerTest {
         assertEquals(404, response.statusCode());
     }
 
+    @Test
+    public void unknownEndpoints_meteredAsOneRoute() {
+        sendSync(HttpMethod.GET, "/zzz/1");
+        sendSync(HttpMethod.GET, "/zzz/2");
+
+        final String metrics = sendSync(HttpMethod.GET, "/metrics/prometheus").bodyAsString();
+        final String prefix = "http_request_duration_seconds_count{route=\"unmatched\",method=\"\",status=\"4xx\"} ";
+        final long count = Arrays.stream(metrics.split("\n"))
+                .filter(line -> line.startsWith(prefix))
+                .mapToLong(line -> Long.parseLong(line.substring(prefix.length())))
+                .findFirst().orElse(0);
+        assertTrue("unmatched count " + count, count >= 2);
+        assertFalse(metrics.contains("/zzz"));
+    }
+
 }
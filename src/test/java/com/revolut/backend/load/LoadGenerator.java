@@ -0,0 +1,509 @@
+package com.revolut.backend.load;
+
+import com.revolut.backend.BackendServer;
+import com.revolut.backend.ServerConfig;
+import com.revolut.backend.constants.HttpHeaders;
+import com.revolut.backend.utils.Args;
+import io.netty.handler.codec.http.QueryStringEncoder;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpRequest;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.WebClientOptions;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.commons.cli.*;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open loop load generator: requests of each endpoint are sent at a fixed rate whatever the server responds,
+ * unlike a closed loop where a slow response delays the following requests.
+ * <p>
+ * Response time is measured from the moment the request was scheduled, not from the moment it was actually sent,
+ * so stalls of the server or of the generator itself are not hidden (coordinated omission). Service time,
+ * measured from the actual send, is reported too: the gap between them is the time requests waited to be sent.
+ * <p>
+ * Users and accounts are created before the run, accounts are picked with Zipf distributed popularity.
+ */
+public class LoadGenerator {
+
+    /**
+     * Endpoints under load
+     */
+    public enum Endpoint {
+        CREATE_USER("POST /user"),
+        CREATE_ACCOUNT("POST /account"),
+        GET_ACCOUNT("GET /account/:id"),
+        TRANSFER("PATCH /account/:id/transfer"),
+        GET_TRANSFER("GET /transfer/:id");
+
+        private final String description;
+
+        Endpoint(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    /**
+     * Load profile
+     */
+    public static class Config {
+
+        private String host = "127.0.0.1";
+        private int port = 8080;
+        private int warmupSeconds = 5;
+        private int durationSeconds = 30;
+        private int users = 100;
+        private int accounts = 1000;
+        private double zipfExponent = 1;
+        private int connections = 64;
+        private long requestTimeoutMillis = 10_000;
+        private final Map<Endpoint, Integer> rates = new EnumMap<>(Endpoint.class);
+
+        public Config host(String host) {
+            Objects.requireNonNull(host, "host must not be null");
+            this.host = host;
+            return this;
+        }
+
+        public Config port(int port) {
+            Args.isTrue(port > 0, "port must greater 0");
+            this.port = port;
+            return this;
+        }
+
+        public Config warmupSeconds(int warmupSeconds) {
+            Args.isTrue(warmupSeconds >= 0, "warmupSeconds must not be negative");
+            this.warmupSeconds = warmupSeconds;
+            return this;
+        }
+
+        public Config durationSeconds(int durationSeconds) {
+            Args.isTrue(durationSeconds > 0, "durationSeconds must greater 0");
+            this.durationSeconds = durationSeconds;
+            return this;
+        }
+
+        /**
+         * @param users count of users created before the run
+         */
+        public Config users(int users) {
+            Args.isTrue(users > 0, "users must greater 0");
+            this.users = users;
+            return this;
+        }
+
+        /**
+         * @param accounts count of accounts created before the run, owners are assigned round robin
+         */
+        public Config accounts(int accounts) {
+            Args.isTrue(accounts > 1, "accounts must greater 1");
+            this.accounts = accounts;
+            return this;
+        }
+
+        /**
+         * @param zipfExponent skew of the accounts popularity, 0 for uniform
+         */
+        public Config zipfExponent(double zipfExponent) {
+            Args.isTrue(zipfExponent >= 0, "zipfExponent must not be negative");
+            this.zipfExponent = zipfExponent;
+            return this;
+        }
+
+        public Config connections(int connections) {
+            Args.isTrue(connections > 0, "connections must greater 0");
+            this.connections = connections;
+            return this;
+        }
+
+        /**
+         * @param rate requests per second, 0 to skip the endpoint
+         */
+        public Config rate(Endpoint endpoint, int rate) {
+            Objects.requireNonNull(endpoint, "endpoint must not be null");
+            Args.isTrue(rate >= 0, "rate must not be negative");
+            this.rates.put(endpoint, rate);
+            return this;
+        }
+    }
+
+    /**
+     * Outcome of one endpoint, latencies are in microseconds
+     */
+    public static class Stats {
+
+        private final Histogram responseTime = new ConcurrentHistogram(3);
+        private final Histogram serviceTime = new ConcurrentHistogram(3);
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder succeeded = new LongAdder();
+        private final ConcurrentMap<String, LongAdder> failures = new ConcurrentHashMap<>();
+
+        public Histogram getResponseTime() {
+            return responseTime;
+        }
+
+        public Histogram getServiceTime() {
+            return serviceTime;
+        }
+
+        public long getSent() {
+            return sent.sum();
+        }
+
+        public long getSucceeded() {
+            return succeeded.sum();
+        }
+
+        /**
+         * @return failures count by http status or exception
+         */
+        public Map<String, LongAdder> getFailures() {
+            return failures;
+        }
+
+        private void record(long scheduledAt, long sentAt, long completedAt, boolean success, String failure) {
+            responseTime.recordValue(TimeUnit.NANOSECONDS.toMicros(completedAt - scheduledAt));
+            serviceTime.recordValue(TimeUnit.NANOSECONDS.toMicros(completedAt - sentAt));
+            if (success) {
+                succeeded.increment();
+            } else {
+                failures.computeIfAbsent(failure, f -> new LongAdder()).increment();
+            }
+        }
+    }
+
+    /**
+     * Outcome of the run
+     */
+    public static class Report {
+
+        private final Map<Endpoint, Stats> stats;
+        private final int durationSeconds;
+
+        private Report(Map<Endpoint, Stats> stats, int durationSeconds) {
+            this.stats = stats;
+            this.durationSeconds = durationSeconds;
+        }
+
+        public Map<Endpoint, Stats> getStats() {
+            return stats;
+        }
+
+        public void print(PrintStream out) {
+            out.println(String.format("%-28s %8s %8s %8s | %-11s %9s %9s %9s %9s %9s",
+                    "endpoint", "rate/s", "ok", "failed", "latency ms", "p50", "p90", "p99", "p99.9", "max"));
+
+            stats.forEach((endpoint, s) -> {
+                final long failed = s.getSent() - s.getSucceeded();
+                out.println(String.format("%-28s %8d %8d %8d | %-11s %s",
+                        endpoint, s.getSent() / durationSeconds, s.getSucceeded(), failed,
+                        "response", percentiles(s.getResponseTime())));
+                out.println(String.format("%-55s | %-11s %s", "", "service", percentiles(s.getServiceTime())));
+                if (!s.getFailures().isEmpty()) {
+                    out.println(String.format("%-55s | failures: %s", "", s.getFailures()));
+                }
+            });
+        }
+
+        private static String percentiles(Histogram h) {
+            return String.format("%9.2f %9.2f %9.2f %9.2f %9.2f",
+                    h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                    h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0,
+                    h.getMaxValue() / 1000.0);
+        }
+    }
+
+    private static final int RECENT_TRANSFERS = 4096;
+    private static final String AMOUNT = "0.01";
+    private static final String BALANCE = "1000000";
+
+    private final Config config;
+    private final Zipf zipf;
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicReferenceArray<long[]> recentTransfers = new AtomicReferenceArray<>(RECENT_TRANSFERS);
+    private WebClient client;
+    private long[] userIds;
+    private long[] accountIds;
+    private long[] accountOwners;
+
+    public LoadGenerator(Config config) {
+        Objects.requireNonNull(config, "config must not be null");
+        this.config = config;
+        this.zipf = new Zipf(config.accounts, config.zipfExponent);
+    }
+
+    /**
+     * Prepare users and accounts, warm up and apply the load
+     *
+     * @return outcome of the run without the warm up
+     */
+    public Report run() {
+        final Vertx vertx = Vertx.vertx();
+        client = WebClient.create(vertx, new WebClientOptions()
+                .setDefaultHost(config.host)
+                .setDefaultPort(config.port)
+                .setMaxPoolSize(config.connections));
+
+        try {
+            prepare();
+            if (config.warmupSeconds > 0) {
+                apply(config.warmupSeconds);
+            }
+            return new Report(apply(config.durationSeconds), config.durationSeconds);
+        } finally {
+            client.close();
+            vertx.close();
+        }
+    }
+
+    private void prepare() {
+        userIds = new long[config.users];
+        for (int i = 0; i < config.users; i++) {
+            userIds[i] = await(send(createUser())).getLong("userId");
+        }
+
+        accountIds = new long[config.accounts];
+        accountOwners = new long[config.accounts];
+        for (int i = 0; i < config.accounts; i++) {
+            accountOwners[i] = userIds[i % userIds.length];
+            accountIds[i] = await(send(createAccount(accountOwners[i], BALANCE))).getLong("accountId");
+        }
+
+        //a few transfers to be read from the start, repeated to fill all the slots
+        final int seeds = Math.min(config.accounts, RECENT_TRANSFERS);
+        for (int i = 0; i < seeds; i++) {
+            final long transferId = await(send(transfer(i, (i + 1) % config.accounts))).getLong("transferId");
+            recentTransfers.set(i, new long[]{transferId, accountOwners[i]});
+        }
+        for (int i = seeds; i < RECENT_TRANSFERS; i++) {
+            recentTransfers.set(i, recentTransfers.get(i % seeds));
+        }
+    }
+
+    /**
+     * Send requests on schedule: i-th request of an endpoint is due at start + i / rate
+     */
+    private Map<Endpoint, Stats> apply(int seconds) {
+        final Map<Endpoint, Stats> stats = new EnumMap<>(Endpoint.class);
+        final List<Endpoint> endpoints = new ArrayList<>();
+        config.rates.forEach((endpoint, rate) -> {
+            if (rate > 0) {
+                endpoints.add(endpoint);
+                stats.put(endpoint, new Stats());
+            }
+        });
+
+        final long[] scheduled = new long[Endpoint.values().length];
+        final long start = System.nanoTime();
+        final long end = start + TimeUnit.SECONDS.toNanos(seconds);
+
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            for (Endpoint endpoint : endpoints) {
+                final double interval = (double) TimeUnit.SECONDS.toNanos(1) / config.rates.get(endpoint);
+                long scheduledAt;
+                while ((scheduledAt = start + (long) (scheduled[endpoint.ordinal()] * interval)) <= now) {
+                    scheduled[endpoint.ordinal()]++;
+                    send(endpoint, scheduledAt, stats.get(endpoint));
+                }
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.requestTimeoutMillis * 2);
+        while (pending.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+
+        return stats;
+    }
+
+    private void send(Endpoint endpoint, long scheduledAt, Stats stats) {
+        final HttpRequest<Buffer> request = request(endpoint);
+        final long sentAt = System.nanoTime();
+
+        stats.sent.increment();
+        pending.incrementAndGet();
+
+        request.timeout(config.requestTimeoutMillis).send(result -> {
+            final long completedAt = System.nanoTime();
+            pending.decrementAndGet();
+
+            if (result.failed()) {
+                stats.record(scheduledAt, sentAt, completedAt, false, result.cause().getClass().getSimpleName());
+                return;
+            }
+
+            final HttpResponse<Buffer> response = result.result();
+            final boolean success = response.statusCode() == 200;
+            stats.record(scheduledAt, sentAt, completedAt, success, String.valueOf(response.statusCode()));
+
+            if (success && endpoint == Endpoint.TRANSFER) {
+                rememberTransfer(response.bodyAsJsonObject().getLong("transferId"),
+                        Long.parseLong(request.headers().get(HttpHeaders.USER_ID)));
+            }
+        });
+    }
+
+    private HttpRequest<Buffer> request(Endpoint endpoint) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        switch (endpoint) {
+            case CREATE_USER:
+                return createUser();
+            case CREATE_ACCOUNT:
+                return createAccount(userIds[random.nextInt(userIds.length)], "100");
+            case GET_ACCOUNT: {
+                final int account = zipf.next();
+                return withUser(client.get("/account/" + accountIds[account]), accountOwners[account]);
+            }
+            case TRANSFER: {
+                final int src = zipf.next();
+                int dst = zipf.next();
+                if (dst == src) {
+                    dst = (src + 1) % accountIds.length;
+                }
+                return transfer(src, dst);
+            }
+            case GET_TRANSFER: {
+                final long[] transfer = recentTransfers.get(random.nextInt(RECENT_TRANSFERS));
+                return withUser(client.get("/transfer/" + transfer[0]), transfer[1]);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown endpoint: " + endpoint);
+        }
+    }
+
+    private HttpRequest<Buffer> createUser() {
+        final QueryStringEncoder query = new QueryStringEncoder("/user");
+        query.addParam("userName", "load-" + runId + "-" + requests.incrementAndGet());
+        return client.post(query.toString());
+    }
+
+    private HttpRequest<Buffer> createAccount(long userId, String balance) {
+        final QueryStringEncoder query = new QueryStringEncoder("/account");
+        query.addParam("balance", balance);
+        return withUser(client.post(query.toString()), userId);
+    }
+
+    private HttpRequest<Buffer> transfer(int src, int dst) {
+        final QueryStringEncoder query = new QueryStringEncoder(String.format("/account/%s/transfer", accountIds[src]));
+        query.addParam("dstAccountId", String.valueOf(accountIds[dst]));
+        query.addParam("amount", AMOUNT);
+        return withUser(client.request(HttpMethod.PATCH, query.toString()), accountOwners[src])
+                .putHeader(HttpHeaders.REQUEST_ID, "load-" + runId + "-" + requests.incrementAndGet());
+    }
+
+    private static HttpRequest<Buffer> withUser(HttpRequest<Buffer> request, long userId) {
+        return request.putHeader(HttpHeaders.USER_ID, String.valueOf(userId));
+    }
+
+    private void rememberTransfer(long transferId, long userId) {
+        recentTransfers.set(ThreadLocalRandom.current().nextInt(RECENT_TRANSFERS), new long[]{transferId, userId});
+    }
+
+    private CompletableFuture<JsonObject> send(HttpRequest<Buffer> request) {
+        final CompletableFuture<JsonObject> f = new CompletableFuture<>();
+        request.timeout(config.requestTimeoutMillis).send(result -> {
+            if (result.failed()) {
+                f.completeExceptionally(result.cause());
+            } else if (result.result().statusCode() != 200) {
+                f.completeExceptionally(new IllegalStateException("Unexpected response: "
+                        + result.result().statusCode() + " " + result.result().bodyAsString()));
+            } else {
+                f.complete(result.result().bodyAsJsonObject());
+            }
+        });
+        return f;
+    }
+
+    private static JsonObject await(CompletableFuture<JsonObject> f) {
+        try {
+            return f.get();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void main(String[] args) {
+        final Options options = new Options()
+                .addOption(new Option("h", "host", true, "server host, 127.0.0.1 by default"))
+                .addOption(new Option("p", "port", true, "server port, 8080 by default"))
+                .addOption(new Option(null, "embedded", true, "start the server in process with the storage: h2, memory or sharded"))
+                .addOption(new Option(null, "warmup", true, "warm up seconds, not reported, 5 by default"))
+                .addOption(new Option(null, "duration", true, "reported seconds, 30 by default"))
+                .addOption(new Option(null, "users", true, "users created before the run, 100 by default"))
+                .addOption(new Option(null, "accounts", true, "accounts created before the run, 1000 by default"))
+                .addOption(new Option(null, "zipf", true, "skew of the accounts popularity, 0 for uniform, 1 by default"))
+                .addOption(new Option(null, "connections", true, "max connections, 64 by default"))
+                .addOption(new Option(null, "user-rate", true, "POST /user per second, 10 by default"))
+                .addOption(new Option(null, "account-rate", true, "POST /account per second, 10 by default"))
+                .addOption(new Option(null, "get-account-rate", true, "GET /account/:id per second, 500 by default"))
+                .addOption(new Option(null, "transfer-rate", true, "PATCH /account/:id/transfer per second, 500 by default"))
+                .addOption(new Option(null, "get-transfer-rate", true, "GET /transfer/:id per second, 200 by default"));
+
+        final CommandLine parse;
+        try {
+            parse = new BasicParser().parse(options, args);
+        } catch (ParseException e) {
+            new HelpFormatter().printHelp("load-generator", options);
+            return;
+        }
+
+        final Config config = new Config()
+                .host(parse.getOptionValue("h", "127.0.0.1"))
+                .port(Integer.parseInt(parse.getOptionValue("p", "8080")))
+                .warmupSeconds(Integer.parseInt(parse.getOptionValue("warmup", "5")))
+                .durationSeconds(Integer.parseInt(parse.getOptionValue("duration", "30")))
+                .users(Integer.parseInt(parse.getOptionValue("users", "100")))
+                .accounts(Integer.parseInt(parse.getOptionValue("accounts", "1000")))
+                .zipfExponent(Double.parseDouble(parse.getOptionValue("zipf", "1")))
+                .connections(Integer.parseInt(parse.getOptionValue("connections", "64")))
+                .rate(Endpoint.CREATE_USER, Integer.parseInt(parse.getOptionValue("user-rate", "10")))
+                .rate(Endpoint.CREATE_ACCOUNT, Integer.parseInt(parse.getOptionValue("account-rate", "10")))
+                .rate(Endpoint.GET_ACCOUNT, Integer.parseInt(parse.getOptionValue("get-account-rate", "500")))
+                .rate(Endpoint.TRANSFER, Integer.parseInt(parse.getOptionValue("transfer-rate", "500")))
+                .rate(Endpoint.GET_TRANSFER, Integer.parseInt(parse.getOptionValue("get-transfer-rate", "200")));
+
+        final String embedded = parse.getOptionValue("embedded");
+        final BackendServer server = embedded == null ? null : new BackendServer(new ServerConfig()
+                .port(Integer.parseInt(parse.getOptionValue("p", "8080")))
+                .storage(ServerConfig.Storage.valueOf(embedded.toUpperCase())))
+                .start();
+
+        try {
+            new LoadGenerator(config).run().print(System.out);
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+}
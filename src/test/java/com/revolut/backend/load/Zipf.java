@@ -0,0 +1,43 @@
+package com.revolut.backend.load;
+
+import com.revolut.backend.utils.Args;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Zipf distributed ranks: rank k of n is picked with probability proportional to 1 / k^s.
+ * Exponent 0 gives uniform distribution, around 1 a few ranks get most of the picks.
+ */
+public class Zipf {
+
+    private final double[] cdf;
+
+    /**
+     * @param n count of ranks
+     * @param s exponent, not negative
+     */
+    public Zipf(int n, double s) {
+        Args.isTrue(n > 0, "n must be greater zero");
+        Args.isTrue(s >= 0, "s must not be negative");
+
+        cdf = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1 / Math.pow(k + 1, s);
+            cdf[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cdf[k] /= sum;
+        }
+    }
+
+    /**
+     * @return rank from 0 (the most popular) to n - 1
+     */
+    public int next() {
+        final int i = Arrays.binarySearch(cdf, ThreadLocalRandom.current().nextDouble());
+        return Math.min(i >= 0 ? i : -i - 1, cdf.length - 1);
+    }
+
+}
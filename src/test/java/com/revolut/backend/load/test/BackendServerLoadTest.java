@@ -14,6 +14,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class BackendServerLoadTest extends AbstractBackendServerTest {
@@ -55,8 +56,10 @@ public class BackendServerLoadTest extends AbstractBackendServerTest {
         assertEquals(200, response.statusCode());
 
         final JsonObject metrics = response.body().toJsonObject();
-        assertEquals(Long.valueOf(attempts), metrics.getLong("http./account/1/transfer.PATCH.count"));
-        final long percentile95ms = TimeUnit.NANOSECONDS.toMillis(metrics.getLong("http./account/1/transfer.PATCH.95percentile"));
+        //transfers from both accounts are counted by the route template
+        assertEquals(Long.valueOf(attempts * 2), metrics.getLong("http./account/:accountId/transfer.PATCH.2xx.count"));
+        assertFalse(metrics.containsKey("http./account/1/transfer.PATCH.count"));
+        final long percentile95ms = TimeUnit.NANOSECONDS.toMillis(metrics.getLong("http./account/:accountId/transfer.PATCH.2xx.95percentile"));
         assertTrue("95 percentile should be less 50ms, while actual value is " + percentile95ms, percentile95ms < 50);
     }
 
@@ -0,0 +1,145 @@
+package com.revolut.backend.load.test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.revolut.backend.db.*;
+import com.revolut.backend.db.impl.H2Config;
+import com.revolut.backend.db.impl.H2Database;
+import com.revolut.backend.entity.Money;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.revolut.backend.DatabaseFixtures.*;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures startup time and transfer latency of the durable H2 per sync policy and checks
+ * the data survives restart.
+ */
+public class H2DurabilityLoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(H2DurabilityLoadTest.class);
+
+    private static final int PORT = 9125;
+    private static final int TRANSFERS = 500;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void transfer_eachSyncPolicy_dataReopened() throws Exception {
+        for (H2Config.SyncPolicy policy : H2Config.SyncPolicy.values()) {
+            measure(policy);
+        }
+    }
+
+    private void measure(H2Config.SyncPolicy policy) throws Exception {
+        final H2Config config = new H2Config()
+                .dataDir(folder.newFolder(policy.name()).getAbsolutePath())
+                .syncPolicy(policy)
+                .syncIntervalMillis(50);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final Timer latency = new MetricRegistry().timer("transfer");
+
+        final long userId;
+        final long srcAccountId;
+        final long dstAccountId;
+
+        final Instance created = new Instance(config, executor);
+        try {
+            userId = createUser(created.database);
+            srcAccountId = createAccount(created.database, userId, Money.parse("1000"));
+            dstAccountId = createAccount(created.database, userId, Money.ZERO);
+
+            for (int i = 0; i < TRANSFERS; i++) {
+                final long startedAt = System.nanoTime();
+                created.transfer("request-" + i, userId, srcAccountId, dstAccountId, Money.parse("0.01"));
+                latency.update(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            created.stop();
+        }
+
+        final Instance reopened = new Instance(config, executor);
+        try {
+            assertEquals(Money.parse("995"), getBalance(reopened.database, userId, srcAccountId));
+            assertEquals(Money.parse("5"), getBalance(reopened.database, userId, dstAccountId));
+        } finally {
+            reopened.stop();
+            executor.shutdown();
+        }
+
+        final Snapshot snapshot = latency.getSnapshot();
+        logger.info("Sync policy {}: create {} ms, reopen {} ms, transfer latency mean {} us, 99% {} us, max {} us",
+                policy, created.startupMillis, reopened.startupMillis,
+                TimeUnit.NANOSECONDS.toMicros((long) snapshot.getMean()),
+                TimeUnit.NANOSECONDS.toMicros((long) snapshot.get99thPercentile()),
+                TimeUnit.NANOSECONDS.toMicros(snapshot.getMax()));
+    }
+
+    /**
+     * Database opened on top of the data dir with blocking helpers
+     */
+    private static class Instance {
+
+        private final JdbcConnectionPool pool;
+        private final H2Database database;
+        private final long startupMillis;
+
+        private Instance(H2Config config, ExecutorService executor) {
+            final long startedAt = System.nanoTime();
+            pool = JdbcConnectionPool.create(config.getJdbcUrl(), "user", "pass");
+            database = new H2Database(PORT, executor, pool, config, new MetricRegistry());
+            database.init();
+            startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        }
+
+        private void stop() {
+            database.stop();
+            pool.dispose();
+        }
+
+        private void transfer(String requestId, long userId, long srcAccountId, long dstAccountId, Money amount)
+                throws Exception {
+            final CompletableFuture<Long> result = new CompletableFuture<>();
+            database.transfer(requestId, userId, srcAccountId, dstAccountId, amount, new TransferCallback() {
+                @Override
+                public void onSuccess(long transferId) {
+                    result.complete(transferId);
+                }
+
+                @Override
+                public void onAccountNotFound(long accountId) {
+                    result.completeExceptionally(new AssertionError("Account not found"));
+                }
+
+                @Override
+                public void onNotOwner() {
+                    result.completeExceptionally(new AssertionError("Not owner"));
+                }
+
+                @Override
+                public void onInsufficientFunds() {
+                    result.completeExceptionally(new AssertionError("Insufficient funds"));
+                }
+
+                @Override
+                public void onUnexpectedError(Exception e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            result.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+}
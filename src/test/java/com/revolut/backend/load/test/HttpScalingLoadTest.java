@@ -0,0 +1,153 @@
+package com.revolut.backend.load.test;
+
+import com.revolut.backend.BackendServer;
+import com.revolut.backend.ServerConfig;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.ext.web.client.HttpRequest;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.WebClientOptions;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures http throughput with different count of event loops. Accounts are served from the cache,
+ * so the storage is out of the way and the http layer is measured.
+ * Wall clock throughput depends on the machine, so it is only logged unless "backend.http.scaling.check"
+ * system property is set: then each count is sampled several times and the samples with one event loop per core
+ * must all be above the samples with a single one.
+ */
+public class HttpScalingLoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpScalingLoadTest.class);
+
+    private static final int PORT = 9126;
+    private static final int REQUESTS = 20_000;
+    private static final int CONCURRENCY = 64;
+    private static final boolean CHECK_SCALING = Boolean.getBoolean("backend.http.scaling.check");
+    private static final int SAMPLES = CHECK_SCALING ? 3 : 1;
+
+    @Test
+    public void getAccount_eventLoops_throughputMeasured() throws Exception {
+        final int cores = Runtime.getRuntime().availableProcessors();
+
+        final Vertx clientVertx = Vertx.vertx(new VertxOptions().setEventLoopPoolSize(cores));
+        final WebClient client = WebClient.create(clientVertx, new WebClientOptions().setMaxPoolSize(CONCURRENCY));
+
+        final Map<Integer, long[]> throughput = new LinkedHashMap<>();
+        try {
+            for (int instances = 1; instances <= 2 * cores; instances *= 2) {
+                throughput.put(instances, measure(client, instances));
+            }
+        } finally {
+            client.close();
+            clientVertx.close();
+        }
+
+        throughput.forEach((instances, rps) ->
+                logger.info("{} event loops ({} cores): {} requests/s", instances, cores, Arrays.toString(rps)));
+
+        //the client shares the cores with the server, so scaling is visible on a decent machine only
+        if (CHECK_SCALING && cores > 1) {
+            final long single = LongStream.of(throughput.get(1)).max().getAsLong();
+            final long perCore = LongStream.of(throughput.get(Integer.highestOneBit(cores))).min().getAsLong();
+            assertTrue("Throughput should grow with event loops: " + perCore + " <= " + single, perCore > single);
+        }
+    }
+
+    /**
+     * @return requests per second of each of {@link #SAMPLES} runs
+     */
+    private static long[] measure(WebClient client, int instances) throws Exception {
+        final BackendServer server = new BackendServer(new ServerConfig()
+                .port(PORT)
+                .storage(ServerConfig.Storage.MEMORY)
+                .httpInstances(instances))
+                .start();
+
+        try {
+            final long userId = send(client, HttpMethod.POST, "/user?userName=Mike", null)
+                    .get().bodyAsJsonObject().getLong("userId");
+            final long accountId = send(client, HttpMethod.POST, "/account?balance=100", userId)
+                    .get().bodyAsJsonObject().getLong("accountId");
+            final String path = "/account/" + accountId;
+
+            //warm up
+            run(client, path, userId, REQUESTS / 4);
+
+            final long[] samples = new long[SAMPLES];
+            for (int i = 0; i < SAMPLES; i++) {
+                final long start = System.nanoTime();
+                run(client, path, userId, REQUESTS);
+                samples[i] = REQUESTS * TimeUnit.SECONDS.toNanos(1) / (System.nanoTime() - start);
+            }
+            return samples;
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Send requests keeping {@link #CONCURRENCY} of them in flight
+     */
+    private static void run(WebClient client, String path, long userId, int requests) throws InterruptedException {
+        final AtomicInteger remaining = new AtomicInteger(requests);
+        final AtomicInteger failed = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(requests);
+
+        for (int i = 0; i < CONCURRENCY; i++) {
+            next(client, path, userId, remaining, failed, done);
+        }
+
+        assertTrue("Requests are not completed in time", done.await(1, TimeUnit.MINUTES));
+        assertEquals(0, failed.get());
+    }
+
+    private static void next(WebClient client, String path, long userId,
+                             AtomicInteger remaining, AtomicInteger failed, CountDownLatch done) {
+        if (remaining.getAndDecrement() <= 0) {
+            return;
+        }
+
+        send(client, HttpMethod.GET, path, userId).whenComplete((response, e) -> {
+            if (e != null || response.statusCode() != 200) {
+                failed.incrementAndGet();
+            }
+            done.countDown();
+            next(client, path, userId, remaining, failed, done);
+        });
+    }
+
+    private static CompletableFuture<HttpResponse<Buffer>> send(WebClient client, HttpMethod method, String path, Long userId) {
+        final CompletableFuture<HttpResponse<Buffer>> f = new CompletableFuture<>();
+        final HttpRequest<Buffer> request = client.request(method, PORT, "127.0.0.1", path);
+        if (userId != null) {
+            request.putHeader("UserId", userId.toString());
+        }
+        request.send(response -> {
+            if (response.failed()) {
+                f.completeExceptionally(response.cause());
+            } else {
+                f.complete(response.result());
+            }
+        });
+        return f;
+    }
+
+}
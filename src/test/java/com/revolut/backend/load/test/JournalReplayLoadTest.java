@@ -0,0 +1,84 @@
+package com.revolut.backend.load.test;
+
+import com.revolut.backend.db.impl.Journal;
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.entity.Transfer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures journal append and replay throughput. Count of transfers could be changed with
+ * "backend.journal.records" system property, recovery time of 100M transfers is extrapolated.
+ */
+public class JournalReplayLoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(JournalReplayLoadTest.class);
+
+    private static final long TARGET_RECORDS = 100_000_000L;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replay_transfers_throughputReported() {
+        final int records = Integer.getInteger("backend.journal.records", 1_000_000);
+        final Path dir = folder.getRoot().toPath();
+
+        final Journal journal = new Journal(dir);
+        journal.open(new CountingListener());
+
+        final Transfer transfer = new Transfer(1, "2b1c5a9e-6f0d-4c4e-9d53-0d6f0e7a1b2c", System.currentTimeMillis(),
+                1, 2, 1, Money.ofMinorUnits(1), Money.ofMinorUnits(100), Money.ofMinorUnits(99),
+                Money.ZERO, Money.ofMinorUnits(1));
+
+        final long appendStartedAt = System.nanoTime();
+        for (int i = 0; i < records; i++) {
+            journal.appendTransfer(transfer);
+        }
+        final long appendNanos = System.nanoTime() - appendStartedAt;
+        journal.close();
+
+        final CountingListener listener = new CountingListener();
+        final long replayStartedAt = System.nanoTime();
+        final long replayed = new Journal(dir).open(listener);
+        final long replayNanos = System.nanoTime() - replayStartedAt;
+
+        assertEquals(records, replayed);
+        assertEquals(records, listener.transfers);
+
+        final double appendRate = records * 1e9 / appendNanos;
+        final double replayRate = records * 1e9 / replayNanos;
+        logger.info("Journal of {} transfers: append {} records/s, replay {} records/s, 100M transfers replay ~{} s",
+                records, (long) appendRate, (long) replayRate, (long) (TARGET_RECORDS / replayRate));
+        logger.info("Replay of {} transfers took {} ms", records, TimeUnit.NANOSECONDS.toMillis(replayNanos));
+    }
+
+    private static class CountingListener implements Journal.Listener {
+
+        private long transfers;
+
+        @Override
+        public void onUser(long userId, String name) {
+        }
+
+        @Override
+        public void onAccount(long accountId, long ownerId, long balance) {
+        }
+
+        @Override
+        public void onTransfer(long transferId, String requestId, long timestamp,
+                               long srcAccountId, long dstAccountId, long userId, long amount,
+                               long srcBalanceBefore, long srcBalanceAfter, long dstBalanceBefore, long dstBalanceAfter) {
+            transfers++;
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.revolut.backend.load.test;
+
+import com.revolut.backend.AbstractBackendServerTest;
+import com.revolut.backend.load.LoadGenerator;
+import com.revolut.backend.load.LoadGenerator.Endpoint;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OpenLoopLoadTest extends AbstractBackendServerTest {
+
+    private static final int DURATION_SECONDS = 3;
+
+    @Test
+    public void allEndpoints_fixedRate_allSucceeded() {
+        final LoadGenerator.Report report = new LoadGenerator(new LoadGenerator.Config()
+                .port(9999)
+                .users(10)
+                .accounts(100)
+                .warmupSeconds(1)
+                .durationSeconds(DURATION_SECONDS)
+                .rate(Endpoint.CREATE_USER, 5)
+                .rate(Endpoint.CREATE_ACCOUNT, 5)
+                .rate(Endpoint.GET_ACCOUNT, 100)
+                .rate(Endpoint.TRANSFER, 100)
+                .rate(Endpoint.GET_TRANSFER, 50))
+                .run();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        report.print(new PrintStream(out, true));
+        logger.info("Open loop load report:\n{}", out);
+
+        assertEquals(5, report.getStats().size());
+        report.getStats().forEach((endpoint, stats) -> {
+            assertTrue(endpoint + " failures: " + stats.getFailures(), stats.getFailures().isEmpty());
+            assertEquals(endpoint + " responses", stats.getSent(), stats.getSucceeded());
+            assertEquals(endpoint + " responses", stats.getSent(), stats.getResponseTime().getTotalCount());
+        });
+        assertEquals(100 * DURATION_SECONDS, report.getStats().get(Endpoint.TRANSFER).getSent(), 2);
+    }
+
+}
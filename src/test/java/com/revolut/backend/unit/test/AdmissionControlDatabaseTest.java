@@ -0,0 +1,111 @@
+package com.revolut.backend.unit.test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.revolut.backend.db.*;
+import com.revolut.backend.db.impl.AdmissionControlDatabase;
+import com.revolut.backend.db.impl.ExecutionLanes.Lane;
+import com.revolut.backend.db.impl.GradientLimiter;
+import com.revolut.backend.entity.Account;
+import com.revolut.backend.entity.Money;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class AdmissionControlDatabaseTest {
+
+    private Database delegate;
+    private GradientLimiter readLimiter;
+    private GradientLimiter writeLimiter;
+    private MetricRegistry metricRegistry;
+    private AdmissionControlDatabase database;
+
+    @Before
+    public void beforeEachTest() {
+        delegate = mock(Database.class);
+        readLimiter = new GradientLimiter(2, 1, 2);
+        writeLimiter = new GradientLimiter(2, 1, 2);
+        final Map<Lane, GradientLimiter> limiters = new EnumMap<>(Lane.class);
+        limiters.put(Lane.READ, readLimiter);
+        limiters.put(Lane.WRITE, writeLimiter);
+        limiters.put(Lane.ADMIN, new GradientLimiter(2, 1, 2));
+        metricRegistry = new MetricRegistry();
+        database = new AdmissionControlDatabase(delegate, limiters, metricRegistry);
+    }
+
+    @Test
+    public void testGetAccount_limitReached_overloaded() {
+        database.getAccount(1, 1, mock(GetAccountCallback.class));
+        database.getAccount(1, 2, mock(GetAccountCallback.class));
+
+        try {
+            database.getAccount(1, 3, mock(GetAccountCallback.class));
+            fail("OverloadedException expected");
+        } catch (OverloadedException e) {
+            assertTrue(e.getRetryAfterMillis() > 0);
+        }
+
+        verify(delegate, times(2)).getAccount(anyLong(), anyLong(), any());
+        assertEquals(1, metricRegistry.meter("db.read.rejections").getCount());
+        assertEquals(2, metricRegistry.getGauges().get("db.read.inflight").getValue());
+    }
+
+    @Test
+    public void testGetAccount_completed_permitReleased() {
+        final GetAccountCallback callback = mock(GetAccountCallback.class);
+        database.getAccount(1, 1, callback);
+
+        final ArgumentCaptor<GetAccountCallback> captor = ArgumentCaptor.forClass(GetAccountCallback.class);
+        verify(delegate).getAccount(eq(1L), eq(1L), captor.capture());
+        final Account account = new Account(1, 1, Money.ZERO);
+        captor.getValue().onSuccess(account);
+
+        verify(callback).onSuccess(account);
+        assertEquals(0, readLimiter.getInFlight());
+        assertEquals(1, metricRegistry.timer("db.read.latency").getCount());
+    }
+
+    @Test
+    public void testTransfer_delegateRejected_permitReleased() {
+        doThrow(new RejectedExecutionException()).when(delegate)
+                .transfer(anyString(), anyLong(), anyLong(), anyLong(), any(), any());
+
+        try {
+            database.transfer("r1", 1, 1, 2, Money.parse("1"), mock(TransferCallback.class));
+            fail("RejectedExecutionException expected");
+        } catch (RejectedExecutionException e) {
+            assertEquals(0, writeLimiter.getInFlight());
+        }
+    }
+
+    @Test
+    public void testGetAccount_writeLimitReached_readAdmitted() {
+        database.transfer("r1", 1, 1, 2, Money.parse("1"), mock(TransferCallback.class));
+        database.transfer("r2", 1, 1, 2, Money.parse("1"), mock(TransferCallback.class));
+
+        try {
+            database.transfer("r3", 1, 1, 2, Money.parse("1"), mock(TransferCallback.class));
+            fail("OverloadedException expected");
+        } catch (OverloadedException e) {
+            //write lane is full
+        }
+
+        database.getAccount(1, 1, mock(GetAccountCallback.class));
+
+        verify(delegate).getAccount(eq(1L), eq(1L), any());
+        assertEquals(1, readLimiter.getInFlight());
+        assertEquals(1, metricRegistry.meter("db.write.rejections").getCount());
+        assertEquals(0, metricRegistry.meter("db.read.rejections").getCount());
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.revolut.backend.unit.test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.revolut.backend.db.*;
+import com.revolut.backend.db.impl.CachingDatabase;
+import com.revolut.backend.entity.Account;
+import com.revolut.backend.entity.Money;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class CachingDatabaseTest {
+
+    private static final Account ACCOUNT = new Account(1, 10, Money.parse("100"));
+
+    private Database delegate;
+    private CachingDatabase database;
+
+    @Before
+    public void beforeEachTest() {
+        delegate = mock(Database.class);
+        database = new CachingDatabase(delegate, 100, new MetricRegistry());
+    }
+
+    @Test
+    public void testGetAccount_loaded_servedFromCache() {
+        database.getAccount(10, 1, mock(GetAccountCallback.class));
+        loadCallback().onSuccess(ACCOUNT);
+
+        final GetAccountCallback callback = mock(GetAccountCallback.class);
+        database.getAccount(10, 1, callback);
+
+        verify(callback).onSuccess(ACCOUNT);
+        verify(delegate, times(1)).getAccount(anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void testGetAccount_cachedNotOwner_notFound() {
+        database.getAccount(10, 1, mock(GetAccountCallback.class));
+        loadCallback().onSuccess(ACCOUNT);
+
+        final GetAccountCallback callback = mock(GetAccountCallback.class);
+        database.getAccount(11, 1, callback);
+
+        verify(callback).onAccountNotFound();
+    }
+
+    @Test
+    public void testTransfer_success_accountsInvalidated() {
+        database.getAccount(10, 1, mock(GetAccountCallback.class));
+        loadCallback().onSuccess(ACCOUNT);
+
+        final TransferCallback transferCallback = mock(TransferCallback.class);
+        database.transfer("r1", 10, 1, 2, Money.parse("1"), transferCallback);
+        transferCallback().onSuccess(5);
+        verify(transferCallback).onSuccess(5);
+
+        database.getAccount(10, 1, mock(GetAccountCallback.class));
+        verify(delegate, times(2)).getAccount(eq(10L), eq(1L), any());
+    }
+
+    @Test
+    public void testGetAccount_loadRacingWithTransfer_notCached() {
+        //load reads the balance before the transfer, but completes after it
+        database.getAccount(10, 1, mock(GetAccountCallback.class));
+        database.transfer("r1", 10, 1, 2, Money.parse("1"), mock(TransferCallback.class));
+        transferCallback().onSuccess(5);
+        loadCallback().onSuccess(ACCOUNT);
+
+        database.getAccount(10, 1, mock(GetAccountCallback.class));
+        verify(delegate, times(2)).getAccount(eq(10L), eq(1L), any());
+    }
+
+    @Test
+    public void testCreateAccount_success_cached() {
+        final CreateAccountCallback createCallback = mock(CreateAccountCallback.class);
+        database.createAccount(10, Money.parse("100"), createCallback);
+
+        final ArgumentCaptor<CreateAccountCallback> callback = ArgumentCaptor.forClass(CreateAccountCallback.class);
+        verify(delegate).createAccount(eq(10L), eq(Money.parse("100")), callback.capture());
+        callback.getValue().onSuccess(1);
+        verify(createCallback).onSuccess(1);
+
+        final ArgumentCaptor<Account> account = ArgumentCaptor.forClass(Account.class);
+        final GetAccountCallback getCallback = mock(GetAccountCallback.class);
+        database.getAccount(10, 1, getCallback);
+
+        verify(getCallback).onSuccess(account.capture());
+        verify(delegate, never()).getAccount(anyLong(), anyLong(), any());
+        assertEquals(Money.parse("100"), account.getValue().getBalance());
+    }
+
+    private GetAccountCallback loadCallback() {
+        final ArgumentCaptor<GetAccountCallback> callback = ArgumentCaptor.forClass(GetAccountCallback.class);
+        verify(delegate, atLeastOnce()).getAccount(anyLong(), anyLong(), callback.capture());
+        return callback.getValue();
+    }
+
+    private TransferCallback transferCallback() {
+        final ArgumentCaptor<TransferCallback> callback = ArgumentCaptor.forClass(TransferCallback.class);
+        verify(delegate, atLeastOnce()).transfer(anyString(), anyLong(), anyLong(), anyLong(), any(), callback.capture());
+        return callback.getValue();
+    }
+
+}
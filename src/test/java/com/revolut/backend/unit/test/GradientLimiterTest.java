@@ -0,0 +1,86 @@
+package com.revolut.backend.unit.test;
+
+import com.revolut.backend.db.impl.GradientLimiter;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class GradientLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(20);
+
+    @Test
+    public void testTryAcquire_limitReached_rejected() {
+        final GradientLimiter limiter = new GradientLimiter(2, 1, 10);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        limiter.release();
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testRelease_steadyLatencyFullyUsed_limitGrows() {
+        final GradientLimiter limiter = new GradientLimiter(10, 1, 100);
+
+        saturate(limiter, FAST, 100);
+
+        assertTrue("limit " + limiter.getLimit(), limiter.getLimit() > 10);
+    }
+
+    @Test
+    public void testRelease_latencyRises_limitDrops() {
+        final GradientLimiter limiter = new GradientLimiter(10, 1, 100);
+        saturate(limiter, FAST, 200);
+        final int limit = limiter.getLimit();
+
+        saturate(limiter, SLOW, 2);
+
+        assertTrue("limit " + limiter.getLimit() + " was " + limit, limiter.getLimit() < limit);
+    }
+
+    @Test
+    public void testRelease_underused_limitKept() {
+        final GradientLimiter limiter = new GradientLimiter(10, 1, 100);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(FAST);
+        }
+
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void testDrainMillis_inFlight_proportionalToLatency() {
+        final GradientLimiter limiter = new GradientLimiter(4, 1, 4);
+        saturate(limiter, SLOW, 1);
+
+        while (limiter.tryAcquire()) {
+            //fill up to the limit
+        }
+
+        assertEquals(20, limiter.drainMillis());
+    }
+
+    /**
+     * Acquire up to the limit and release all with the given latency, given count of times
+     */
+    private static void saturate(GradientLimiter limiter, long rttNanos, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            int acquired = 0;
+            while (limiter.tryAcquire()) {
+                acquired++;
+            }
+            for (int i = 0; i < acquired; i++) {
+                limiter.release(rttNanos);
+            }
+        }
+    }
+
+}
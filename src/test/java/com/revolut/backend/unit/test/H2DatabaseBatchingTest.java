@@ -0,0 +1,103 @@
+package com.revolut.backend.unit.test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.revolut.backend.db.*;
+import com.revolut.backend.db.impl.H2Config;
+import com.revolut.backend.db.impl.H2Database;
+import com.revolut.backend.entity.Money;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import static com.revolut.backend.DatabaseFixtures.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+public class H2DatabaseBatchingTest {
+
+    private static H2Database database;
+    private static MetricRegistry metricRegistry;
+
+    @BeforeClass
+    public static void init() {
+        metricRegistry = new MetricRegistry();
+        database = new H2Database(9124, Executors.newSingleThreadExecutor(),
+                JdbcConnectionPool.create("jdbc:h2:mem:batching", "user", "pass"),
+                new H2Config().transferBatchSize(16).transferBatchWaitMicros(50_000),
+                metricRegistry);
+        database.init();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        database.stop();
+    }
+
+    @Test
+    public void testBatch_insufficientFunds_onlyThisTransferRejected() {
+        final long userId = createUser(database);
+        final long srcAccountId = createAccount(database, userId, Money.parse("10"));
+        final long dstAccountId = createAccount(database, userId, Money.ZERO);
+
+        //submit within one batch wait interval, the third one exceeds the balance left by the first two
+        final List<TransferCallback> callbacks = new ArrayList<>();
+        for (String amount : new String[]{"4", "5", "2", "1"}) {
+            final TransferCallback callback = mock(TransferCallback.class);
+            database.transfer("request-" + amount, userId, srcAccountId, dstAccountId, Money.parse(amount), callback);
+            callbacks.add(callback);
+        }
+
+        final ArgumentCaptor<Long> firstId = ArgumentCaptor.forClass(Long.class);
+        verify(callbacks.get(0), timeout(1000).times(1)).onSuccess(firstId.capture());
+        verify(callbacks.get(1), timeout(1000).times(1)).onSuccess(firstId.getValue() + 1);
+        verify(callbacks.get(2), timeout(1000).times(1)).onInsufficientFunds();
+        verify(callbacks.get(3), timeout(1000).times(1)).onSuccess(firstId.getValue() + 2);
+
+        assertEquals(0, getBalance(database, userId, srcAccountId).compareTo(Money.ZERO));
+        assertEquals(0, getBalance(database, userId, dstAccountId).compareTo(Money.parse("10")));
+        assertTrue(metricRegistry.histogram("db.transfer.batch.size").getSnapshot().getMax() > 1);
+    }
+
+    @Test
+    public void testBatch_repeatedRequestId_executedOnce() {
+        final long userId = createUser(database);
+        final long srcAccountId = createAccount(database, userId, Money.parse("10"));
+        final long dstAccountId = createAccount(database, userId, Money.ZERO);
+
+        //two duplicates within one batch
+        final TransferCallback first = mock(TransferCallback.class);
+        final TransferCallback duplicate = mock(TransferCallback.class);
+        database.transfer("repeated", userId, srcAccountId, dstAccountId, Money.parse("1"), first);
+        database.transfer("repeated", userId, srcAccountId, dstAccountId, Money.parse("1"), duplicate);
+
+        final ArgumentCaptor<Long> transferId = ArgumentCaptor.forClass(Long.class);
+        verify(first, timeout(1000).times(1)).onSuccess(transferId.capture());
+        verify(duplicate, timeout(1000).times(1)).onSuccess(transferId.getValue());
+
+        //and one retried after the commit
+        final TransferCallback retry = mock(TransferCallback.class);
+        database.transfer("repeated", userId, srcAccountId, dstAccountId, Money.parse("1"), retry);
+        verify(retry, timeout(1000).times(1)).onSuccess(transferId.getValue());
+
+        assertEquals(Money.parse("9"), getBalance(database, userId, srcAccountId));
+    }
+
+    @Test
+    public void testBatch_unknownAccount_callbackCalled() {
+        final long userId = createUser(database);
+        final long srcAccountId = createAccount(database, userId, Money.parse("10"));
+
+        final TransferCallback callback = mock(TransferCallback.class);
+        database.transfer("requestId", userId, srcAccountId, 99999L, Money.parse("1"), callback);
+
+        verify(callback, timeout(1000).times(1)).onAccountNotFound(99999L);
+    }
+
+}
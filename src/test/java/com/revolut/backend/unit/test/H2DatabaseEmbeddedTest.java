@@ -0,0 +1,72 @@
+package com.revolut.backend.unit.test;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.revolut.backend.db.CreateUserCallback;
+import com.revolut.backend.db.impl.H2Config;
+import com.revolut.backend.db.impl.H2Database;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+public class H2DatabaseEmbeddedTest {
+
+    private static final int PORT = 9131;
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private H2Database database;
+
+    @Before
+    public void init() {
+        final JdbcConnectionPool pool = JdbcConnectionPool.create("jdbc:h2:mem:embedded", "user", "pass");
+        pool.setMaxConnections(4);
+        database = new H2Database(PORT, Executors.newFixedThreadPool(4), pool,
+                new H2Config().tcpServer(false).sessionPoolSize(4), metricRegistry);
+        database.init();
+    }
+
+    @After
+    public void tearDown() {
+        database.stop();
+    }
+
+    @Test
+    public void testInit_noTcpServer() throws IOException {
+        try {
+            new Socket("localhost", PORT).close();
+            fail("tcp server must not be started");
+        } catch (ConnectException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testInit_sessionsPrewarmed_callsDontWait() {
+        assertEquals(4, gauge("db.session.open"));
+        assertEquals(4, gauge("db.session.idle"));
+
+        for (int i = 0; i < 20; i++) {
+            final CreateUserCallback callback = mock(CreateUserCallback.class);
+            database.createUser("Mike", callback);
+            verify(callback, timeout(1000).times(1)).onSuccess(anyLong());
+        }
+
+        assertEquals(0, metricRegistry.timer("db.session.wait").getCount());
+        assertEquals(4, gauge("db.session.open"));
+    }
+
+    private int gauge(String name) {
+        return (Integer) ((Gauge<?>) metricRegistry.getGauges().get(name)).getValue();
+    }
+
+}
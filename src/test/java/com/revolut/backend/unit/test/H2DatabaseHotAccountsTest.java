@@ -0,0 +1,214 @@
+package com.revolut.backend.unit.test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.revolut.backend.db.*;
+import com.revolut.backend.db.impl.H2Config;
+import com.revolut.backend.db.impl.H2Database;
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.entity.Transfer;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.revolut.backend.DatabaseFixtures.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+public class H2DatabaseHotAccountsTest {
+
+    private static JdbcConnectionPool dataSource;
+    private static H2Database database;
+    private static MetricRegistry metricRegistry;
+    private static long merchantId;
+    private static long merchantAccountId;
+
+    @BeforeClass
+    public static void init() {
+        metricRegistry = new MetricRegistry();
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:hot", "user", "pass");
+        //fewer stripes than threads, so credits also meet on the same stripe
+        database = new H2Database(9127, Executors.newFixedThreadPool(8), dataSource,
+                new H2Config().hotAccounts(Collections.singletonList(1L))
+                        .hotAccountStripes(2)
+                        .hotAccountFoldIntervalMillis(50),
+                metricRegistry);
+        database.init();
+
+        merchantId = createUser(database);
+        merchantAccountId = createAccount(database, merchantId, Money.ZERO);
+        assertEquals(1L, merchantAccountId);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        database.stop();
+    }
+
+    @Test
+    public void testCredits_concurrent_balanceAndAuditChainConsistent() throws Exception {
+        final Money initial = getBalance(database, merchantId, merchantAccountId);
+
+        final int payers = 8;
+        final int transfersPerPayer = 10;
+        final CountDownLatch done = new CountDownLatch(payers * transfersPerPayer);
+        final ConcurrentLinkedQueue<Transfer> committed = new ConcurrentLinkedQueue<>();
+
+        for (int i = 0; i < payers; i++) {
+            final long userId = createUser(database);
+            final long accountId = createAccount(database, userId, Money.parse("100"));
+            for (int j = 0; j < transfersPerPayer; j++) {
+                database.transfer("credit-" + i + "-" + j, userId, accountId, merchantAccountId, Money.parse("1.5"),
+                        new RecordingCallback(committed, done));
+            }
+        }
+
+        assertTrue("Transfers are not completed in time", done.await(10, TimeUnit.SECONDS));
+        assertEquals(initial.plus(Money.parse("120")), getBalance(database, merchantId, merchantAccountId));
+        assertChain(initial, committed, initial.plus(Money.parse("120")));
+
+        //credits are folded to the account row
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (queryLong("SELECT SUM(amount) FROM account_credits WHERE account_id = 1") != 0
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(initial.plus(Money.parse("120")).getMinorUnits(),
+                queryLong("SELECT balance FROM accounts WHERE id = 1"));
+        assertTrue(metricRegistry.timer("db.hot.fold").getCount() > 0);
+    }
+
+    @Test
+    public void testCredits_concurrentRepeats_chainWithoutGaps() throws Exception {
+        final Money initial = getBalance(database, merchantId, merchantAccountId);
+        final long userId = createUser(database);
+        final long accountId = createAccount(database, userId, Money.parse("100"));
+
+        //repeated requests fail on the unique index concurrently with the credits continuing the chain
+        final int requests = 20;
+        final int repeats = 4;
+        final CountDownLatch done = new CountDownLatch(requests * repeats);
+        final ConcurrentLinkedQueue<Transfer> committed = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < requests; i++) {
+            for (int j = 0; j < repeats; j++) {
+                database.transfer("repeated-" + i, userId, accountId, merchantAccountId, Money.parse("2"),
+                        new RecordingCallback(committed, done));
+            }
+        }
+
+        assertTrue("Transfers are not completed in time", done.await(10, TimeUnit.SECONDS));
+        assertEquals(requests, committed.size());
+        assertEquals(initial.plus(Money.parse("40")), getBalance(database, merchantId, merchantAccountId));
+        assertChain(initial, committed, initial.plus(Money.parse("40")));
+    }
+
+    @Test
+    public void testDebit_fromHotAccount_strictlyChecked() {
+        final long payerId = createUser(database);
+        final long payerAccountId = createAccount(database, payerId, Money.parse("10"));
+        final long payeeAccountId = createAccount(database, payerId, Money.ZERO);
+
+        final TransferCallback credit = mock(TransferCallback.class);
+        database.transfer("debit-credit", payerId, payerAccountId, merchantAccountId, Money.parse("10"), credit);
+        verify(credit, timeout(1000).times(1)).onSuccess(anyLong());
+
+        //not folded credits are spendable once committed, but never more than the balance
+        final Money balance = getBalance(database, merchantId, merchantAccountId);
+        final TransferCallback tooMuch = mock(TransferCallback.class);
+        database.transfer("debit-too-much", merchantId, merchantAccountId, payeeAccountId,
+                balance.plus(Money.parse("0.01")), tooMuch);
+        verify(tooMuch, timeout(1000).times(1)).onInsufficientFunds();
+
+        final TransferCallback all = mock(TransferCallback.class);
+        database.transfer("debit-all", merchantId, merchantAccountId, payeeAccountId, balance, all);
+        verify(all, timeout(1000).times(1)).onSuccess(anyLong());
+
+        final ArgumentCaptor<Transfer> transfer = ArgumentCaptor.forClass(Transfer.class);
+        verify(all).onCommitted(transfer.capture());
+        assertEquals(balance, transfer.getValue().getSrcAccountBalanceBefore());
+        assertEquals(Money.ZERO, transfer.getValue().getSrcAccountBalanceAfter());
+
+        assertEquals(Money.ZERO, getBalance(database, merchantId, merchantAccountId));
+        assertEquals(balance, getBalance(database, payerId, payeeAccountId));
+    }
+
+    /**
+     * Each credit continues the balance left by the previous one
+     */
+    private static void assertChain(Money initial, Collection<Transfer> committed, Money last) {
+        final List<Transfer> chain = new ArrayList<>(committed);
+        chain.sort(Comparator.comparing(Transfer::getDstAccountBalanceBefore));
+        Money expected = initial;
+        for (Transfer transfer : chain) {
+            assertEquals(expected, transfer.getDstAccountBalanceBefore());
+            expected = transfer.getDstAccountBalanceAfter();
+        }
+        assertEquals(last, expected);
+    }
+
+    private static long queryLong(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setSchema("REVOLUT");
+            try (ResultSet rs = connection.createStatement().executeQuery(sql)) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * Collects committed transfers, any outcome except success is counted as not completed
+     */
+    private static class RecordingCallback implements TransferCallback {
+
+        private final Collection<Transfer> committed;
+        private final CountDownLatch done;
+
+        private RecordingCallback(Collection<Transfer> committed, CountDownLatch done) {
+            this.committed = committed;
+            this.done = done;
+        }
+
+        @Override
+        public void onCommitted(Transfer transfer) {
+            committed.add(transfer);
+        }
+
+        @Override
+        public void onSuccess(long transferId) {
+            done.countDown();
+        }
+
+        @Override
+        public void onAccountNotFound(long accountId) {
+        }
+
+        @Override
+        public void onNotOwner() {
+        }
+
+        @Override
+        public void onInsufficientFunds() {
+        }
+
+        @Override
+        public void onUnexpectedError(Exception e) {
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.revolut.backend.unit.test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.revolut.backend.db.*;
+import com.revolut.backend.db.impl.H2Config;
+import com.revolut.backend.db.impl.H2Database;
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.entity.Transfer;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import java.util.concurrent.Executors;
+
+import static com.revolut.backend.DatabaseFixtures.*;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class H2DatabaseIdAllocationTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private H2Database database;
+
+    @After
+    public void tearDown() {
+        database.stop();
+    }
+
+    @Test
+    public void testIds_sequentialWithinBlock_continueAfterRestart() throws Exception {
+        final H2Config config = new H2Config().dataDir(folder.getRoot().getAbsolutePath()).idBlockSize(10);
+        open(config);
+
+        assertEquals(1, createUser(database));
+        assertEquals(2, createUser(database));
+        final long accountId = createAccount(database, 2, Money.parse("10"));
+        assertEquals(1, accountId);
+        assertEquals(2, createAccount(database, 2, Money.ZERO));
+
+        //id is known before the commit, so the committed transfer carries it
+        final TransferCallback callback = mock(TransferCallback.class);
+        database.transfer("requestId", 2, 1, 2, Money.parse("1"), callback);
+        final ArgumentCaptor<Transfer> transfer = ArgumentCaptor.forClass(Transfer.class);
+        verify(callback, timeout(1000).times(1)).onCommitted(transfer.capture());
+        verify(callback, timeout(1000).times(1)).onSuccess(1L);
+        assertEquals(1, transfer.getValue().getId());
+
+        database.stop();
+        open(config.idBlockSize(100));
+
+        //the rest of the reserved block is skipped
+        assertEquals(11, createUser(database));
+        assertEquals(12, createUser(database));
+    }
+
+    private void open(H2Config config) {
+        database = new H2Database(9128, Executors.newSingleThreadExecutor(),
+                JdbcConnectionPool.create(config.getJdbcUrl(), "user", "pass"), config, new MetricRegistry());
+        database.init();
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.revolut.backend.unit.test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.revolut.backend.db.*;
+import com.revolut.backend.db.impl.H2Config;
+import com.revolut.backend.db.impl.H2Database;
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.entity.Transfer;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.concurrent.Executors;
+
+import static com.revolut.backend.DatabaseFixtures.*;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class H2DatabaseProcedureTest {
+
+    private static H2Database database;
+
+    @BeforeClass
+    public static void init() {
+        database = new H2Database(9129, Executors.newFixedThreadPool(4),
+                JdbcConnectionPool.create("jdbc:h2:mem:procedure", "user", "pass"),
+                new H2Config().transferProcedure(true), new MetricRegistry());
+        database.init();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        database.stop();
+    }
+
+    @Test
+    public void testTransfer_ok_balancesAndAuditUpdated() {
+        final long userId = createUser(database);
+        final long srcAccountId = createAccount(database, userId, Money.parse("100"));
+        final long dstAccountId = createAccount(database, userId, Money.parse("5"));
+
+        final TransferCallback callback = mock(TransferCallback.class);
+        database.transfer("requestId", userId, srcAccountId, dstAccountId, Money.parse("55.73"), callback);
+
+        final ArgumentCaptor<Long> transferId = ArgumentCaptor.forClass(Long.class);
+        verify(callback, timeout(1000).times(1)).onSuccess(transferId.capture());
+        final ArgumentCaptor<Transfer> transfer = ArgumentCaptor.forClass(Transfer.class);
+        verify(callback).onCommitted(transfer.capture());
+
+        assertEquals(transferId.getValue().longValue(), transfer.getValue().getId());
+        assertEquals(Money.parse("100"), transfer.getValue().getSrcAccountBalanceBefore());
+        assertEquals(Money.parse("60.73"), transfer.getValue().getDstAccountBalanceAfter());
+        assertEquals(Money.parse("44.27"), getBalance(database, userId, srcAccountId));
+        assertEquals(Money.parse("60.73"), getBalance(database, userId, dstAccountId));
+
+        //stored transfer matches the committed one
+        final GetTransferCallback getTransferCallback = mock(GetTransferCallback.class);
+        database.getTransfer(userId, transferId.getValue(), getTransferCallback);
+        final ArgumentCaptor<Transfer> stored = ArgumentCaptor.forClass(Transfer.class);
+        verify(getTransferCallback, timeout(1000).times(1)).onSuccess(stored.capture());
+        assertEquals(Money.parse("5"), stored.getValue().getDstAccountBalanceBefore());
+        assertEquals(Money.parse("44.27"), stored.getValue().getSrcAccountBalanceAfter());
+    }
+
+    @Test
+    public void testTransfer_repeatedRequestId_executedOnce() {
+        final long userId = createUser(database);
+        final long srcAccountId = createAccount(database, userId, Money.parse("10"));
+        final long dstAccountId = createAccount(database, userId, Money.ZERO);
+
+        final TransferCallback first = mock(TransferCallback.class);
+        database.transfer("repeated", userId, srcAccountId, dstAccountId, Money.parse("1"), first);
+        final ArgumentCaptor<Long> transferId = ArgumentCaptor.forClass(Long.class);
+        verify(first, timeout(1000).times(1)).onSuccess(transferId.capture());
+
+        final TransferCallback repeated = mock(TransferCallback.class);
+        database.transfer("repeated", userId, srcAccountId, dstAccountId, Money.parse("1"), repeated);
+        verify(repeated, timeout(1000).times(1)).onSuccess(transferId.getValue());
+        verify(repeated, never()).onCommitted(any());
+
+        assertEquals(Money.parse("9"), getBalance(database, userId, srcAccountId));
+    }
+
+    @Test
+    public void testTransfer_rejected_statusMappedToCallback() {
+        final long userId = createUser(database);
+        final long srcAccountId = createAccount(database, userId, Money.parse("10"));
+        final long dstAccountId = createAccount(database, userId, Money.ZERO);
+
+        final TransferCallback insufficientFunds = mock(TransferCallback.class);
+        database.transfer("r1", userId, srcAccountId, dstAccountId, Money.parse("10.01"), insufficientFunds);
+        verify(insufficientFunds, timeout(1000).times(1)).onInsufficientFunds();
+
+        final TransferCallback notOwner = mock(TransferCallback.class);
+        database.transfer("r2", userId + 1, srcAccountId, dstAccountId, Money.parse("1"), notOwner);
+        verify(notOwner, timeout(1000).times(1)).onNotOwner();
+
+        final TransferCallback srcNotFound = mock(TransferCallback.class);
+        database.transfer("r3", userId, 99999L, dstAccountId, Money.parse("1"), srcNotFound);
+        verify(srcNotFound, timeout(1000).times(1)).onAccountNotFound(99999L);
+
+        final TransferCallback dstNotFound = mock(TransferCallback.class);
+        database.transfer("r4", userId, srcAccountId, 99999L, Money.parse("1"), dstNotFound);
+        verify(dstNotFound, timeout(1000).times(1)).onAccountNotFound(99999L);
+
+        //nothing is changed by rejected transfers
+        assertEquals(Money.parse("10"), getBalance(database, userId, srcAccountId));
+        assertEquals(Money.ZERO, getBalance(database, userId, dstAccountId));
+    }
+
+    @Test
+    public void testTransfer_dstBalanceOverflow_errorAndNothingChanged() {
+        final long userId = createUser(database);
+        final long srcAccountId = createAccount(database, userId, Money.parse("10"));
+        final long dstAccountId = createAccount(database, userId, Money.ofMinorUnits(Long.MAX_VALUE - 50));
+
+        final TransferCallback callback = mock(TransferCallback.class);
+        database.transfer("overflow", userId, srcAccountId, dstAccountId, Money.parse("1"), callback);
+        verify(callback, timeout(1000).times(1)).onUnexpectedError(any(Exception.class));
+        verify(callback, never()).onSuccess(anyLong());
+        verify(callback, never()).onCommitted(any());
+
+        assertEquals(Money.parse("10"), getBalance(database, userId, srcAccountId));
+        assertEquals(Money.ofMinorUnits(Long.MAX_VALUE - 50), getBalance(database, userId, dstAccountId));
+
+        //the same request is not remembered and the account is still usable
+        final TransferCallback smaller = mock(TransferCallback.class);
+        database.transfer("overflow", userId, srcAccountId, dstAccountId, Money.ofMinorUnits(50), smaller);
+        verify(smaller, timeout(1000).times(1)).onSuccess(anyLong());
+        assertEquals(Money.ofMinorUnits(Long.MAX_VALUE), getBalance(database, userId, dstAccountId));
+    }
+
+}
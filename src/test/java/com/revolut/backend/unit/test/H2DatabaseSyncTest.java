@@ -0,0 +1,135 @@
+package com.revolut.backend.unit.test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.revolut.backend.db.CreateUserCallback;
+import com.revolut.backend.db.TransferCallback;
+import com.revolut.backend.db.impl.H2Config;
+import com.revolut.backend.db.impl.H2Database;
+import com.revolut.backend.entity.Money;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.revolut.backend.DatabaseFixtures.*;
+import static org.junit.Assert.*;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.Mockito.*;
+
+public class H2DatabaseSyncTest {
+
+    private static final String SYNC = "CHECKPOINT SYNC";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private volatile boolean syncFails;
+    private JdbcConnectionPool pool;
+    private H2Database database;
+
+    @After
+    public void tearDown() {
+        database.stop();
+        pool.dispose();
+    }
+
+    @Test
+    public void testCommit_syncFails_successReportedAndWritesRejected() throws SQLException {
+        open(new H2Config().dataDir(folder.getRoot().getAbsolutePath()));
+        final long userId = createUser(database);
+        final long srcAccountId = createAccount(database, userId, Money.parse("10"));
+        final long dstAccountId = createAccount(database, userId, Money.ZERO);
+        assertTrue(database.isHealthy());
+        assertEquals(1, healthyGauge());
+
+        syncFails = true;
+        final TransferCallback callback = mock(TransferCallback.class);
+        database.transfer("r1", userId, srcAccountId, dstAccountId, Money.parse("1"), callback);
+
+        verify(callback, timeout(5000).times(1)).onSuccess(anyLong());
+        assertFalse(database.isHealthy());
+        assertEquals(0, healthyGauge());
+        assertEquals(1, metricRegistry.counter("db.sync.failures").getCount());
+
+        //committed work is readable, new writes are not acknowledged as durable
+        assertEquals(Money.parse("1"), getBalance(database, userId, dstAccountId));
+        assertRejected(() -> database.transfer("r2", userId, srcAccountId, dstAccountId, Money.parse("1"),
+                mock(TransferCallback.class)));
+        assertRejected(() -> database.createUser("Mike", mock(CreateUserCallback.class)));
+        assertEquals(Money.parse("9"), getBalance(database, userId, srcAccountId));
+    }
+
+    @Test
+    public void testBatch_syncFails_successReportedAndWritesRejected() throws SQLException {
+        open(new H2Config().dataDir(folder.getRoot().getAbsolutePath()).transferBatchSize(8));
+        final long userId = createUser(database);
+        final long srcAccountId = createAccount(database, userId, Money.parse("10"));
+        final long dstAccountId = createAccount(database, userId, Money.ZERO);
+
+        syncFails = true;
+        final TransferCallback callback = mock(TransferCallback.class);
+        database.transfer("r1", userId, srcAccountId, dstAccountId, Money.parse("1"), callback);
+
+        verify(callback, timeout(5000).times(1)).onSuccess(anyLong());
+        verify(callback, never()).onUnexpectedError(any(Exception.class));
+        assertEquals(Money.parse("1"), getBalance(database, userId, dstAccountId));
+        assertFalse(database.isHealthy());
+        assertRejected(() -> database.transfer("r2", userId, srcAccountId, dstAccountId, Money.parse("1"),
+                mock(TransferCallback.class)));
+    }
+
+    private void open(H2Config config) throws SQLException {
+        pool = JdbcConnectionPool.create(config.getJdbcUrl(), "user", "pass");
+        database = new H2Database(9133, Executors.newFixedThreadPool(2), failingSync(pool), config, metricRegistry);
+        database.init();
+    }
+
+    private int healthyGauge() {
+        return (Integer) metricRegistry.getGauges().get("db.healthy").getValue();
+    }
+
+    private static void assertRejected(Runnable write) {
+        try {
+            write.run();
+            fail("Write must be rejected");
+        } catch (RejectedExecutionException e) {
+            //expected
+        }
+    }
+
+    /**
+     * @return data source which connections fail to force the file once {@link #syncFails} is set
+     */
+    private DataSource failingSync(DataSource dataSource) throws SQLException {
+        final DataSource failing = mock(DataSource.class, delegatesTo(dataSource));
+        doAnswer(invocation -> failingSync(dataSource.getConnection())).when(failing).getConnection();
+        return failing;
+    }
+
+    private Connection failingSync(Connection connection) throws SQLException {
+        final Connection failing = mock(Connection.class, delegatesTo(connection));
+        doAnswer(invocation -> failingSync(connection.prepareStatement(SYNC))).when(failing).prepareStatement(SYNC);
+        return failing;
+    }
+
+    private PreparedStatement failingSync(PreparedStatement statement) throws SQLException {
+        final PreparedStatement failing = mock(PreparedStatement.class, delegatesTo(statement));
+        doAnswer(invocation -> {
+            if (syncFails) {
+                throw new SQLException("No space left on device");
+            }
+            return statement.execute();
+        }).when(failing).execute();
+        return failing;
+    }
+
+}
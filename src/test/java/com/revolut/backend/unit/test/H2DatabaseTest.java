@@ -5,11 +5,11 @@ import com.revolut.backend.db.CreateUserCallback;
 import com.revolut.backend.db.GetAccountCallback;
 import com.revolut.backend.db.TransferCallback;
 import com.revolut.backend.db.impl.H2Database;
+import com.revolut.backend.entity.Money;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import javax.sql.DataSource;
-import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.concurrent.Executors;
@@ -58,7 +58,7 @@ public class H2DatabaseTest {
     @Test
     public void testExceptionOnCreateAccount_callbackCalled() {
         final CreateAccountCallback createAccountCallback = mock(CreateAccountCallback.class);
-        database.createAccount(1L, BigDecimal.ZERO, createAccountCallback);
+        database.createAccount(1L, Money.ZERO, createAccountCallback);
 
         verify(createAccountCallback, timeout(1000).times(1)).onUnexpectedError(exception);
     }
@@ -74,7 +74,7 @@ public class H2DatabaseTest {
     @Test
     public void testExceptionOnTransfer_callbackCalled() {
         final TransferCallback transferCallback = mock(TransferCallback.class);
-        database.transfer("requestId", 1L,1L, 1L, BigDecimal.ONE, transferCallback);
+        database.transfer("requestId", 1L,1L, 1L, Money.parse("1"), transferCallback);
 
         verify(transferCallback, timeout(1000).times(1)).onUnexpectedError(exception);
     }
@@ -0,0 +1,188 @@
+package com.revolut.backend.unit.test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.revolut.backend.db.impl.H2Config;
+import com.revolut.backend.db.impl.H2Database;
+import com.revolut.backend.entity.Money;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.revolut.backend.DatabaseFixtures.*;
+import static org.junit.Assert.*;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.Mockito.*;
+
+/**
+ * Sessions of {@link H2Database} are observed through the connections of the data source and the pool metrics
+ */
+public class H2SessionPoolTest {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final JdbcConnectionPool pool = JdbcConnectionPool.create("jdbc:h2:mem:sessions", "user", "pass");
+    private final List<Connection> sessions = new CopyOnWriteArrayList<>();
+    private volatile boolean setupFails;
+    private volatile boolean rollbackFails;
+    private H2Database database;
+
+    @After
+    public void tearDown() {
+        if (database != null) {
+            database.stop();
+        }
+        executor.shutdownNow();
+        pool.dispose();
+    }
+
+    @Test
+    public void testPrepare_repeatedCalls_statementPreparedOnce() throws SQLException {
+        open(new H2Config().tcpServer(false).sessionPoolSize(1));
+        final long userId = createUser(database);
+        final long accountId = createAccount(database, userId, Money.parse("10"));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Money.parse("10"), getBalance(database, userId, accountId));
+        }
+
+        assertEquals(1, sessions.size());
+        final ArgumentCaptor<String> queries = ArgumentCaptor.forClass(String.class);
+        verify(sessions.get(0), atLeastOnce()).prepareStatement(queries.capture());
+        assertEquals(queries.getAllValues().size(), new HashSet<>(queries.getAllValues()).size());
+    }
+
+    @Test
+    public void testPrewarm_sessionsOpenedOnInit_noWait() throws SQLException {
+        open(new H2Config().tcpServer(false).sessionPoolSize(2));
+        assertEquals(2, gauge("db.session.open"));
+        assertEquals(2, gauge("db.session.idle"));
+
+        final long userId = createUser(database);
+        getBalance(database, userId, createAccount(database, userId, Money.ZERO));
+
+        assertEquals(0, waitCount());
+        assertEquals(2, sessions.size());
+        for (Connection session : sessions) {
+            verify(session).setAutoCommit(false);
+            verify(session).setSchema("REVOLUT");
+        }
+    }
+
+    @Test
+    public void testClose_rolledBackAndKeptOpenUntilStop() throws Exception {
+        open(new H2Config().tcpServer(false));
+        final long userId = createUser(database);
+        createAccount(database, userId, Money.ZERO);
+        awaitExecutor();
+
+        assertEquals(1, sessions.size());
+        assertEquals(1, waitCount());
+        final Connection session = sessions.get(0);
+        verify(session, atLeast(3)).rollback();
+        verify(session, never()).close();
+
+        database.stop();
+        database = null;
+        verify(session).close();
+        assertEquals(0, gauge("db.session.open"));
+    }
+
+    @Test
+    public void testClose_rollbackFails_sessionDiscarded() throws Exception {
+        open(new H2Config().tcpServer(false).sessionPoolSize(1));
+        final long userId = createUser(database);
+        awaitExecutor();
+
+        rollbackFails = true;
+        createAccount(database, userId, Money.ZERO);
+        awaitExecutor();
+        rollbackFails = false;
+
+        verify(sessions.get(0)).close();
+        assertEquals(0, gauge("db.session.open"));
+        assertEquals(0, gauge("db.session.idle"));
+
+        createUser(database);
+        awaitExecutor();
+        assertEquals(2, sessions.size());
+        assertEquals(1, gauge("db.session.open"));
+        assertEquals(1, waitCount());
+    }
+
+    @Test
+    public void testInit_setupFails_connectionClosed() throws SQLException {
+        setupFails = true;
+        try {
+            open(new H2Config().tcpServer(false).sessionPoolSize(1));
+            fail("Setup failure must be thrown");
+        } catch (RuntimeException e) {
+            assertEquals("Schema not found", e.getCause().getMessage());
+        }
+
+        assertEquals(1, sessions.size());
+        verify(sessions.get(0)).close();
+        assertEquals(0, gauge("db.session.open"));
+    }
+
+    private void open(H2Config config) throws SQLException {
+        final H2Database database = new H2Database(9134, executor, tracked(pool), config, metricRegistry);
+        database.init();
+        this.database = database;
+    }
+
+    /**
+     * Wait till the session of the last call is returned, it happens after the callback
+     */
+    private void awaitExecutor() throws InterruptedException, ExecutionException {
+        executor.submit(() -> {
+        }).get();
+    }
+
+    private long waitCount() {
+        return metricRegistry.timer("db.session.wait").getCount();
+    }
+
+    private int gauge(String name) {
+        return (Integer) metricRegistry.getGauges().get(name).getValue();
+    }
+
+    /**
+     * @return data source which connections set up as sessions are collected to {@link #sessions}
+     */
+    private DataSource tracked(DataSource dataSource) throws SQLException {
+        final DataSource tracked = mock(DataSource.class, delegatesTo(dataSource));
+        doAnswer(invocation -> tracked(dataSource.getConnection())).when(tracked).getConnection();
+        return tracked;
+    }
+
+    private Connection tracked(Connection connection) throws SQLException {
+        final Connection tracked = mock(Connection.class, delegatesTo(connection));
+        doAnswer(invocation -> {
+            sessions.add(tracked);
+            if (setupFails) {
+                throw new SQLException("Schema not found");
+            }
+            connection.setSchema("REVOLUT");
+            return null;
+        }).when(tracked).setSchema("REVOLUT");
+        doAnswer(invocation -> {
+            if (rollbackFails) {
+                throw new SQLException("Connection is broken");
+            }
+            connection.rollback();
+            return null;
+        }).when(tracked).rollback();
+        return tracked;
+    }
+
+}
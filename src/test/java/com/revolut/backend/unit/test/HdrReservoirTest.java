@@ -0,0 +1,81 @@
+package com.revolut.backend.unit.test;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Snapshot;
+import com.revolut.backend.utils.HdrReservoir;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class HdrReservoirTest {
+
+    private final ManualClock clock = new ManualClock();
+    private final HdrReservoir reservoir = new HdrReservoir(60, TimeUnit.SECONDS, clock);
+
+    @Test
+    public void testSnapshot_valuesLeftWindow_notCounted() {
+        reservoir.update(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(1, reservoir.size());
+
+        clock.advance(30, TimeUnit.SECONDS);
+        reservoir.update(TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(2, reservoir.size());
+        assertTrue(reservoir.getSnapshot().getMax() >= TimeUnit.SECONDS.toNanos(1));
+
+        //the slow value is older than the window, the fast one is still in it
+        clock.advance(40, TimeUnit.SECONDS);
+        final Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(1, snapshot.size());
+        assertTrue(snapshot.getMax() < TimeUnit.MILLISECONDS.toNanos(2));
+
+        clock.advance(1, TimeUnit.HOURS);
+        assertEquals(0, reservoir.getSnapshot().size());
+        assertEquals(0, reservoir.getSnapshot().getValue(0.99), 0);
+    }
+
+    @Test
+    public void testValues_manyRecorded_boundedSample() {
+        for (int i = 0; i < 100_000; i++) {
+            reservoir.update(i < 99_000 ? 1000 : 1_000_000);
+        }
+
+        final Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(100_000, snapshot.size());
+        final long[] values = snapshot.getValues();
+        assertEquals(1028, values.length);
+
+        //the sample keeps the distribution: the slowest 1% are at the end
+        int slow = 0;
+        for (long value : values) {
+            slow += value >= 1_000_000 ? 1 : 0;
+        }
+        assertEquals(10, slow, 1);
+        assertTrue(values[values.length - 1] >= 1_000_000);
+    }
+
+    @Test
+    public void testValues_fewRecorded_eachValue() {
+        reservoir.update(5);
+        reservoir.update(5);
+        reservoir.update(70);
+
+        assertArrayEquals(new long[]{5, 5, 70}, reservoir.getSnapshot().getValues());
+    }
+
+    private static class ManualClock extends Clock {
+
+        private long tick;
+
+        @Override
+        public long getTick() {
+            return tick;
+        }
+
+        private void advance(long duration, TimeUnit unit) {
+            tick += unit.toNanos(duration);
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.revolut.backend.unit.test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.revolut.backend.db.Database;
+import com.revolut.backend.db.TransferCallback;
+import com.revolut.backend.db.impl.IdempotentDatabase;
+import com.revolut.backend.entity.Money;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class IdempotentDatabaseTest {
+
+    private static final Money AMOUNT = Money.parse("1");
+
+    private Database delegate;
+    private MetricRegistry metricRegistry;
+    private IdempotentDatabase database;
+
+    @Before
+    public void beforeEachTest() {
+        delegate = mock(Database.class);
+        metricRegistry = new MetricRegistry();
+        database = new IdempotentDatabase(delegate, 100, 60_000, metricRegistry);
+    }
+
+    @Test
+    public void testTransfer_repeatedAfterSuccess_delegateCalledOnce() {
+        final TransferCallback first = mock(TransferCallback.class);
+        database.transfer("r1", 1, 1, 2, AMOUNT, first);
+        delegateCallback().onSuccess(42);
+
+        final TransferCallback retry = mock(TransferCallback.class);
+        database.transfer("r1", 1, 1, 2, AMOUNT, retry);
+
+        verify(first).onSuccess(42);
+        verify(retry).onSuccess(42);
+        verify(delegate, times(1)).transfer(eq("r1"), anyLong(), anyLong(), anyLong(), any(), any());
+        assertEquals(1, metricRegistry.meter("db.transfer.duplicates").getCount());
+    }
+
+    @Test
+    public void testTransfer_repeatedWhileInFlight_sameOutcome() {
+        final TransferCallback first = mock(TransferCallback.class);
+        final TransferCallback duplicate = mock(TransferCallback.class);
+        database.transfer("r1", 1, 1, 2, AMOUNT, first);
+        database.transfer("r1", 1, 1, 2, AMOUNT, duplicate);
+
+        delegateCallback().onInsufficientFunds();
+
+        verify(first).onInsufficientFunds();
+        verify(duplicate).onInsufficientFunds();
+        verify(delegate, times(1)).transfer(eq("r1"), anyLong(), anyLong(), anyLong(), any(), any());
+    }
+
+    @Test
+    public void testTransfer_failed_retryExecuted() {
+        database.transfer("r1", 1, 1, 2, AMOUNT, mock(TransferCallback.class));
+        delegateCallback().onInsufficientFunds();
+
+        database.transfer("r1", 1, 1, 2, AMOUNT, mock(TransferCallback.class));
+
+        verify(delegate, times(2)).transfer(eq("r1"), anyLong(), anyLong(), anyLong(), any(), any());
+    }
+
+    @Test
+    public void testTransfer_otherUser_notDuplicate() {
+        database.transfer("r1", 1, 1, 2, AMOUNT, mock(TransferCallback.class));
+        delegateCallback().onSuccess(42);
+
+        database.transfer("r1", 2, 3, 4, AMOUNT, mock(TransferCallback.class));
+
+        verify(delegate, times(2)).transfer(eq("r1"), anyLong(), anyLong(), anyLong(), any(), any());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testTransfer_rejected_exceptionPropagatedAndRetryAllowed() {
+        doThrow(new RejectedExecutionException()).doNothing()
+                .when(delegate).transfer(anyString(), anyLong(), anyLong(), anyLong(), any(), any());
+
+        try {
+            database.transfer("r1", 1, 1, 2, AMOUNT, mock(TransferCallback.class));
+        } finally {
+            database.transfer("r1", 1, 1, 2, AMOUNT, mock(TransferCallback.class));
+            verify(delegate, times(2)).transfer(eq("r1"), anyLong(), anyLong(), anyLong(), any(), any());
+        }
+    }
+
+    @Test
+    public void testTransfer_rejectedWithJoined_joinedRejectedToo() {
+        final RejectedExecutionException rejection = new RejectedExecutionException();
+        final TransferCallback joined = mock(TransferCallback.class);
+        doAnswer(invocation -> {
+            database.transfer("r1", 1, 1, 2, AMOUNT, joined);
+            throw rejection;
+        }).when(delegate).transfer(anyString(), anyLong(), anyLong(), anyLong(), any(), any());
+
+        final TransferCallback first = mock(TransferCallback.class);
+        try {
+            database.transfer("r1", 1, 1, 2, AMOUNT, first);
+        } catch (RejectedExecutionException e) {
+            assertEquals(rejection, e);
+        }
+
+        verify(joined).onRejected(rejection);
+        verify(joined, never()).onUnexpectedError(any());
+        verifyZeroInteractions(first);
+        verify(delegate, times(1)).transfer(eq("r1"), anyLong(), anyLong(), anyLong(), any(), any());
+    }
+
+    private TransferCallback delegateCallback() {
+        final ArgumentCaptor<TransferCallback> callback = ArgumentCaptor.forClass(TransferCallback.class);
+        verify(delegate, atLeastOnce()).transfer(anyString(), anyLong(), anyLong(), anyLong(), any(), callback.capture());
+        return callback.getValue();
+    }
+
+}
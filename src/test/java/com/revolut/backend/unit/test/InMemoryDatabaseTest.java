@@ -0,0 +1,275 @@
+package com.revolut.backend.unit.test;
+
+import com.revolut.backend.db.*;
+import com.revolut.backend.db.impl.ExecutionLanes;
+import com.revolut.backend.db.impl.InMemoryDatabase;
+import com.revolut.backend.db.impl.Journal;
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.entity.Transfer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.revolut.backend.DatabaseFixtures.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+public class InMemoryDatabaseTest {
+
+    private InMemoryDatabase database;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void beforeEachTest() {
+        database = new InMemoryDatabase(Executors.newFixedThreadPool(4));
+        database.init();
+    }
+
+    @Test
+    public void testCreateAccount_unknownUser_callbackCalled() {
+        final CreateAccountCallback callback = mock(CreateAccountCallback.class);
+        database.createAccount(999L, Money.ZERO, callback);
+
+        verify(callback, timeout(1000).times(1)).onUserNotFound();
+    }
+
+    @Test
+    public void testGetAccount_notOwner_callbackCalled() {
+        final long userId = createUser(database);
+        final long accountId = createAccount(database, userId, Money.parse("10"));
+
+        final GetAccountCallback callback = mock(GetAccountCallback.class);
+        database.getAccount(userId + 1, accountId, callback);
+
+        verify(callback, timeout(1000).times(1)).onAccountNotFound();
+    }
+
+    @Test
+    public void testTransfer_ok_balancesUpdated() {
+        final long userId = createUser(database);
+        final long srcAccountId = createAccount(database, userId, Money.parse("100"));
+        final long dstAccountId = createAccount(database, userId, Money.parse("0"));
+
+        final TransferCallback callback = mock(TransferCallback.class);
+        database.transfer("requestId", userId, srcAccountId, dstAccountId, Money.parse("55.73"), callback);
+
+        final ArgumentCaptor<Long> transferId = ArgumentCaptor.forClass(Long.class);
+        verify(callback, timeout(1000).times(1)).onSuccess(transferId.capture());
+
+        assertEquals(Money.parse("44.27"), getBalance(database, userId, srcAccountId));
+        assertEquals(Money.parse("55.73"), getBalance(database, userId, dstAccountId));
+
+        final GetTransferCallback getTransferCallback = mock(GetTransferCallback.class);
+        database.getTransfer(userId, transferId.getValue(), getTransferCallback);
+
+        final ArgumentCaptor<Transfer> transfer = ArgumentCaptor.forClass(Transfer.class);
+        verify(getTransferCallback, timeout(1000).times(1)).onSuccess(transfer.capture());
+        assertEquals(Money.parse("100"), transfer.getValue().getSrcAccountBalanceBefore());
+        assertEquals(Money.parse("55.73"), transfer.getValue().getDstAccountBalanceAfter());
+    }
+
+    @Test
+    public void testTransfer_errors_callbacksCalled() {
+        final long userId = createUser(database);
+        final long otherUserId = createUser(database);
+        final long srcAccountId = createAccount(database, userId, Money.parse("1"));
+        final long dstAccountId = createAccount(database, otherUserId, Money.ZERO);
+
+        final TransferCallback notFound = mock(TransferCallback.class);
+        database.transfer("r1", userId, srcAccountId, 99999L, Money.parse("1"), notFound);
+        verify(notFound, timeout(1000).times(1)).onAccountNotFound(99999L);
+
+        final TransferCallback notOwner = mock(TransferCallback.class);
+        database.transfer("r2", otherUserId, srcAccountId, dstAccountId, Money.parse("1"), notOwner);
+        verify(notOwner, timeout(1000).times(1)).onNotOwner();
+
+        final TransferCallback insufficientFunds = mock(TransferCallback.class);
+        database.transfer("r3", userId, srcAccountId, dstAccountId, Money.parse("10"), insufficientFunds);
+        verify(insufficientFunds, timeout(1000).times(1)).onInsufficientFunds();
+    }
+
+    @Test
+    public void testTransfer_repeatedRequest_executedOnce() {
+        final long userId = createUser(database);
+        final long srcAccountId = createAccount(database, userId, Money.parse("10"));
+        final long dstAccountId = createAccount(database, userId, Money.ZERO);
+
+        final TransferCallback first = mock(TransferCallback.class);
+        database.transfer("r1", userId, srcAccountId, dstAccountId, Money.parse("1"), first);
+        final ArgumentCaptor<Long> transferId = ArgumentCaptor.forClass(Long.class);
+        verify(first, timeout(1000).times(1)).onSuccess(transferId.capture());
+
+        //parameters of the repeated request are not compared
+        final TransferCallback repeated = mock(TransferCallback.class);
+        database.transfer("r1", userId, srcAccountId, dstAccountId, Money.parse("2"), repeated);
+        verify(repeated, timeout(1000).times(1)).onSuccess(transferId.getValue());
+        verify(repeated, never()).onCommitted(any());
+
+        assertEquals(Money.parse("9"), getBalance(database, userId, srcAccountId));
+        assertEquals(Money.parse("1"), getBalance(database, userId, dstAccountId));
+    }
+
+    @Test
+    public void testTransfer_concurrentRepeats_executedOnce() throws InterruptedException {
+        final long userId = createUser(database);
+        final long dstAccountId = createAccount(database, userId, Money.ZERO);
+        final long[] srcAccountIds = new long[8];
+        for (int i = 0; i < srcAccountIds.length; i++) {
+            srcAccountIds[i] = createAccount(database, userId, Money.parse("10"));
+        }
+
+        //the same request from different accounts, so it is not serialized by the account locks
+        final CountDownLatch latch = new CountDownLatch(srcAccountIds.length);
+        final TransferCallback callback = mock(TransferCallback.class);
+        doAnswer(invocation -> {
+            latch.countDown();
+            return null;
+        }).when(callback).onSuccess(anyLong());
+        for (long srcAccountId : srcAccountIds) {
+            database.transfer("r1", userId, srcAccountId, dstAccountId, Money.parse("1"), callback);
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        verify(callback, times(1)).onCommitted(any());
+        assertEquals(Money.parse("1"), getBalance(database, userId, dstAccountId));
+        Money total = Money.ZERO;
+        for (long srcAccountId : srcAccountIds) {
+            total = total.plus(getBalance(database, userId, srcAccountId));
+        }
+        assertEquals(Money.parse("79"), total);
+    }
+
+    @Test
+    public void testConcurrentTransfers_totalBalancePreserved() throws InterruptedException {
+        final long userId = createUser(database);
+        final long account1 = createAccount(database, userId, Money.parse("1000"));
+        final long account2 = createAccount(database, userId, Money.parse("1000"));
+
+        final int transfers = 1000;
+        final CountDownLatch latch = new CountDownLatch(transfers);
+        final ExecutorService clients = Executors.newFixedThreadPool(4);
+
+        for (int i = 0; i < transfers; i++) {
+            final boolean forward = i % 2 == 0;
+            final String requestId = "r" + i;
+            clients.submit(() -> database.transfer(requestId, userId, forward ? account1 : account2,
+                    forward ? account2 : account1, Money.parse("0.01"), new CountingTransferCallback(latch)));
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        clients.shutdown();
+
+        assertEquals(Money.parse("2000.00"), getBalance(database, userId, account1).plus(getBalance(database, userId, account2)));
+    }
+
+    @Test
+    public void testJournal_restart_ledgerRecovered() {
+        final Path dir = folder.getRoot().toPath();
+        database = new InMemoryDatabase(Executors.newFixedThreadPool(4), new Journal(dir));
+        database.init();
+
+        final long userId = createUser(database);
+        final long srcAccountId = createAccount(database, userId, Money.parse("100"));
+        final long dstAccountId = createAccount(database, userId, Money.ZERO);
+
+        final TransferCallback callback = mock(TransferCallback.class);
+        database.transfer("requestId", userId, srcAccountId, dstAccountId, Money.parse("0.5"), callback);
+        final ArgumentCaptor<Long> transferId = ArgumentCaptor.forClass(Long.class);
+        verify(callback, timeout(1000).times(1)).onSuccess(transferId.capture());
+        database.stop();
+
+        database = new InMemoryDatabase(Executors.newFixedThreadPool(4), new Journal(dir));
+        database.init();
+
+        assertEquals(Money.parse("99.5"), getBalance(database, userId, srcAccountId));
+        assertEquals(Money.parse("0.5"), getBalance(database, userId, dstAccountId));
+
+        final GetTransferCallback getTransferCallback = mock(GetTransferCallback.class);
+        database.getTransfer(userId, transferId.getValue(), getTransferCallback);
+        final ArgumentCaptor<Transfer> transfer = ArgumentCaptor.forClass(Transfer.class);
+        verify(getTransferCallback, timeout(1000).times(1)).onSuccess(transfer.capture());
+        assertEquals("requestId", transfer.getValue().getRequestId());
+
+        //request ids are recovered as well
+        final TransferCallback repeated = mock(TransferCallback.class);
+        database.transfer("requestId", userId, srcAccountId, dstAccountId, Money.parse("0.5"), repeated);
+        verify(repeated, timeout(1000).times(1)).onSuccess(transferId.getValue());
+        assertEquals(Money.parse("99.5"), getBalance(database, userId, srcAccountId));
+
+        //ids continue after the recovered ones
+        assertEquals(userId + 1, createUser(database));
+    }
+
+    @Test
+    public void testLanes_writeLaneBlocked_readsServed() throws InterruptedException {
+        final ExecutorService write = Executors.newSingleThreadExecutor();
+        database = new InMemoryDatabase(new ExecutionLanes(
+                Executors.newSingleThreadExecutor(), write, Executors.newSingleThreadExecutor()), null);
+        database.init();
+
+        final long userId = createUser(database);
+        final long srcAccountId = createAccount(database, userId, Money.parse("100"));
+        final long dstAccountId = createAccount(database, userId, Money.ZERO);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        write.submit(() -> {
+            release.await();
+            return null;
+        });
+
+        final TransferCallback callback = mock(TransferCallback.class);
+        database.transfer("requestId", userId, srcAccountId, dstAccountId, Money.parse("1"), callback);
+
+        //the transfer is stuck behind the write lane, while reads and account creation go on
+        assertEquals(Money.parse("100"), getBalance(database, userId, srcAccountId));
+        createAccount(database, userId, Money.ZERO);
+        verify(callback, never()).onSuccess(anyLong());
+
+        release.countDown();
+        verify(callback, timeout(1000).times(1)).onSuccess(anyLong());
+        write.shutdown();
+    }
+
+    private static class CountingTransferCallback implements TransferCallback {
+
+        private final CountDownLatch latch;
+
+        private CountingTransferCallback(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void onSuccess(long transferId) {
+            latch.countDown();
+        }
+
+        @Override
+        public void onAccountNotFound(long accountId) {
+        }
+
+        @Override
+        public void onNotOwner() {
+        }
+
+        @Override
+        public void onInsufficientFunds() {
+            latch.countDown();
+        }
+
+        @Override
+        public void onUnexpectedError(Exception e) {
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.revolut.backend.unit.test;
+
+import com.revolut.backend.db.impl.Journal;
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.entity.Transfer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class JournalTest {
+
+    private static final int SEGMENT_RECORDS = 1100;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReplay_allEntryTypes_listenerCalledInOrder() throws IOException {
+        final Path dir = folder.getRoot().toPath();
+
+        final Journal journal = new Journal(dir, SEGMENT_RECORDS);
+        journal.open(mock(Journal.Listener.class));
+        journal.appendUser(1, "Mike");
+        journal.appendAccount(1, 1, 1000);
+        journal.appendTransfer(transfer(1, "request-with-a-rather-long-id-which-does-not-fit-the-slot-at-all"));
+        journal.appendTransfer(transfer(2, "запрос"));
+        journal.close();
+
+        final Journal.Listener listener = mock(Journal.Listener.class);
+        assertEquals(4, new Journal(dir, SEGMENT_RECORDS).open(listener));
+
+        verify(listener).onUser(1, "Mike");
+        verify(listener).onAccount(1, 1, 1000);
+        verify(listener).onTransfer(1, "request-with-a-rather-long-id-which-does-not-fit-the-slot-at-all",
+                1000L, 1, 2, 1, 5, 100, 95, 0, 5);
+        verify(listener).onTransfer(2, "запрос", 1000L, 1, 2, 1, 5, 100, 95, 0, 5);
+    }
+
+    @Test
+    public void testReplay_segmentsRotated_allEntriesReplayed() throws IOException {
+        final Path dir = folder.getRoot().toPath();
+
+        final Journal journal = new Journal(dir, SEGMENT_RECORDS);
+        journal.open(mock(Journal.Listener.class));
+        for (int i = 1; i <= SEGMENT_RECORDS * 2 + 1; i++) {
+            journal.appendTransfer(transfer(i, "r"));
+        }
+        journal.close();
+
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(3, files.count());
+        }
+
+        final Journal.Listener listener = mock(Journal.Listener.class);
+        assertEquals(SEGMENT_RECORDS * 2 + 1, new Journal(dir, SEGMENT_RECORDS).open(listener));
+        verify(listener).onTransfer(SEGMENT_RECORDS * 2 + 1, "r", 1000L, 1, 2, 1, 5, 100, 95, 0, 5);
+    }
+
+    @Test
+    public void testReplay_tornTail_discardedAndOverwritten() throws IOException {
+        final Path dir = folder.getRoot().toPath();
+
+        final Journal journal = new Journal(dir, SEGMENT_RECORDS);
+        journal.open(mock(Journal.Listener.class));
+        journal.appendTransfer(transfer(1, "r1"));
+        journal.appendTransfer(transfer(2, "r2"));
+        journal.close();
+
+        //corrupt the second record as if it was partially written
+        try (RandomAccessFile file = new RandomAccessFile(dir.resolve("journal-000000000000.log").toFile(), "rw")) {
+            file.seek(128 + 20);
+            file.writeLong(-1);
+        }
+
+        final Journal recovered = new Journal(dir, SEGMENT_RECORDS);
+        final Journal.Listener listener = mock(Journal.Listener.class);
+        assertEquals(1, recovered.open(listener));
+        verify(listener, never()).onTransfer(eq(2L), anyString(), anyLong(), anyLong(), anyLong(),
+                anyLong(), anyLong(), anyLong(), anyLong(), anyLong(), anyLong());
+
+        recovered.appendTransfer(transfer(3, "r3"));
+        recovered.close();
+
+        final Journal.Listener reopened = mock(Journal.Listener.class);
+        assertEquals(2, new Journal(dir, SEGMENT_RECORDS).open(reopened));
+        verify(reopened).onTransfer(3, "r3", 1000L, 1, 2, 1, 5, 100, 95, 0, 5);
+    }
+
+    private static Transfer transfer(long id, String requestId) {
+        return new Transfer(id, requestId, 1000L, 1, 2, 1, Money.ofMinorUnits(5),
+                Money.ofMinorUnits(100), Money.ofMinorUnits(95), Money.ZERO, Money.ofMinorUnits(5));
+    }
+
+}
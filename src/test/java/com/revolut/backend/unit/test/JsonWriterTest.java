@@ -0,0 +1,61 @@
+package com.revolut.backend.unit.test;
+
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.utils.JsonWriter;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JsonWriterTest {
+
+    private static final JsonWriter.Key ID = JsonWriter.key("id");
+    private static final JsonWriter.Key AMOUNT = JsonWriter.key("amount");
+    private static final JsonWriter.Key ERROR = JsonWriter.key("error");
+
+    @Test
+    public void testEnd_noFields_emptyObject() {
+        assertEquals("{}", JsonWriter.object().end().toString());
+    }
+
+    @Test
+    public void testField_longs_sameAsJsonObject() {
+        for (long value : new long[]{0, 7, -7, 10, 999, 1000, 1549052019119L, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            assertEquals(new JsonObject().put("id", value).encode(),
+                    JsonWriter.object(1).field(ID, value).end().toString());
+        }
+    }
+
+    @Test
+    public void testField_money_sameAsToString() {
+        for (String value : new String[]{"0", "10", "10.5", "10.05", "-0.07", "-10.5", "55.73"}) {
+            final Money money = Money.parse(value);
+            assertEquals(new JsonObject().put("amount", money.toString()).encode(),
+                    JsonWriter.object().field(AMOUNT, money).end().toString());
+        }
+
+        final Money min = Money.ofMinorUnits(Long.MIN_VALUE);
+        assertEquals("{\"amount\":\"" + min + "\"}", JsonWriter.object().field(AMOUNT, min).end().toString());
+    }
+
+    @Test
+    public void testField_specialCharacters_escaped() {
+        final String msg = "Parameter \"accountId\" \\ \n\t\u0001 ünïcode €";
+        final String json = JsonWriter.object().field(ERROR, msg).end().toString();
+
+        assertEquals(msg, new JsonObject(json).getString("error"));
+    }
+
+    @Test
+    public void testField_severalFields_keptInOrder() {
+        final String json = JsonWriter.object(1)
+                .field(ID, 1)
+                .field(AMOUNT, Money.parse("2.5"))
+                .field(ERROR, "none")
+                .end()
+                .toString();
+
+        assertEquals("{\"id\":1,\"amount\":\"2.5\",\"error\":\"none\"}", json);
+    }
+
+}
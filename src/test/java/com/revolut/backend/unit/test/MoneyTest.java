@@ -0,0 +1,74 @@
+package com.revolut.backend.unit.test;
+
+import com.revolut.backend.entity.Money;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MoneyTest {
+
+    @Test
+    public void testParse() {
+        assertEquals(0, Money.parseMinorUnits("0"));
+        assertEquals(1000, Money.parseMinorUnits("10"));
+        assertEquals(1050, Money.parseMinorUnits("10.5"));
+        assertEquals(1055, Money.parseMinorUnits("+10.55"));
+        assertEquals(1055, Money.parseMinorUnits("10.5500"));
+        assertEquals(-7, Money.parseMinorUnits("-0.07"));
+        assertEquals(50, Money.parseMinorUnits(".5"));
+    }
+
+    @Test
+    public void testParse_range() {
+        assertEquals(1055, Money.parseMinorUnits("amount=10.55&x=1", 7, 12));
+        assertEquals(-7, Money.parseMinorUnits("a=-0.07", 2, 7));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParse_emptyRange_error() {
+        Money.parseMinorUnits("amount=&x=1", 7, 7);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParse_tooManyDecimalPlaces_error() {
+        Money.parseMinorUnits("10.555");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParse_notNumber_error() {
+        Money.parseMinorUnits("abc");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParse_noDigits_error() {
+        Money.parseMinorUnits("-.");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParse_overflow_error() {
+        Money.parseMinorUnits("92233720368547758.08");
+    }
+
+    @Test
+    public void testToString() {
+        assertEquals("0", Money.ZERO.toString());
+        assertEquals("100", Money.parse("100.00").toString());
+        assertEquals("44.27", Money.parse("44.27").toString());
+        assertEquals("99.9", Money.parse("99.90").toString());
+        assertEquals("0.05", Money.parse("0.05").toString());
+        assertEquals("-1.01", Money.parse("-1.01").toString());
+        assertEquals("-92233720368547758.08", Money.ofMinorUnits(Long.MIN_VALUE).toString());
+    }
+
+    @Test
+    public void testArithmetic() {
+        assertEquals(Money.parse("44.27"), Money.parse("100").minus(Money.parse("55.73")));
+        assertEquals(Money.parse("111.54"), Money.parse("99.11").plus(Money.parse("12.43")));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void testPlus_overflow_error() {
+        Money.ofMinorUnits(Long.MAX_VALUE).plus(Money.ofMinorUnits(1));
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.revolut.backend.unit.test;
+
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.handler.ParamExtractor;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.vertx.core.MultiMap;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.api.validation.ValidationException;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+/**
+ * Raw query parsing is checked against the parameters decoded by vertx, which handled all queries before
+ */
+public class ParamExtractorTest {
+
+    private static final String[] QUERIES = {
+            null, "", "id=7", "ID=7", "id=+7", "id=-7", "id=007",
+            //overflow and bounds
+            "id=9223372036854775807", "id=9223372036854775808", "id=-9223372036854775808", "id=-9223372036854775809",
+            "id=99999999999999999999",
+            //lone sign, empty and not numeric values
+            "id=-", "id=+", "id=", "id", "id=1a", "id=1.5", "id= 1",
+            //names
+            "idx=1", "xid=1", "i=1", "a=1&id=2&b=3", "a&id=2", "id==1", "a==b&id=2",
+            //duplicates and case variants
+            "id=1&id=1", "id=1&ID=2", "Id=1&iD",
+            //fallbacks to the decoded query
+            "id=%31", "id=%2B1", "%69d=1", "id=1;x=2", "x=1;id=2", "id=+1", "id=1#x", "=1&id=2", "id=1&=2",
+    };
+
+    @Test
+    public void testQueryLong_rawQuery_sameAsDecoded() {
+        for (String query : QUERIES) {
+            assertEquals(query, decoded(query, "id", true), outcome(() -> ParamExtractor.queryLong(context(query), "id")));
+        }
+    }
+
+    @Test
+    public void testQueryString_rawQuery_sameAsDecoded() {
+        for (String query : QUERIES) {
+            assertEquals(query, decoded(query, "id", false),
+                    outcome(() -> ParamExtractor.queryString(context(query), "id")));
+        }
+    }
+
+    @Test
+    public void testCheckQuery_repeated_rejectedEvenIfOptional() {
+        for (String query : QUERIES) {
+            final String decoded = decoded(query, "id", false);
+            assertEquals(query, decoded.startsWith("=") ? "=ok" : decoded,
+                    outcome(() -> check(query, true)));
+            assertEquals(query, decoded.equals("NOT_FOUND") || decoded.startsWith("=") ? "=ok" : decoded,
+                    outcome(() -> check(query, false)));
+        }
+    }
+
+    @Test
+    public void testQueryLong_bounds_parsed() {
+        assertEquals(Long.MAX_VALUE, ParamExtractor.queryLong(context("id=9223372036854775807"), "id"));
+        assertEquals(Long.MIN_VALUE, ParamExtractor.queryLong(context("id=-9223372036854775808"), "id"));
+        assertEquals("NO_MATCH", outcome(() -> ParamExtractor.queryLong(context("id=9223372036854775808"), "id")));
+        assertEquals("NO_MATCH", outcome(() -> ParamExtractor.queryLong(context("id=-"), "id")));
+    }
+
+    @Test
+    public void testQueryAmount_missing_defaultValue() {
+        assertEquals(Money.ZERO, ParamExtractor.queryAmount(context("a=1"), "balance", Money.ZERO));
+        assertEquals(Money.ZERO, ParamExtractor.queryAmount(context("a=%31"), "balance", Money.ZERO));
+        assertEquals(Money.parse("10.5"), ParamExtractor.queryAmount(context("Balance=10.5"), "balance", null));
+        assertEquals(Money.parse("10.5"), ParamExtractor.queryAmount(context("balance=10%2E5"), "balance", null));
+        assertEquals("NOT_FOUND", outcome(() -> ParamExtractor.queryAmount(context("a=1"), "balance", null)));
+        assertEquals("UNEXPECTED_ARRAY",
+                outcome(() -> ParamExtractor.queryAmount(context("balance=1&balance=2"), "balance", Money.ZERO)));
+    }
+
+    private static String check(String query, boolean required) {
+        ParamExtractor.checkQuery(context(query), "id", required);
+        return "ok";
+    }
+
+    /**
+     * @return outcome of the same extraction from the parameters decoded by vertx
+     */
+    private static String decoded(String query, String name, boolean number) {
+        final List<String> values = params(query).getAll(name);
+        if (values.isEmpty()) {
+            return "NOT_FOUND";
+        }
+        if (values.size() > 1) {
+            return "UNEXPECTED_ARRAY";
+        }
+        return outcome(() -> {
+            if (!number) {
+                return values.get(0);
+            }
+            try {
+                return Long.parseLong(values.get(0));
+            } catch (NumberFormatException e) {
+                throw new ValidationException(ValidationException.ErrorType.NO_MATCH);
+            }
+        });
+    }
+
+    /**
+     * @return "=" and the value or the type of the validation error
+     */
+    private static String outcome(Supplier<Object> extraction) {
+        try {
+            return "=" + extraction.get();
+        } catch (ValidationException e) {
+            return e.type().name();
+        }
+    }
+
+    private static RoutingContext context(String query) {
+        final HttpServerRequest request = mock(HttpServerRequest.class);
+        when(request.query()).thenReturn(query);
+        when(request.params()).thenReturn(params(query));
+
+        final RoutingContext ctx = mock(RoutingContext.class);
+        when(ctx.request()).thenReturn(request);
+        return ctx;
+    }
+
+    /**
+     * Parameters as vertx decodes them for {@link HttpServerRequest#params()}
+     */
+    private static MultiMap params(String query) {
+        final MultiMap params = MultiMap.caseInsensitiveMultiMap();
+        if (query != null) {
+            new QueryStringDecoder(query, false).parameters().forEach(params::add);
+        }
+        return params;
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.revolut.backend.unit.test;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+import com.revolut.backend.handler.PrometheusMetricsHandler;
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class PrometheusMetricsHandlerTest {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final PrometheusMetricsHandler handler = new PrometheusMetricsHandler(metricRegistry);
+
+    @Test
+    public void testScrape_allKinds_exactExposition() {
+        metricRegistry.counter("db.sync.failures").inc(2);
+        metricRegistry.counter("1st-name").dec();
+        metricRegistry.register("db.healthy", (Gauge<Integer>) () -> 1);
+        metricRegistry.register("ratio", (Gauge<Double>) () -> 0.25);
+        metricRegistry.register("jvm.name", (Gauge<String>) () -> "HotSpot");
+        metricRegistry.meter("requests").mark(3);
+        metricRegistry.histogram("db.transfer.batch.size", () -> new Histogram(new UniformReservoir())).update(4);
+        timer("http./account/:accountId.GET.2xx").update(1500, TimeUnit.MILLISECONDS);
+        timer("http.unmatched.4xx").update(250, TimeUnit.MILLISECONDS);
+
+        assertEquals("# TYPE _st_name gauge\n" +
+                        "_st_name -1\n" +
+                        "# TYPE db_healthy gauge\n" +
+                        "db_healthy 1\n" +
+                        "# TYPE db_sync_failures gauge\n" +
+                        "db_sync_failures 2\n" +
+                        "# TYPE db_transfer_batch_size summary\n" +
+                        "db_transfer_batch_size{quantile=\"0.5\"} 4\n" +
+                        "db_transfer_batch_size{quantile=\"0.75\"} 4\n" +
+                        "db_transfer_batch_size{quantile=\"0.95\"} 4\n" +
+                        "db_transfer_batch_size{quantile=\"0.99\"} 4\n" +
+                        "db_transfer_batch_size{quantile=\"0.999\"} 4\n" +
+                        "db_transfer_batch_size_count 1\n" +
+                        "db_transfer_batch_size_sum 4\n" +
+                        //both http timers are one family under one type line
+                        "# TYPE http_request_duration_seconds summary\n" +
+                        http("route=\"/account/:accountId\",method=\"GET\",status=\"2xx\"", "1.5", "1") +
+                        http("route=\"unmatched\",method=\"\",status=\"4xx\"", "0.25", "1") +
+                        //not numeric gauge has no samples
+                        "# TYPE jvm_name gauge\n" +
+                        "# TYPE ratio gauge\n" +
+                        "ratio 0.25\n" +
+                        "# TYPE requests_total counter\n" +
+                        "requests_total 3\n",
+                handler.scrape().toString());
+    }
+
+    @Test
+    public void testScrape_routeNeedsEscaping_labelEscaped() {
+        timer("http./a\"b\\c.POST.5xx").update(1, TimeUnit.NANOSECONDS);
+
+        assertEquals("# TYPE http_request_duration_seconds summary\n" +
+                        http("route=\"/a\\\"b\\\\c\",method=\"POST\",status=\"5xx\"", "0.000000001", "1"),
+                handler.scrape().toString());
+    }
+
+    @Test
+    public void testScrape_metricRemoved_notExposed() {
+        metricRegistry.counter("first").inc();
+        metricRegistry.counter("second").inc();
+        metricRegistry.remove("first");
+
+        assertEquals("# TYPE second gauge\nsecond 1\n", handler.scrape().toString());
+    }
+
+    @Test
+    public void testScrape_again_previousResponseNotChanged() {
+        metricRegistry.counter("second").inc();
+        final Buffer scraped = handler.scrape();
+
+        metricRegistry.counter("second").inc();
+        assertEquals("# TYPE second gauge\nsecond 2\n", handler.scrape().toString());
+        assertEquals("# TYPE second gauge\nsecond 1\n", scraped.toString());
+    }
+
+    private Timer timer(String name) {
+        return metricRegistry.timer(name, () -> new Timer(new UniformReservoir()));
+    }
+
+    /**
+     * @return samples of a timer with a single value
+     */
+    private static String http(String labels, String value, String count) {
+        final StringBuilder samples = new StringBuilder();
+        for (String quantile : new String[]{"0.5", "0.75", "0.95", "0.99", "0.999"}) {
+            samples.append("http_request_duration_seconds{").append(labels)
+                    .append(",quantile=\"").append(quantile).append("\"} ").append(value).append('\n');
+        }
+        samples.append("http_request_duration_seconds_count{").append(labels).append("} ").append(count).append('\n');
+        samples.append("http_request_duration_seconds_sum{").append(labels).append("} ").append(value).append('\n');
+        return samples.toString();
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.revolut.backend.unit.test;
+
+import com.revolut.backend.db.impl.ThreadPerTaskExecutor;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ThreadPerTaskExecutorTest {
+
+    private static final ThreadFactory PLATFORM_THREADS = Thread::new;
+
+    @Test
+    public void testExecute_overConcurrency_waitsForPermit() throws Exception {
+        final ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(PLATFORM_THREADS, 2, 10);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(2);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        for (int i = 0; i < 5; i++) {
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                started.countDown();
+                await(release);
+                running.decrementAndGet();
+            });
+        }
+
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        assertEquals(3, executor.getQueued());
+
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals(2, maxRunning.get());
+        assertEquals(0, executor.getQueued());
+    }
+
+    @Test
+    public void testExecute_queueFull_rejected() throws Exception {
+        final ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(PLATFORM_THREADS, 1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        executor.execute(() -> await(release));
+        executor.execute(() -> await(release));
+        try {
+            executor.execute(() -> await(release));
+            fail("task over the queue must be rejected");
+        } catch (RejectedExecutionException e) {
+            //expected
+        }
+
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testExecute_shutdown_rejected() {
+        final ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(PLATFORM_THREADS, 1, 1);
+        executor.shutdown();
+
+        executor.execute(() -> {
+        });
+    }
+
+    @Test
+    public void testShutdownNow_waitingTasksSkipped() throws Exception {
+        final ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(PLATFORM_THREADS, 1, 5);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger executed = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            executor.execute(() -> {
+                executed.incrementAndGet();
+                started.countDown();
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        executor.shutdownNow();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals(1, executed.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
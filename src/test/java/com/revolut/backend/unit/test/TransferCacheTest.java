@@ -0,0 +1,49 @@
+package com.revolut.backend.unit.test;
+
+import com.revolut.backend.entity.Money;
+import com.revolut.backend.entity.Transfer;
+import com.revolut.backend.handler.TransferCache;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TransferCacheTest {
+
+    private static final Transfer TRANSFER = new Transfer(7, "r1", 1000L, 1, 2, 10, Money.parse("1.5"),
+            Money.parse("10"), Money.parse("8.5"), Money.ZERO, Money.parse("1.5"));
+
+    @Test
+    public void testGet_put_serializedJsonReturned() {
+        final TransferCache cache = new TransferCache(10);
+        final Buffer put = cache.put(TRANSFER);
+
+        final Buffer cached = cache.get(10, 7);
+        assertSame(put, cached);
+
+        final JsonObject json = cached.toJsonObject();
+        assertEquals(Long.valueOf(7), json.getLong("transferId"));
+        assertEquals(Long.valueOf(10), json.getLong("userId"));
+        assertEquals("1.5", json.getString("amount"));
+        assertEquals("8.5", json.getString("srcAccountBalanceAfter"));
+        assertEquals("0", json.getString("dstAccountBalanceBefore"));
+    }
+
+    @Test
+    public void testGet_notOwner_null() {
+        final TransferCache cache = new TransferCache(10);
+        cache.put(TRANSFER);
+
+        assertNull(cache.get(11, 7));
+    }
+
+    @Test
+    public void testGet_disabled_null() {
+        final TransferCache cache = new TransferCache(0);
+        assertNotNull(cache.put(TRANSFER));
+
+        assertNull(cache.get(10, 7));
+    }
+
+}
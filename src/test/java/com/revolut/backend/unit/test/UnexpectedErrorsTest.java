@@ -5,12 +5,11 @@ import com.revolut.backend.constants.PathParams;
 import com.revolut.backend.constants.QueryParams;
 import com.revolut.backend.db.*;
 import com.revolut.backend.handler.*;
+import io.netty.handler.codec.http.HttpHeaderNames;
 import io.vertx.core.MultiMap;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.ext.web.RoutingContext;
-import io.vertx.ext.web.api.RequestParameter;
-import io.vertx.ext.web.api.RequestParameters;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -27,7 +26,7 @@ public class UnexpectedErrorsTest {
     private RoutingContext ctxMock;
     private HttpServerRequest httpRequestMock;
     private HttpServerResponse httpResponseMock;
-    private RequestParameters requestParametersMock;
+    private MultiMap requestHeaders;
     private MultiMap headersMock;
 
     @BeforeClass
@@ -45,8 +44,8 @@ public class UnexpectedErrorsTest {
         httpResponseMock = mock(HttpServerResponse.class);
         when(ctxMock.response()).thenReturn(httpResponseMock);
 
-        requestParametersMock = mock(RequestParameters.class);
-        when(ctxMock.get("parsedParameters")).thenReturn(requestParametersMock);
+        requestHeaders = MultiMap.caseInsensitiveMultiMap();
+        when(httpRequestMock.headers()).thenReturn(requestHeaders);
 
         headersMock = mock(MultiMap.class);
         when(httpResponseMock.headers()).thenReturn(headersMock);
@@ -55,8 +54,7 @@ public class UnexpectedErrorsTest {
     @Test
     public void testCreateUserHandler_onRejectedExecutionException(){
         doThrow(new RejectedExecutionException()).when(databaseMock).createUser(any(), any());
-        when(requestParametersMock.queryParameter(QueryParams.USER_NAME))
-                .thenReturn(RequestParameter.create("p"));
+        when(httpRequestMock.query()).thenReturn(QueryParams.USER_NAME + "=p");
 
         new CreateUserHandler(databaseMock).handle(ctxMock);
 
@@ -71,8 +69,7 @@ public class UnexpectedErrorsTest {
             return null;
         }).when(databaseMock).createUser(any(), any());
 
-        when(requestParametersMock.queryParameter(QueryParams.USER_NAME))
-                .thenReturn(RequestParameter.create("p"));
+        when(httpRequestMock.query()).thenReturn(QueryParams.USER_NAME + "=p");
 
         new CreateUserHandler(databaseMock).handle(ctxMock);
 
@@ -82,8 +79,7 @@ public class UnexpectedErrorsTest {
     @Test
     public void testCreateAccountHandler_onRejectedExecutionException(){
         doThrow(new RejectedExecutionException()).when(databaseMock).createAccount(anyLong(), any(), any());
-        when(requestParametersMock.headerParameter(HttpHeaders.USER_ID))
-                .thenReturn(RequestParameter.create(1L));
+        requestHeaders.set(HttpHeaders.USER_ID, "1");
 
         new CreateAccountHandler(databaseMock).handle(ctxMock);
 
@@ -98,8 +94,7 @@ public class UnexpectedErrorsTest {
             return null;
         }).when(databaseMock).createAccount(anyLong(), any(), any());
 
-        when(requestParametersMock.headerParameter(HttpHeaders.USER_ID))
-                .thenReturn(RequestParameter.create(1L));
+        requestHeaders.set(HttpHeaders.USER_ID, "1");
 
         new CreateAccountHandler(databaseMock).handle(ctxMock);
 
@@ -109,16 +104,26 @@ public class UnexpectedErrorsTest {
     @Test
     public void testGetAccountHandler_onRejectedExecutionException(){
         doThrow(new RejectedExecutionException()).when(databaseMock).getAccount(anyLong(), anyLong(), any());
-        when(requestParametersMock.headerParameter(HttpHeaders.USER_ID))
-                .thenReturn(RequestParameter.create(1L));
-        when(requestParametersMock.pathParameter(PathParams.ACCOUNT_ID))
-                .thenReturn(RequestParameter.create(1L));
+        requestHeaders.set(HttpHeaders.USER_ID, "1");
+        when(ctxMock.pathParam(PathParams.ACCOUNT_ID)).thenReturn("1");
 
         new GetAccountHandler(databaseMock).handle(ctxMock);
 
         verify(httpResponseMock, times(1)).setStatusCode(429);
     }
 
+    @Test
+    public void testGetAccountHandler_onOverloadedException_retryAfterDrainTime(){
+        doThrow(new OverloadedException("overloaded", 1500)).when(databaseMock).getAccount(anyLong(), anyLong(), any());
+        requestHeaders.set(HttpHeaders.USER_ID, "1");
+        when(ctxMock.pathParam(PathParams.ACCOUNT_ID)).thenReturn("1");
+
+        new GetAccountHandler(databaseMock).handle(ctxMock);
+
+        verify(httpResponseMock, times(1)).setStatusCode(429);
+        verify(headersMock, times(1)).set(HttpHeaderNames.RETRY_AFTER, "2");
+    }
+
     @Test
     public void testGetAccountHandler_onUnexpectedError(){
         doAnswer(a -> {
@@ -127,10 +132,8 @@ public class UnexpectedErrorsTest {
             return null;
         }).when(databaseMock).getAccount(anyLong(), anyLong(), any());
 
-        when(requestParametersMock.headerParameter(HttpHeaders.USER_ID))
-                .thenReturn(RequestParameter.create(1L));
-        when(requestParametersMock.pathParameter(PathParams.ACCOUNT_ID))
-                .thenReturn(RequestParameter.create(1L));
+        requestHeaders.set(HttpHeaders.USER_ID, "1");
+        when(ctxMock.pathParam(PathParams.ACCOUNT_ID)).thenReturn("1");
 
         new GetAccountHandler(databaseMock).handle(ctxMock);
 
@@ -142,17 +145,11 @@ public class UnexpectedErrorsTest {
         doThrow(new RejectedExecutionException()).when(databaseMock)
                 .transfer(anyString(), anyLong(), anyLong(), anyLong(), any(), any());
 
-        when(requestParametersMock.headerParameter(HttpHeaders.USER_ID))
-                .thenReturn(RequestParameter.create(1L));
+        requestHeaders.set(HttpHeaders.USER_ID, "1");
 
-        when(requestParametersMock.pathParameter(PathParams.ACCOUNT_ID))
-                .thenReturn(RequestParameter.create(1L));
+        when(ctxMock.pathParam(PathParams.ACCOUNT_ID)).thenReturn("1");
 
-        when(requestParametersMock.queryParameter(QueryParams.DST_ACC_ID))
-                .thenReturn(RequestParameter.create(2L));
-
-        when(requestParametersMock.queryParameter(QueryParams.AMOUNT))
-                .thenReturn(RequestParameter.create("1"));
+        when(httpRequestMock.query()).thenReturn(QueryParams.DST_ACC_ID + "=2&" + QueryParams.AMOUNT + "=1");
 
         new TransferHandler(databaseMock).handle(ctxMock);
 
@@ -167,17 +164,11 @@ public class UnexpectedErrorsTest {
             return null;
         }).when(databaseMock).transfer(anyString(), anyLong(), anyLong(), anyLong(), any(), any());
 
-        when(requestParametersMock.headerParameter(HttpHeaders.USER_ID))
-                .thenReturn(RequestParameter.create(1L));
-
-        when(requestParametersMock.pathParameter(PathParams.ACCOUNT_ID))
-                .thenReturn(RequestParameter.create(1L));
+        requestHeaders.set(HttpHeaders.USER_ID, "1");
 
-        when(requestParametersMock.queryParameter(QueryParams.DST_ACC_ID))
-                .thenReturn(RequestParameter.create(2L));
+        when(ctxMock.pathParam(PathParams.ACCOUNT_ID)).thenReturn("1");
 
-        when(requestParametersMock.queryParameter(QueryParams.AMOUNT))
-                .thenReturn(RequestParameter.create("1"));
+        when(httpRequestMock.query()).thenReturn(QueryParams.DST_ACC_ID + "=2&" + QueryParams.AMOUNT + "=1");
 
         new TransferHandler(databaseMock).handle(ctxMock);
 
@@ -188,11 +179,9 @@ public class UnexpectedErrorsTest {
     public void testGetTransferHandler_onRejectedExecutionException(){
         doThrow(new RejectedExecutionException()).when(databaseMock).getTransfer(anyLong(), anyLong(), any());
 
-        when(requestParametersMock.headerParameter(HttpHeaders.USER_ID))
-                .thenReturn(RequestParameter.create(1L));
+        requestHeaders.set(HttpHeaders.USER_ID, "1");
 
-        when(requestParametersMock.pathParameter(PathParams.TRANSFER_ID))
-                .thenReturn(RequestParameter.create(1L));
+        when(ctxMock.pathParam(PathParams.TRANSFER_ID)).thenReturn("1");
 
         new GetTransferHandler(databaseMock).handle(ctxMock);
 
@@ -207,11 +196,9 @@ public class UnexpectedErrorsTest {
             return null;
         }).when(databaseMock).getTransfer(anyLong(), anyLong(), any());
 
-        when(requestParametersMock.headerParameter(HttpHeaders.USER_ID))
-                .thenReturn(RequestParameter.create(1L));
+        requestHeaders.set(HttpHeaders.USER_ID, "1");
 
-        when(requestParametersMock.pathParameter(PathParams.TRANSFER_ID))
-                .thenReturn(RequestParameter.create(1L));
+        when(ctxMock.pathParam(PathParams.TRANSFER_ID)).thenReturn("1");
 
         new GetTransferHandler(databaseMock).handle(ctxMock);
 